@@ -20,6 +20,8 @@ repositories {
 
 dependencies {
     implementation(rootProject)
+    testImplementation("junit:junit:4.13")
+    testImplementation(gradleTestKit())
 }
 
 publishing {
@@ -2,9 +2,11 @@ package com.bergerkiller.mountiplex.gradle;
 
 import org.gradle.api.Project;
 import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.compile.JavaCompile;
+import org.gradle.jvm.tasks.Jar;
 
 import javax.inject.Inject;
 import java.io.File;
@@ -35,6 +37,23 @@ public abstract class MountiplexExtension {
         });
     }
 
+    /**
+     * Adds the output of the precompileTemplateHandles task to the jar of the main source set.
+     * It is not added to the resources, as that task needs the compiled classes of the main
+     * source set. The classes the templates represent must be on the compile classpath,
+     * or be added to the classpath of that task, and its variables set to those used at runtime.
+     *
+     * @see PrecompileTemplateHandles
+     */
+    public void precompileTemplateHandles() {
+        getProject().getPlugins().withType(JavaPlugin.class, javaPlugin -> {
+            SourceSet main = getProject().getExtensions().getByType(SourceSetContainer.class).getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+            getProject().getTasks().named(main.getJarTaskName(), Jar.class, jar -> {
+                jar.from(getProject().getTasks().named("precompileTemplateHandles"));
+            });
+        });
+    }
+
     /**
      * Configures annotation string remapping for all source sets.
      *
@@ -3,6 +3,7 @@ package com.bergerkiller.mountiplex.gradle;
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.plugins.JavaPlugin;
+import org.gradle.api.tasks.SourceSet;
 import org.gradle.api.tasks.SourceSetContainer;
 import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.compile.AbstractCompile;
@@ -21,6 +22,11 @@ public class MountiplexPlugin implements Plugin<Project> {
             task.getOutputDirectory().set(project.file("src/main/generated"));
         });
 
+        project.getTasks().register("precompileTemplateHandles", PrecompileTemplateHandles.class, task -> {
+            task.getSourceDirectory().set(project.file("src/main/templates"));
+            task.getOutputDirectory().set(project.file("build/mountiplex-handles"));
+        });
+
         project.getPlugins().withType(JavaPlugin.class, javaPlugin -> {
             SourceSetContainer sourceSets = project.getExtensions().getByType(SourceSetContainer.class);
             sourceSets.configureEach(sourceSet -> {
@@ -31,6 +37,13 @@ public class MountiplexPlugin implements Plugin<Project> {
                     task.getInputDirectory().set(compile.flatMap(AbstractCompile::getDestinationDirectory));
                 });
             });
+
+            // Only uses the compiled (and remapped) classes, not the processed resources
+            // The classes directory is produced by the remapAnnotations task, if remapping is enabled
+            project.getTasks().named("precompileTemplateHandles", PrecompileTemplateHandles.class, task -> {
+                SourceSet main = sourceSets.getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+                task.classpath(main.getJava().getClassesDirectory(), main.getCompileClasspath());
+            });
         });
     }
 }
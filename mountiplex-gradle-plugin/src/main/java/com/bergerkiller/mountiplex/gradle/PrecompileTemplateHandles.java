@@ -0,0 +1,88 @@
+package com.bergerkiller.mountiplex.gradle;
+
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.JavaExec;
+import org.gradle.api.tasks.OutputDirectory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the implementation classes of the Handles generated by {@link GenerateTemplateHandles}
+ * ahead of time, for one set of template variables. The compiled classes and compile classpath of
+ * the main source set are on the classpath of this task. If the classes the templates represent
+ * are not, they must be added to it. Generation runs in a separate process, so that these classes
+ * are loaded by the system class loader like they would be at runtime.<br>
+ * <br>
+ * The output directory should be included in the jar of the application, which
+ * {@link MountiplexExtension#precompileTemplateHandles()} does. At runtime the precompiled
+ * Handles are only used when the classes involved did not change.
+ */
+public abstract class PrecompileTemplateHandles extends JavaExec {
+
+    public PrecompileTemplateHandles() {
+        getMainClass().set("com.bergerkiller.mountiplex.reflection.declarations.PrecompiledHandles");
+    }
+
+    /**
+     * The source directory property. This configures the location relative to which
+     * source template .txt files are read.
+     *
+     * @return source directory property
+     */
+    @InputDirectory
+    public abstract DirectoryProperty getSourceDirectory();
+
+    /**
+     * The source template .txt file. This is the first source .txt file read, and may
+     * contain include directives for additional files found inside {@link #getSourceDirectory()}
+     *
+     * @return source template .txt file
+     */
+    @Input
+    public abstract Property<String> getSource();
+
+    /**
+     * The package root where the generated Handle classes are placed
+     *
+     * @return target package
+     */
+    @Input
+    public abstract Property<String> getTarget();
+
+    /**
+     * Variables used while parsing the template files. These should be the same
+     * variables as are used at runtime.
+     *
+     * @return variables
+     */
+    @Input
+    public abstract MapProperty<String, String> getVariables();
+
+    /**
+     * The output directory. This is where the precompiled Handle resources are placed.
+     *
+     * @return output directory
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @Override
+    public void exec() {
+        List<String> args = new ArrayList<>();
+        args.add(getSourceDirectory().get().getAsFile().getAbsolutePath());
+        args.add(getSource().get());
+        args.add(getTarget().get().replace('/', '.'));
+        args.add(getOutputDirectory().get().getAsFile().getAbsolutePath());
+        for (Map.Entry<String, String> variable : getVariables().get().entrySet()) {
+            args.add(variable.getKey() + "=" + variable.getValue());
+        }
+        setArgs(args);
+        super.exec();
+    }
+}
@@ -0,0 +1,76 @@
+package com.bergerkiller.mountiplex.gradle;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Runs builds of small projects that apply the plugin
+public class MountiplexPluginTest {
+    @Rule
+    public TemporaryFolder projectDir = new TemporaryFolder();
+
+    @Test
+    public void testPrecompileTemplateHandles() throws IOException {
+        String output = dryRunJar("mountiplex {\n" +
+                                  "    precompileTemplateHandles()\n" +
+                                  "}\n");
+
+        // The precompiled handles are generated from the compiled classes, and packaged into the jar
+        assertTaskOrder(output, ":compileJava", ":precompileTemplateHandles", ":jar");
+    }
+
+    @Test
+    public void testPrecompileTemplateHandlesRemapped() throws IOException {
+        String output = dryRunJar("mountiplex {\n" +
+                                  "    remapAnnotationStrings()\n" +
+                                  "    precompileTemplateHandles()\n" +
+                                  "}\n");
+
+        assertTaskOrder(output, ":compileJava", ":remapAnnotations", ":precompileTemplateHandles", ":jar");
+    }
+
+    // Plans a build of the jar of a project configured with the script, which fails if tasks depend on each other
+    private String dryRunJar(String mountiplexConfig) throws IOException {
+        write("settings.gradle", "rootProject.name = 'test'\n");
+        write("build.gradle", "plugins {\n" +
+                              "    id 'java'\n" +
+                              "    id 'com.bergerkiller.mountiplex'\n" +
+                              "}\n" +
+                              "\n" + mountiplexConfig);
+
+        BuildResult result = GradleRunner.create()
+                .withProjectDir(projectDir.getRoot())
+                .withPluginClasspath()
+                .withArguments("jar", "--dry-run")
+                .build();
+        return result.getOutput();
+    }
+
+    private void write(String fileName, String content) throws IOException {
+        File file = new File(projectDir.getRoot(), fileName);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertTaskOrder(String output, String... taskPaths) {
+        int lastIndex = -1;
+        for (String taskPath : taskPaths) {
+            int index = output.indexOf(taskPath + " SKIPPED");
+            if (index == -1) {
+                fail("Task " + taskPath + " is not run:\n" + output);
+            }
+            if (index < lastIndex) {
+                fail("Task " + taskPath + " is run too early:\n" + output);
+            }
+            lastIndex = index;
+        }
+    }
+}
@@ -11,7 +11,11 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
@@ -34,6 +38,7 @@ import com.bergerkiller.mountiplex.conversion.type.ChainConverter;
 import com.bergerkiller.mountiplex.conversion.type.DuplexConverter;
 import com.bergerkiller.mountiplex.conversion.type.InputConverter;
 import com.bergerkiller.mountiplex.conversion.type.NullConverter;
+import com.bergerkiller.mountiplex.conversion.type.PrimitiveConverter;
 import com.bergerkiller.mountiplex.reflection.declarations.ClassResolver;
 import com.bergerkiller.mountiplex.reflection.declarations.FieldDeclaration;
 import com.bergerkiller.mountiplex.reflection.declarations.MethodDeclaration;
@@ -45,8 +50,12 @@ import com.bergerkiller.mountiplex.reflection.util.InputTypeMap;
 
 public class Conversion {
     private static final DeferLock deferLock = new DeferLock();
-    private static final Map<TypeTuple, Converter<Object, Object>> converters = new HashMap<TypeTuple, Converter<Object, Object>>();
+    private static final Map<TypeTuple, Converter<Object, Object>> converters = new ConcurrentHashMap<TypeTuple, Converter<Object, Object>>();
+    private static final Set<TypeTuple> registered = new HashSet<TypeTuple>();
+    private static final Map<Converter<?, ?>, Converter<Object, Object>> primitiveOutputConverters = new ConcurrentHashMap<Converter<?, ?>, Converter<Object, Object>>();
+    private static final Map<Converter<?, ?>, Converter<Object, Object>[]> primitiveConverterVariants = new ConcurrentHashMap<Converter<?, ?>, Converter<Object, Object>[]>();
     private static final ArrayList<ConverterProvider> providers = new ArrayList<ConverterProvider>();
+    private static boolean chainFusionEnabled = false;
 
     static {
         // These null converters ensure double <> Double works correctly in the conversion tree
@@ -78,6 +87,19 @@ public class Conversion {
         });
     }
 
+    /**
+     * Sets whether converters that chain multiple conversion steps together are generated as
+     * a single class calling each step directly, instead of looping over the steps. This makes
+     * conversion faster, at the cost of generating a class for every chain that is found.
+     * Only affects converters found after calling this method.
+     *
+     * @param enabled True to generate fused converter chains, False to loop over the steps
+     * @see ChainConverter#createFused(java.util.List)
+     */
+    public static void setChainFusionEnabled(boolean enabled) {
+        chainFusionEnabled = enabled;
+    }
+
     /**
      * Registers a new converter that can convert from one input type to one output type.
      * This function will replace existing converters registered to convert between the same input/output.
@@ -114,6 +136,9 @@ public class Conversion {
             OutputConverterList.resetAll();
             OutputConverterTree.resetAll();
             converters.clear();
+            registered.clear();
+            primitiveOutputConverters.clear();
+            primitiveConverterVariants.clear();
         });
     }
 
@@ -224,6 +249,43 @@ public class Conversion {
      * @return Converter from input to output, or null if it is not found
      */
     public static Converter<Object, Object> find(TypeDeclaration input, TypeDeclaration output) {
+        Converter<Object, Object> converter = findConverter(input, output);
+
+        // Converters are shared between primitive and boxed types. A primitive converter
+        // is created for the exact types requested, so that it can still be used to convert
+        // without boxing. Otherwise, when a primitive output type is requested, null results
+        // must turn into the primitive default value, so chain a null converter that outputs
+        // the primitive type.
+        if (converter instanceof PrimitiveConverter) {
+            if (converter.input.type != input.type || converter.output.type != output.type) {
+                converter = findPrimitiveConverterVariant(converter, input.type, output.type);
+            }
+        } else if (converter != null && output.isPrimitive && !converter.output.isPrimitive) {
+            Converter<Object, Object> primitive = primitiveOutputConverters.get(converter);
+            if (primitive == null || !primitive.output.equals(output)) {
+                primitive = new ChainConverter<Object, Object>(Arrays.asList(converter, new NullConverter(converter.output, output)));
+                primitiveOutputConverters.put(converter, primitive);
+            }
+            converter = primitive;
+        }
+        return converter;
+    }
+
+    // Gets the primitive converter with the exact (primitive or boxed) input and output types, creating it once
+    @SuppressWarnings("unchecked")
+    private static Converter<Object, Object> findPrimitiveConverterVariant(Converter<Object, Object> converter, Class<?> input, Class<?> output) {
+        Converter<Object, Object>[] variants = primitiveConverterVariants.computeIfAbsent(converter,
+                c -> (Converter<Object, Object>[]) new Converter<?, ?>[4]);
+        int index = (input.isPrimitive() ? 1 : 0) | (output.isPrimitive() ? 2 : 0);
+        Converter<Object, Object> variant = variants[index];
+        if (variant == null) {
+            variant = PrimitiveConverter.create(input, output, converter.getCost());
+            variants[index] = variant;
+        }
+        return variant;
+    }
+
+    private static Converter<Object, Object> findConverter(TypeDeclaration input, TypeDeclaration output) {
         TypeTuple key;
         try {
             key = new TypeTuple(input, output);
@@ -238,11 +300,22 @@ public class Conversion {
         }
 
         // Try to look it up first, which most commonly will succeed
+        // The converters mapping is concurrent, so this requires no locking. We can only
+        // trust it when no converter registrations are pending, as those can replace
+        // previously resolved converters.
+        if (!deferLock.hasPending()) {
+            Converter<Object, Object> result = converters.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+
         OutputConverterTree outputTree = null;
         OutputConverterTree.Node inputNode = null;
 
         deferLock.lock();
         try {
+            // Lock also processes pending registrations, so check again
             Converter<Object, Object> result = converters.get(key);
             if (result != null) {
                 return result;
@@ -257,6 +330,16 @@ public class Conversion {
                 return result;
             }
 
+            // Conversion between primitive numbers and booleans is done by a primitive converter,
+            // which can also convert without boxing. The registered converters between the boxed
+            // types convert the same way, but could be chained together with a generic Number converter.
+            // The converter is stored for the boxed types, find() creates the primitive variants.
+            if (PrimitiveConverter.isSupported(input) && PrimitiveConverter.isSupported(output)) {
+                result = PrimitiveConverter.create(key.t1.type, key.t2.type);
+                converters.put(key, result);
+                return result;
+            }
+
             // Since we're already locked, look up an existing output node in the tree
             // This helps us see whether or not to initialize the type
             outputTree = OutputConverterTree.getIfExists(output);
@@ -448,14 +531,37 @@ public class Conversion {
         });
     }
 
-    // Resets cached mappings for an input and output, then adds a new converter for doing the conversion
+    // Adds a new converter for doing the conversion, and updates the conversion paths it makes cheaper
     // Note: not possible to specify input/output types, they must match what the converter says
     @SuppressWarnings("unchecked")
     private static void addConverterToMapping(Converter<?, ?> converter) {
-        OutputConverterList.get(converter.output).addConverter(converter);
-        OutputConverterTree.resetTypeChange(converter.input);
-        OutputConverterTree.resetTypeChange(converter.output);
-        converters.put(new TypeTuple(converter), (Converter<Object, Object>) converter);
+        List<OutputConverterList> changed = OutputConverterList.get(converter.output).addConverter(converter);
+        if (!changed.isEmpty()) {
+            OutputConverterTree.updateAll(converter.input, changed);
+        }
+        TypeTuple key = new TypeTuple(converter);
+        registered.add(key);
+        converters.put(key, (Converter<Object, Object>) converter);
+    }
+
+    // Removes previously found converters to an output type, so they are looked up again.
+    // If input types are specified, only removes the converters for inputs of those types.
+    // Converters that were registered for exactly the input and output type are kept.
+    private static void removeConverters(TypeDeclaration output, Collection<TypeDeclaration> inputs) {
+        TypeDeclaration boxedOutput = output.getBoxedType();
+        converters.keySet().removeIf(key -> {
+            if (!key.t2.equals(boxedOutput) || registered.contains(key)) {
+                return false;
+            } else if (inputs == null) {
+                return true;
+            }
+            for (TypeDeclaration input : inputs) {
+                if (key.t1.isInstanceOf(input.getBoxedType())) {
+                    return true;
+                }
+            }
+            return false;
+        });
     }
 
     private static boolean initType(TypeDeclaration type) {
@@ -512,19 +618,19 @@ public class Conversion {
         }
     }
 
-    // maintains the converter tree from all input types that can be converted to the output type
-    // this tree is created as large as is needed to find the input type requested
+    // maintains the cheapest conversion paths from all input types that can be converted to the output type
+    // paths are found cheapest-first, and are updated in place when new converters are registered
     private static final class OutputConverterTree {
         private static HashMap<TypeDeclaration, OutputConverterTree> trees = new HashMap<TypeDeclaration, OutputConverterTree>();
+        private static final int MAX_STEPS = 100000;
         private final Node root;
         private final InputTypeMap<Node> mapping = new InputTypeMap<Node>();
-        private final ArrayList<Node> lastNodes = new ArrayList<Node>();
-        private final ArrayList<Node> nextNodes = new ArrayList<Node>();
+        private final HashMap<TypeDeclaration, Node> nodes = new HashMap<TypeDeclaration, Node>();
+        private final PriorityQueue<Node> pending = new PriorityQueue<Node>();
         private Converter<?, Object> nullConverter = null;
         private boolean nullConverterSearched = false;
-        private boolean isReset = false;
         public final InputConverter<Object> converter;
-        private int stepStuckCounter = 0;
+        private int nodeCounter = 0;
 
         public OutputConverterTree(TypeDeclaration output) {
             this.root = new Node(null, new NullConverter(output, output));
@@ -587,8 +693,8 @@ public class Conversion {
                 return (ignoredInput, ignoredOutput) -> converter;
             }
 
-            // Keep looping until done and no more resets occur
-            while (!generateDeeper());
+            // Find the cheapest paths of all types that have not been searched yet
+            generate(null);
 
             // find the converter in the mapping generated by the operation before
             NodeConverterProvider foundProvider = findInMapping(input);
@@ -601,28 +707,92 @@ public class Conversion {
             return foundProvider;
         }
 
-        public boolean generateDeeper() {
-            // generate more layers deeper into the tree
-            stepStuckCounter = 0;
-            isReset = false;
-            while (!nextNodes.isEmpty()) {
-                lastNodes.clear();
-                lastNodes.addAll(nextNodes);
-                nextNodes.clear();
-                for (Node nextNode : lastNodes) {
-                    nextNode.step();
-                    if (this.isReset) {
-                        return false;
-                    }
-                    nextNodes.addAll(nextNode.children);
+        // visits pending nodes cheapest-first, until the cheapest path of every reachable type is known
+        private void generate(Collection<TypeDeclaration> improved) {
+            int steps = 0;
+            Node node;
+            while ((node = pending.poll()) != null) {
+                if (nodes.get(node.converter.input) != node) {
+                    continue; // A cheaper path was found after this node was queued
+                }
+
+                // This here mechanic protects and reports endless searches, instead of freezing
+                // Costs are never negative, so this should never happen
+                if (++steps > MAX_STEPS) {
+                    MountiplexUtil.LOGGER.severe("Cyclical Conversion search detected!");
+                    MountiplexUtil.LOGGER.severe("Next [" + node.cost + "]: " + node.converter);
+                    pending.clear();
+                    break;
                 }
-                if (nextNodes.isEmpty()) {
-                    lastNodes.clear();
-                    lastNodes.trimToSize();
-                    nextNodes.trimToSize();
+
+                for (Converter<?, ?> next : OutputConverterList.get(node.converter.input).getConverters()) {
+                    relax(new Node(node, next), improved);
                 }
             }
+        }
 
+        // adds a node if it is a cheaper way to convert from its input type than is known right now
+        private boolean relax(Node node, Collection<TypeDeclaration> improved) {
+            TypeDeclaration input = node.converter.input;
+            Node old = mapping.get(input);
+            if (old != null && old.cost <= node.cost) {
+                return false;
+            }
+            if (nodes.get(node.previous.converter.input) != node.previous) {
+                return false; // Tree was reset while generating
+            }
+
+            Node replaced = nodes.put(input, node);
+            if (replaced != null) {
+                replaced.previous.children.remove(replaced);
+            }
+            mapping.put(input, node);
+            node.previous.children.add(node);
+            pending.add(node);
+            if (improved != null) {
+                improved.add(input);
+            }
+            return true;
+        }
+
+        /**
+         * Updates the paths in this tree after the converters from an input type to the output types
+         * of a number of lists changed. Only the paths that become cheaper are searched again.
+         * If a converter currently used in a path was replaced, the tree is reset instead.
+         *
+         * @param input Input type of the converters that changed
+         * @param changed Lists whose converter for the input type changed
+         * @param improved Collection to which the input types whose path changed are added
+         * @return True if the tree was updated, False if it was reset
+         */
+        public boolean update(TypeDeclaration input, List<OutputConverterList> changed, Collection<TypeDeclaration> improved) {
+            boolean generated = pending.isEmpty();
+            Node inputNode = nodes.get(input);
+            for (OutputConverterList list : changed) {
+                if (list.output.equals(root.converter.output)) {
+                    nullConverterSearched = false;
+                }
+
+                Node outputNode = nodes.get(list.output);
+                if (outputNode == null) {
+                    continue; // Not reachable, so a path from the input type through it is impossible
+                }
+
+                Converter<?, ?> newConverter = list.getConverter(input);
+                if (inputNode != null && inputNode.previous == outputNode && inputNode.converter != newConverter) {
+                    reset();
+                    return false;
+                }
+                if (newConverter != null) {
+                    relax(new Node(outputNode, newConverter), improved);
+                }
+            }
+
+            // Only search deeper right away if the tree was already generated.
+            // Otherwise this is done when a converter is next requested.
+            if (generated) {
+                generate(improved);
+            }
             return true;
         }
 
@@ -651,10 +821,11 @@ public class Conversion {
             this.nullConverterSearched = false;
             this.mapping.clear();
             this.mapping.put(this.root.converter.input, this.root);
-            this.lastNodes.clear();
-            this.nextNodes.clear();
-            this.nextNodes.add(this.root);
-            this.isReset = true; // to avoid concurrent modification errors
+            this.nodes.clear();
+            this.nodes.put(this.root.converter.input, this.root);
+            this.root.children.clear();
+            this.pending.clear();
+            this.pending.add(this.root);
         }
 
         @FunctionalInterface
@@ -683,18 +854,26 @@ public class Conversion {
             }
         }
 
-        private final class Node implements NodeConverterProvider {
-            private static final int MAX_STEPS = 10000;
+        private final class Node implements NodeConverterProvider, Comparable<Node> {
             public final Node previous;
             public final Converter<Object, Object> converter;
             public final ArrayList<Node> children = new ArrayList<Node>();
             public final int cost;
+            private final int order;
 
             @SuppressWarnings("unchecked")
             public Node(Node previous, Converter<?, ?> converter) {
                 this.converter = (Converter<Object, Object>) converter;
                 this.previous = previous;
                 this.cost = (previous == null) ? 0 : (previous.cost + converter.getCost() + 1);
+                this.order = nodeCounter++;
+            }
+
+            // cheapest first, and in the order found when equally expensive
+            @Override
+            public int compareTo(Node other) {
+                return (this.cost != other.cost) ? Integer.compare(this.cost, other.cost)
+                                                 : Integer.compare(this.order, other.order);
             }
 
             @Override
@@ -729,7 +908,11 @@ public class Conversion {
                     node = node.previous;
                 } while (node != root);
 
-                return new ChainConverter<Object, Object>(converters);
+                if (chainFusionEnabled) {
+                    return ChainConverter.createFused(converters);
+                } else {
+                    return new ChainConverter<Object, Object>(converters);
+                }
             }
 
             @Override
@@ -745,32 +928,6 @@ public class Conversion {
                 return true;
             }
 
-            // generates the next series of input conversion steps
-            public final void step() {
-                // This here mechanic protects and reports endless step() calls, instead of freezing
-                if (stepStuckCounter >= (MAX_STEPS + 10)) {
-                    return;
-                }
-                for (Converter<?, ?> next : OutputConverterList.get(this.converter.input).getConverters()) {
-                    Node n = new Node(this, next);
-                    Node old = mapping.get(next.input);
-                    if (old == null || old.cost > n.cost) {
-                        mapping.put(next.input, n);
-                        this.children.add(n);
-                        ++stepStuckCounter;
-                        if (stepStuckCounter == MAX_STEPS) {
-                            MountiplexUtil.LOGGER.severe("Cyclical Conversion step() detected!");
-                            if (this.previous != null) {
-                                MountiplexUtil.LOGGER.severe("Previous: " + this.previous.converter);
-                            }
-                        }
-                        if (stepStuckCounter >= MAX_STEPS) {
-                            MountiplexUtil.LOGGER.severe("Next [" + n.cost + "]: " + n.converter);
-                        }
-                    }
-                }
-            }
-
             // debug-prints this node and its children to a StringBuilder
             public final void debugPrint(Node highlighted, StringBuilder str, int indent) {
                 StringBuilder childStr = new StringBuilder();
@@ -807,10 +964,16 @@ public class Conversion {
             }
         }
 
-        public static void resetTypeChange(TypeDeclaration type) {
+        // updates all trees after the converters from an input type to the output types of some lists changed
+        // converters found before that have a cheaper path now are removed from the converters mapping
+        public static void updateAll(TypeDeclaration input, List<OutputConverterList> changed) {
+            ArrayList<TypeDeclaration> improved = new ArrayList<TypeDeclaration>();
             for (OutputConverterTree tree : trees.values()) {
-                if (tree.mapping.containsKey(type)) {
-                    tree.reset();
+                if (!tree.update(input, changed, improved)) {
+                    removeConverters(tree.root.converter.output, null);
+                } else if (!improved.isEmpty()) {
+                    removeConverters(tree.root.converter.output, improved);
+                    improved.clear();
                 }
             }
         }
@@ -838,6 +1001,7 @@ public class Conversion {
         private final LinkedHashMap<TypeDeclaration, Converter<?, ?>> converters = new LinkedHashMap<TypeDeclaration, Converter<?, ?>>();
         private final ArrayList<OutputConverterList> parents = new ArrayList<OutputConverterList>();
         private final HashSet<OutputConverterList> children = new HashSet<OutputConverterList>();
+        private final HashSet<TypeDeclaration> inherited = new HashSet<TypeDeclaration>();
         private boolean regen;
 
         public OutputConverterList(TypeDeclaration output) {
@@ -845,9 +1009,57 @@ public class Conversion {
             this.reset();
         }
 
-        public final void addConverter(Converter<?, ?> converter) {
+        // adds a converter, and returns the lists whose converter for the input type of the converter changed
+        // this includes lists that are not generated right now, as it is not known what they will include
+        public final List<OutputConverterList> addConverter(Converter<?, ?> converter) {
+            ArrayList<OutputConverterList> changed = new ArrayList<OutputConverterList>();
             this.single.put(converter.input, converter);
-            this.reset();
+            this.updateConverter(converter.input, changed);
+            return changed;
+        }
+
+        // updates the converter for a single input type, and that of the lists that include our converters
+        private final void updateConverter(TypeDeclaration input, List<OutputConverterList> changed) {
+            if (this.regen) {
+                // Children are reset together with us, so they are not generated either
+                if (!changed.contains(this)) {
+                    changed.add(this);
+                    for (OutputConverterList child : children) {
+                        child.updateConverter(input, changed);
+                    }
+                }
+                return;
+            }
+
+            Converter<?, ?> current = this.converters.get(input);
+            Converter<?, ?> updated = this.single.get(input);
+            if (updated != null) {
+                this.inherited.remove(input);
+            } else if (current != null && !this.inherited.contains(input)) {
+                return; // Provided by a converter provider, which takes precedence over parents
+            } else {
+                for (OutputConverterList parent : this.parents) {
+                    parent.genConverters();
+                    if ((updated = parent.converters.get(input)) != null) {
+                        this.inherited.add(input);
+                        break;
+                    }
+                }
+            }
+            if (updated == current) {
+                return;
+            }
+
+            if (updated == null) {
+                this.converters.remove(input);
+                this.inherited.remove(input);
+            } else {
+                this.converters.put(input, updated);
+            }
+            changed.add(this);
+            for (OutputConverterList child : children) {
+                child.updateConverter(input, changed);
+            }
         }
 
         // sets a parent class for another class (e.g. Long is a parent of Number)
@@ -863,6 +1075,7 @@ public class Conversion {
         public final void reset() {
             this.regen = true;
             this.converters.clear();
+            this.inherited.clear();
             for (OutputConverterList child : children) {
                 child.reset();
             }
@@ -875,6 +1088,12 @@ public class Conversion {
             return this.converters.values();
         }
 
+        // gets the converter to convert from an input type to the output type, or null if there is none
+        public final Converter<?, ?> getConverter(TypeDeclaration input) {
+            this.genConverters();
+            return this.converters.get(input);
+        }
+
         // generates the converter mapping
         private final void genConverters() {
             if (this.regen) {
@@ -906,7 +1125,9 @@ public class Conversion {
                 for (OutputConverterList parent : this.parents) {
                     parent.genConverters();
                     for (Converter<?, ?> converter : parent.converters.values()) {
-                        this.converters.putIfAbsent(converter.input, converter);
+                        if (this.converters.putIfAbsent(converter.input, converter) == null) {
+                            this.inherited.add(converter.input);
+                        }
                     }
                 }
             }
@@ -1037,6 +1258,16 @@ public class Conversion {
             }
         }
 
+        /**
+         * Gets whether tasks were scheduled that have not yet been run.
+         * Can be called without owning the lock.
+         *
+         * @return True if tasks are pending
+         */
+        public boolean hasPending() {
+            return hasPending;
+        }
+
         public void processPending() {
             while (hasPending) {
                 ArrayList<Runnable> pendingCopy;
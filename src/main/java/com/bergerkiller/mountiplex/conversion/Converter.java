@@ -1,5 +1,9 @@
 package com.bergerkiller.mountiplex.conversion;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Function;
 
 import com.bergerkiller.mountiplex.reflection.declarations.TypeDeclaration;
@@ -111,6 +115,74 @@ public abstract class Converter<I, O> implements Function<Object, O> {
         return result;
     }
 
+    /**
+     * Converts a number of values of an input array, and stores the converted values in an
+     * output array. The result is the same as calling {@link #convert(Object)} for every value,
+     * but the input type is only checked once for consecutive values of the same type.
+     * The input and output array may be the same array, to convert values in place.
+     * 
+     * @param input Array of values to be converted
+     * @param inputOffset Index of the first value in the input array to convert
+     * @param output Array to store the converted values in
+     * @param outputOffset Index in the output array where the first converted value is stored
+     * @param length Number of values to convert
+     */
+    @SuppressWarnings("unchecked")
+    public void convertAll(Object[] input, int inputOffset, Object[] output, int outputOffset, int length) {
+        Class<?> inputType = this.input.type;
+        if (inputType.isPrimitive()) {
+            inputType = BoxedType.getBoxedType(inputType);
+        }
+        boolean acceptsNull = this.acceptsNullInput();
+        Object defaultValue = this.output.isPrimitive ? BoxedType.getDefaultValue(this.output.type) : null;
+        Class<?> lastValueType = null;
+        for (int i = 0; i < length; i++) {
+            Object value = input[inputOffset + i];
+            Object result = null;
+            if (value != null) {
+                Class<?> valueType = value.getClass();
+                if (valueType == lastValueType || inputType.isAssignableFrom(valueType)) {
+                    lastValueType = valueType;
+                    result = this.convertInput((I) value);
+                }
+            } else if (acceptsNull) {
+                result = this.convertInput(null);
+            }
+            output[outputOffset + i] = (result == null) ? defaultValue : result;
+        }
+    }
+
+    /**
+     * Converts all values of an input collection, and adds the converted values to
+     * an output list. The values are converted with
+     * {@link #convertAll(Object[], int, Object[], int, int)} and added in one call.
+     * 
+     * @param input Collection of values to be converted
+     * @param output List to add the converted values to
+     */
+    @SuppressWarnings("unchecked")
+    public final void convertAll(Collection<?> input, List<? super O> output) {
+        Object[] values = input.toArray();
+        if (values.getClass() != Object[].class) {
+            values = Arrays.copyOf(values, values.length, Object[].class);
+        }
+        this.convertAll(values, 0, values, 0, values.length);
+        output.addAll((List<O>) Arrays.asList(values));
+    }
+
+    /**
+     * Converts all values of an input collection into a new list
+     * 
+     * @param input Collection of values to be converted
+     * @return new list of converted values, in the same order as the input collection
+     * @see #convertAll(Collection, List)
+     */
+    public final List<O> convertAll(Collection<?> input) {
+        ArrayList<O> result = new ArrayList<O>(input.size());
+        this.convertAll(input, result);
+        return result;
+    }
+
     /**
      * Gets whether this Converter is lazy. A lazy converter is used as a last resort,
      * when no other converters exist to perform a conversion. If a converter converts
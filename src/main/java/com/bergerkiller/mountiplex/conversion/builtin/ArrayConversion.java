@@ -14,6 +14,7 @@ import com.bergerkiller.mountiplex.conversion.type.DuplexConverter;
 import com.bergerkiller.mountiplex.conversion.type.InputConverter;
 import com.bergerkiller.mountiplex.conversion.type.RawConverter;
 import com.bergerkiller.mountiplex.conversion.util.ConvertingList;
+import com.bergerkiller.mountiplex.conversion.util.PrimitiveArrayList;
 import com.bergerkiller.mountiplex.reflection.declarations.TypeDeclaration;
 import com.bergerkiller.mountiplex.reflection.util.BoxedType;
 
@@ -30,6 +31,15 @@ public class ArrayConversion {
             Class<?> boxedArray = MountiplexUtil.getArrayType(boxedType);
             Conversion.registerConverter(new ArrayConverter(unboxedArray, boxedArray));
             Conversion.registerConverter(new ArrayConverter(boxedArray, unboxedArray));
+
+            // int[] -> List<Integer> as a List view of the array
+            TypeDeclaration listType = TypeDeclaration.fromClass(List.class).setGenericTypes(TypeDeclaration.fromClass(boxedType));
+            Conversion.registerConverter(new Converter<Object, List<?>>(TypeDeclaration.fromClass(unboxedArray), listType) {
+                @Override
+                public List<?> convertInput(Object value) {
+                    return PrimitiveArrayList.wrap(value);
+                }
+            });
         }
 
         // Type Object[] -> List<Object> allows for generic conversions to occur in the chain
@@ -76,18 +86,50 @@ public class ArrayConversion {
                                 }
                             }
 
-                            // Arrays like int[] or that lack a reverse converter can't easily be put into Arrays.asList
-                            // Instead convert each element individually
-                            // TODO: Perhaps a custom List type that can handle this?
+                            // Arrays like Object[] that lack a reverse converter are converted in one go
+                            if (!inputElementType.isPrimitive) {
+                                return new Converter<Object, List<?>>(input, this.output) {
+                                    @Override
+                                    public List<?> convertInput(Object value) {
+                                        Object[] values = (Object[]) value;
+                                        Object[] result = new Object[values.length];
+                                        elementConverter.convertAll(values, 0, result, 0, values.length);
+                                        return new ArrayList<Object>(Arrays.asList(result));
+                                    }
+                                };
+                            }
+
+                            // Arrays like int[] are interfaced using a List view that boxes the elements
+                            // When the boxed elements are already of the right type, the view can be used as-is
+                            Class<?> boxedInputType = BoxedType.getBoxedType(inputElementType.type);
+                            if (outputElementType.type.isAssignableFrom(boxedInputType)) {
+                                return new Converter<Object, List<?>>(input, this.output) {
+                                    @Override
+                                    public List<?> convertInput(Object value) {
+                                        return PrimitiveArrayList.wrap(value);
+                                    }
+                                };
+                            }
+
+                            // Otherwise the elements are converted on access, when a reverse converter is available
+                            Converter<Object, Object> reverseConverter = Conversion.find(outputElementType, inputElementType);
+                            if (reverseConverter != null) {
+                                final DuplexConverter<Object, Object> duplexConverter = DuplexConverter.pair(elementConverter, reverseConverter);
+                                return new Converter<Object, List<?>>(input, this.output) {
+                                    @Override
+                                    public List<?> convertInput(Object value) {
+                                        return new ConvertingList<Object>(PrimitiveArrayList.wrap(value), duplexConverter);
+                                    }
+                                };
+                            }
+
+                            // Or converted in one go, into a new List
                             return new Converter<Object, List<?>>(input, this.output) {
                                 @Override
                                 public List<?> convertInput(Object value) {
-                                    int arrLen = Array.getLength(value);
-                                    ArrayList<Object> result = new ArrayList<Object>(arrLen);
-                                    for (int i = 0; i < arrLen; i++) {
-                                        result.add(elementConverter.convert(Array.get(value, i)));
-                                    }
-                                    return result;
+                                    Object[] values = PrimitiveArrayList.wrap(value).toArray();
+                                    elementConverter.convertAll(values, 0, values, 0, values.length);
+                                    return new ArrayList<Object>(Arrays.asList(values));
                                 }
                             };
                         }
@@ -133,15 +175,27 @@ public class ArrayConversion {
                             }
 
                             // Create final converter for List<Type1> to Type2[]
+                            // Arrays of objects are converted in one go
+                            if (!outputElementType.isPrimitive) {
+                                return new Converter<Collection<?>, Object>(input, this.output) {
+                                    @Override
+                                    public Object convertInput(Collection<?> value) {
+                                        Object[] inArray = value.toArray();
+                                        Object[] result = MountiplexUtil.createArray(outputElementType.type, inArray.length);
+                                        elementConverter.convertAll(inArray, 0, result, 0, inArray.length);
+                                        return result;
+                                    }
+                                };
+                            }
+                            // Arrays of primitives are filled with the converted values in one go
                             return new Converter<Collection<?>, Object>(input, this.output) {
                                 @Override
                                 public Object convertInput(Collection<?> value) {
-                                    Object[] inArray = value.toArray(MountiplexUtil.createArray(inputElementType.type, value.size()));
-                                    int arrSize = inArray.length;
-                                    Object result = Array.newInstance(outputElementType.type, arrSize);
-                                    for (int i = 0; i < inArray.length; i++) {
-                                        Array.set(result, i, elementConverter.convert(inArray[i]));
-                                    }
+                                    Object[] inArray = value.toArray();
+                                    Object[] converted = new Object[inArray.length];
+                                    elementConverter.convertAll(inArray, 0, converted, 0, inArray.length);
+                                    Object result = Array.newInstance(outputElementType.type, inArray.length);
+                                    PrimitiveArrayList.wrap(result).setAll(converted);
                                     return result;
                                 }
                             };
@@ -164,15 +218,36 @@ public class ArrayConversion {
                                 return null;
                             }
 
+                            // Arrays of objects are converted in one go
+                            if (!elementInput.isPrimitive && !elementOutput.isPrimitive) {
+                                return new Converter<Object, Object>(input, output) {
+                                    @Override
+                                    public Object convertInput(Object value) {
+                                        Object[] values = (Object[]) value;
+                                        Object[] result = MountiplexUtil.createArray(elementOutput.type, values.length);
+                                        elementConverter.convertAll(values, 0, result, 0, values.length);
+                                        return result;
+                                    }
+                                };
+                            }
+
+                            // Arrays of primitives are boxed and unboxed using a List view of the array
+                            final boolean inputPrimitive = elementInput.isPrimitive;
                             return new Converter<Object, Object>(input, output) {
                                 @Override
                                 public Object convertInput(Object value) {
-                                    int arrSize = Array.getLength(value);
-                                    Object result = Array.newInstance(elementOutput.type, arrSize);
-                                    for (int i = 0; i < arrSize; i++) {
-                                        Array.set(result, i, elementConverter.convert(Array.get(value, i)));
+                                    Object[] values = inputPrimitive ? PrimitiveArrayList.wrap(value).toArray() : (Object[]) value;
+                                    if (elementOutput.isPrimitive) {
+                                        Object[] converted = new Object[values.length];
+                                        elementConverter.convertAll(values, 0, converted, 0, values.length);
+                                        Object result = Array.newInstance(elementOutput.type, values.length);
+                                        PrimitiveArrayList.wrap(result).setAll(converted);
+                                        return result;
+                                    } else {
+                                        Object[] result = MountiplexUtil.createArray(elementOutput.type, values.length);
+                                        elementConverter.convertAll(values, 0, result, 0, values.length);
+                                        return result;
                                     }
-                                    return result;
                                 }
                             };
                         }
@@ -194,12 +269,21 @@ public class ArrayConversion {
 
         @Override
         public Object convertInput(Object value) {
-            int len = Array.getLength(value);
-            Object result = Array.newInstance(this.output.type.getComponentType(), len);
-            for (int i = 0; i < len; i++) {
-                Array.set(result, i, componentConverter.convert(Array.get(value, i)));
+            // Converts between primitive arrays and arrays of the boxed type, like int[] <> Integer[]
+            Class<?> outputComponentType = this.output.type.getComponentType();
+            if (outputComponentType.isPrimitive()) {
+                Object[] values = (Object[]) value;
+                Object[] converted = new Object[values.length];
+                componentConverter.convertAll(values, 0, converted, 0, values.length);
+                Object result = Array.newInstance(outputComponentType, values.length);
+                PrimitiveArrayList.wrap(result).setAll(converted);
+                return result;
+            } else {
+                PrimitiveArrayList<?> values = PrimitiveArrayList.wrap(value);
+                Object[] result = MountiplexUtil.createArray(outputComponentType, values.size());
+                values.copyTo(result);
+                return result;
             }
-            return result;
         }
     }
 }
@@ -2,6 +2,7 @@ package com.bergerkiller.mountiplex.conversion.builtin;
 
 import com.bergerkiller.mountiplex.conversion.Conversion;
 import com.bergerkiller.mountiplex.conversion.Converter;
+import com.bergerkiller.mountiplex.conversion.type.PrimitiveConverter;
 
 public class NumberConversion {
     public static void register() {
@@ -127,6 +128,18 @@ public class NumberConversion {
                 return value.doubleValue();
             }
         });
+
+        // Direct conversion between all number types. These converters can also convert
+        // primitive values without boxing, which is used by converted template fields.
+        Class<?>[] numberTypes = new Class<?>[] {
+                Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class };
+        for (Class<?> input : numberTypes) {
+            for (Class<?> output : numberTypes) {
+                if (input != output) {
+                    Conversion.registerConverter(PrimitiveConverter.create(input, output));
+                }
+            }
+        }
     }
 
     private static abstract class NumberParser <T> extends Converter<String, T> {
@@ -1,13 +1,23 @@
 package com.bergerkiller.mountiplex.conversion.type;
 
+import static org.objectweb.asm.Opcodes.*;
+
 import java.util.List;
+import java.util.logging.Level;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
 
+import com.bergerkiller.mountiplex.MountiplexUtil;
 import com.bergerkiller.mountiplex.conversion.Converter;
+import com.bergerkiller.mountiplex.reflection.util.ExtendedClassWriter;
+import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
 
 /**
  * Combines a chain of conversions into a single Converter
  */
-public final class ChainConverter<I, O> extends Converter<I, O> {
+public class ChainConverter<I, O> extends Converter<I, O> {
     private final Converter<Object, Object>[] converters;
     private final boolean acceptsNull;
 
@@ -18,6 +28,89 @@ public final class ChainConverter<I, O> extends Converter<I, O> {
         this.acceptsNull = this.converters[0].acceptsNullInput();
     }
 
+    /**
+     * Creates a chain converter that calls all the converters in the chain from a single
+     * generated method, rather than looping over them. Every step of the chain is stored
+     * in a static final field of the generated class, and has its own call site, which
+     * allows the JIT to inline the steps.<br>
+     * <br>
+     * If one of the converters can not be fused, because it can change later on (like a
+     * {@link LazyConverter}), then a normal chain converter is returned instead.
+     *
+     * @param chain Chain of converters
+     * @return chain converter
+     */
+    public static <I, O> ChainConverter<I, O> createFused(List<Converter<?, ?>> chain) {
+        for (Converter<?, ?> converter : chain) {
+            if (converter instanceof LazyConverter) {
+                return new ChainConverter<I, O>(chain);
+            }
+        }
+
+        try {
+            return generateFused(chain);
+        } catch (Throwable t) {
+            MountiplexUtil.LOGGER.log(Level.WARNING, "Failed to generate fused converter chain", t);
+            return new ChainConverter<I, O>(chain);
+        }
+    }
+
+    private static <I, O> ChainConverter<I, O> generateFused(List<Converter<?, ?>> chain) {
+        final ExtendedClassWriter<ChainConverter<I, O>> cw = ExtendedClassWriter.builder(ChainConverter.class)
+                .setFlags(ClassWriter.COMPUTE_MAXS)
+                .setAccess(ACC_FINAL)
+                .build();
+        final String converterDesc = MPLType.getDescriptor(Converter.class);
+        final String converterInternalName = MPLType.getInternalName(Converter.class);
+        MethodVisitor mv;
+
+        // Store all converters as static final fields so they are constant to the JIT
+        for (int i = 0; i < chain.size(); i++) {
+            cw.visitStaticField("step" + i, Converter.class, chain.get(i));
+        }
+
+        // Constructor (List)
+        {
+            mv = cw.visitMethod(ACC_PUBLIC, "<init>", "(Ljava/util/List;)V", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKESPECIAL, MPLType.getInternalName(ChainConverter.class), "<init>", "(Ljava/util/List;)V", false);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(2, 2);
+            mv.visitEnd();
+        }
+
+        // convertInput(Object) calling each step in turn, returning null early
+        {
+            Label nullLabel = new Label();
+            mv = cw.visitMethod(ACC_PUBLIC, "convertInput", "(Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+            mv.visitCode();
+            for (int i = 0; i < chain.size(); i++) {
+                mv.visitFieldInsn(GETSTATIC, cw.getInternalName(), "step" + i, converterDesc);
+                mv.visitVarInsn(ALOAD, 1);
+                mv.visitMethodInsn(INVOKEVIRTUAL, converterInternalName, "convertInput", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+                if (i == (chain.size() - 1)) {
+                    mv.visitInsn(ARETURN);
+                } else {
+                    mv.visitInsn(DUP);
+                    mv.visitVarInsn(ASTORE, 1);
+                    mv.visitJumpInsn(IFNULL, nullLabel);
+                }
+            }
+            if (chain.size() > 1) {
+                mv.visitLabel(nullLabel);
+                mv.visitFrame(F_SAME, 0, null, 0, null);
+                mv.visitInsn(ACONST_NULL);
+                mv.visitInsn(ARETURN);
+            }
+            mv.visitMaxs(0, 0); // Computed
+            mv.visitEnd();
+        }
+
+        return cw.generateInstance(new Class<?>[] { List.class }, new Object[] { chain });
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public O convertInput(I value) {
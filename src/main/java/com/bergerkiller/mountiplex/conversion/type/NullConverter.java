@@ -23,6 +23,16 @@ public final class NullConverter extends RawConverter {
         return value;
     }
 
+    @Override
+    public void convertAll(Object[] input, int inputOffset, Object[] output, int outputOffset, int length) {
+        if (this.input.type == Object.class && !this.output.isPrimitive) {
+            // Every value is accepted and returned as-is
+            System.arraycopy(input, inputOffset, output, outputOffset, length);
+        } else {
+            super.convertAll(input, inputOffset, output, outputOffset, length);
+        }
+    }
+
     @Override
     public int getCost() {
         return 0;
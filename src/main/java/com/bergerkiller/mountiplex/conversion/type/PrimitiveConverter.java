@@ -0,0 +1,354 @@
+package com.bergerkiller.mountiplex.conversion.type;
+
+import com.bergerkiller.mountiplex.conversion.Converter;
+import com.bergerkiller.mountiplex.reflection.declarations.TypeDeclaration;
+import com.bergerkiller.mountiplex.reflection.util.BoxedType;
+import com.bergerkiller.mountiplex.reflection.util.fast.Reader;
+import com.bergerkiller.mountiplex.reflection.util.fast.Writer;
+
+/**
+ * Converts between two primitive (or boxed) number or boolean types. Besides the
+ * boxed {@link #convertInput(Object)} method, this converter offers typed conversion methods
+ * that perform the conversion without boxing the values. This is used by converted template
+ * fields to read and write primitive values without allocating.<br>
+ * <br>
+ * Conversion is identical to a primitive cast in Java, matching the behavior of
+ * {@link Number#intValue()} and similar. Boolean values are converted as 0 and 1,
+ * and numbers are converted to a boolean as <i>(int) value != 0</i>.
+ *
+ * @param <I> input type
+ * @param <O> output type
+ */
+public final class PrimitiveConverter<I, O> extends Converter<I, O> {
+    private final Kind inputKind;
+    private final Kind outputKind;
+    private final int cost;
+
+    private PrimitiveConverter(Class<?> input, Kind inputKind, Class<?> output, Kind outputKind, int cost) {
+        super(input, output);
+        this.inputKind = inputKind;
+        this.outputKind = outputKind;
+        this.cost = cost;
+    }
+
+    /**
+     * Gets whether a type is supported as input or output type of a primitive converter.
+     * These are the primitive number types and boolean, and their boxed types.
+     *
+     * @param type Type
+     * @return True if supported
+     */
+    public static boolean isSupported(Class<?> type) {
+        return Kind.get(type) != null;
+    }
+
+    /**
+     * Gets whether a type is supported as input or output type of a primitive converter.
+     *
+     * @param type Type
+     * @return True if supported
+     * @see #isSupported(Class)
+     */
+    public static boolean isSupported(TypeDeclaration type) {
+        return type.type != null && type.genericTypes.length == 0 && Kind.get(type.type) != null;
+    }
+
+    /**
+     * Creates a new primitive converter
+     *
+     * @param input Input type, primitive or boxed
+     * @param output Output type, primitive or boxed
+     * @return primitive converter
+     * @throws IllegalArgumentException If the input or output type is not supported
+     */
+    public static <I, O> PrimitiveConverter<I, O> create(Class<?> input, Class<?> output) {
+        return create(input, output, 1);
+    }
+
+    /**
+     * Creates a new primitive converter with a custom conversion cost
+     *
+     * @param input Input type, primitive or boxed
+     * @param output Output type, primitive or boxed
+     * @param cost Cost of this converter, see {@link Converter#getCost()}
+     * @return primitive converter
+     * @throws IllegalArgumentException If the input or output type is not supported
+     */
+    public static <I, O> PrimitiveConverter<I, O> create(Class<?> input, Class<?> output, int cost) {
+        Kind inputKind = Kind.get(input);
+        if (inputKind == null) {
+            throw new IllegalArgumentException("Input type " + input + " is not a primitive number or boolean");
+        }
+        Kind outputKind = Kind.get(output);
+        if (outputKind == null) {
+            throw new IllegalArgumentException("Output type " + output + " is not a primitive number or boolean");
+        }
+        return new PrimitiveConverter<I, O>(input, inputKind, output, outputKind, cost);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public O convertInput(I value) {
+        if (inputKind.floating) {
+            return (O) outputKind.box(((Number) value).doubleValue());
+        } else if (inputKind == Kind.BOOLEAN) {
+            return (O) outputKind.box(((Boolean) value).booleanValue() ? 1L : 0L);
+        } else {
+            return (O) outputKind.box(((Number) value).longValue());
+        }
+    }
+
+    @Override
+    public int getCost() {
+        return this.cost;
+    }
+
+    /**
+     * Converts a byte, short, int, long or boolean (0/1) input value to the output type,
+     * and returns the converted value as a long.
+     *
+     * @param value Input value
+     * @return Output value
+     */
+    public long convertLong(long value) {
+        switch (outputKind) {
+        case BYTE: return (byte) value;
+        case SHORT: return (short) value;
+        case INT: return (int) value;
+        case FLOAT: return (long) (float) value;
+        case BOOLEAN: return (((int) value) != 0) ? 1L : 0L;
+        default: return value;
+        }
+    }
+
+    /**
+     * Converts a float or double input value to the output type,
+     * and returns the converted value as a long.
+     *
+     * @param value Input value
+     * @return Output value
+     */
+    public long convertLong(double value) {
+        switch (outputKind) {
+        case BYTE: return (byte) value;
+        case SHORT: return (short) value;
+        case INT: return (int) value;
+        case FLOAT: return (long) (float) value;
+        case BOOLEAN: return (((int) value) != 0) ? 1L : 0L;
+        default: return (long) value;
+        }
+    }
+
+    /**
+     * Converts a byte, short, int, long or boolean (0/1) input value to the output type,
+     * and returns the converted value as a double.
+     *
+     * @param value Input value
+     * @return Output value
+     */
+    public double convertDouble(long value) {
+        switch (outputKind) {
+        case FLOAT: return (double) (float) value;
+        case DOUBLE: return (double) value;
+        default: return (double) convertLong(value);
+        }
+    }
+
+    /**
+     * Converts a float or double input value to the output type,
+     * and returns the converted value as a double.
+     *
+     * @param value Input value
+     * @return Output value
+     */
+    public double convertDouble(double value) {
+        switch (outputKind) {
+        case FLOAT: return (double) (float) value;
+        case DOUBLE: return value;
+        default: return (double) convertLong(value);
+        }
+    }
+
+    /**
+     * Reads the input value from a field reader, converts it and returns the result as a long.
+     * No boxing is performed.
+     *
+     * @param reader Reader of a field of the input type
+     * @param instance Instance to read the field of, null for static fields
+     * @return Converted output value
+     */
+    public long readLong(Reader<?> reader, Object instance) {
+        switch (inputKind) {
+        case BYTE: return convertLong((long) reader.getByte(instance));
+        case SHORT: return convertLong((long) reader.getShort(instance));
+        case INT: return convertLong((long) reader.getInteger(instance));
+        case LONG: return convertLong(reader.getLong(instance));
+        case FLOAT: return convertLong((double) reader.getFloat(instance));
+        case DOUBLE: return convertLong(reader.getDouble(instance));
+        default: return convertLong(reader.getBoolean(instance) ? 1L : 0L);
+        }
+    }
+
+    /**
+     * Reads the input value from a field reader, converts it and returns the result as a double.
+     * No boxing is performed.
+     *
+     * @param reader Reader of a field of the input type
+     * @param instance Instance to read the field of, null for static fields
+     * @return Converted output value
+     */
+    public double readDouble(Reader<?> reader, Object instance) {
+        switch (inputKind) {
+        case BYTE: return convertDouble((long) reader.getByte(instance));
+        case SHORT: return convertDouble((long) reader.getShort(instance));
+        case INT: return convertDouble((long) reader.getInteger(instance));
+        case LONG: return convertDouble(reader.getLong(instance));
+        case FLOAT: return convertDouble((double) reader.getFloat(instance));
+        case DOUBLE: return convertDouble(reader.getDouble(instance));
+        default: return convertDouble(reader.getBoolean(instance) ? 1L : 0L);
+        }
+    }
+
+    /** @see #readLong(Reader, Object) */
+    public byte readByte(Reader<?> reader, Object instance) {
+        return outputKind.floating ? (byte) readDouble(reader, instance) : (byte) readLong(reader, instance);
+    }
+
+    /** @see #readLong(Reader, Object) */
+    public short readShort(Reader<?> reader, Object instance) {
+        return outputKind.floating ? (short) readDouble(reader, instance) : (short) readLong(reader, instance);
+    }
+
+    /** @see #readLong(Reader, Object) */
+    public int readInteger(Reader<?> reader, Object instance) {
+        return outputKind.floating ? (int) readDouble(reader, instance) : (int) readLong(reader, instance);
+    }
+
+    /** @see #readDouble(Reader, Object) */
+    public float readFloat(Reader<?> reader, Object instance) {
+        return (float) readDouble(reader, instance);
+    }
+
+    /** @see #readLong(Reader, Object) */
+    public boolean readBoolean(Reader<?> reader, Object instance) {
+        return outputKind.floating ? ((int) readDouble(reader, instance) != 0) : ((int) readLong(reader, instance) != 0);
+    }
+
+    /**
+     * Converts a byte, short, int, long or boolean (0/1) input value to the output type,
+     * and writes it to a field writer. No boxing is performed.
+     *
+     * @param writer Writer of a field of the output type
+     * @param instance Instance to write the field of, null for static fields
+     * @param value Input value
+     */
+    public void writeLong(Writer<?> writer, Object instance, long value) {
+        switch (outputKind) {
+        case BYTE: writer.setByte(instance, (byte) value); break;
+        case SHORT: writer.setShort(instance, (short) value); break;
+        case INT: writer.setInteger(instance, (int) value); break;
+        case LONG: writer.setLong(instance, value); break;
+        case FLOAT: writer.setFloat(instance, (float) value); break;
+        case DOUBLE: writer.setDouble(instance, (double) value); break;
+        default: writer.setBoolean(instance, ((int) value) != 0); break;
+        }
+    }
+
+    /**
+     * Converts a float or double input value to the output type,
+     * and writes it to a field writer. No boxing is performed.
+     *
+     * @param writer Writer of a field of the output type
+     * @param instance Instance to write the field of, null for static fields
+     * @param value Input value
+     */
+    public void writeDouble(Writer<?> writer, Object instance, double value) {
+        switch (outputKind) {
+        case BYTE: writer.setByte(instance, (byte) value); break;
+        case SHORT: writer.setShort(instance, (short) value); break;
+        case INT: writer.setInteger(instance, (int) value); break;
+        case LONG: writer.setLong(instance, (long) value); break;
+        case FLOAT: writer.setFloat(instance, (float) value); break;
+        case DOUBLE: writer.setDouble(instance, value); break;
+        default: writer.setBoolean(instance, ((int) value) != 0); break;
+        }
+    }
+
+    /** @see #writeLong(Writer, Object, long) */
+    public void writeByte(Writer<?> writer, Object instance, byte value) {
+        writeLong(writer, instance, (long) value);
+    }
+
+    /** @see #writeLong(Writer, Object, long) */
+    public void writeShort(Writer<?> writer, Object instance, short value) {
+        writeLong(writer, instance, (long) value);
+    }
+
+    /** @see #writeLong(Writer, Object, long) */
+    public void writeInteger(Writer<?> writer, Object instance, int value) {
+        writeLong(writer, instance, (long) value);
+    }
+
+    /** @see #writeDouble(Writer, Object, double) */
+    public void writeFloat(Writer<?> writer, Object instance, float value) {
+        writeDouble(writer, instance, (double) value);
+    }
+
+    /** @see #writeLong(Writer, Object, long) */
+    public void writeBoolean(Writer<?> writer, Object instance, boolean value) {
+        writeLong(writer, instance, value ? 1L : 0L);
+    }
+
+    private static enum Kind {
+        BYTE(byte.class, false),
+        SHORT(short.class, false),
+        INT(int.class, false),
+        LONG(long.class, false),
+        FLOAT(float.class, true),
+        DOUBLE(double.class, true),
+        BOOLEAN(boolean.class, false);
+
+        public final Class<?> boxed;
+        public final Class<?> unboxed;
+        public final boolean floating;
+
+        private Kind(Class<?> unboxed, boolean floating) {
+            this.unboxed = unboxed;
+            this.boxed = BoxedType.getBoxedType(unboxed);
+            this.floating = floating;
+        }
+
+        public Object box(long value) {
+            switch (this) {
+            case BYTE: return Byte.valueOf((byte) value);
+            case SHORT: return Short.valueOf((short) value);
+            case INT: return Integer.valueOf((int) value);
+            case LONG: return Long.valueOf(value);
+            case FLOAT: return Float.valueOf((float) value);
+            case DOUBLE: return Double.valueOf((double) value);
+            default: return Boolean.valueOf(((int) value) != 0);
+            }
+        }
+
+        public Object box(double value) {
+            switch (this) {
+            case BYTE: return Byte.valueOf((byte) value);
+            case SHORT: return Short.valueOf((short) value);
+            case INT: return Integer.valueOf((int) value);
+            case LONG: return Long.valueOf((long) value);
+            case FLOAT: return Float.valueOf((float) value);
+            case DOUBLE: return Double.valueOf(value);
+            default: return Boolean.valueOf(((int) value) != 0);
+            }
+        }
+
+        public static Kind get(Class<?> type) {
+            for (Kind kind : values()) {
+                if (kind.unboxed == type || kind.boxed == type) {
+                    return kind;
+                }
+            }
+            return null;
+        }
+    }
+}
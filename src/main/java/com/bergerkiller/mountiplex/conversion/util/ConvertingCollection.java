@@ -1,5 +1,6 @@
 package com.bergerkiller.mountiplex.conversion.util;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 
@@ -101,11 +102,26 @@ public class ConvertingCollection<T> implements Collection<T> {
 
     @Override
     public Object[] toArray() {
-        return MountiplexUtil.toArray(this);
+        // Convert all elements of the base collection in one go
+        Object[] values = base.toArray();
+        if (values.getClass() != Object[].class) {
+            values = Arrays.copyOf(values, values.length, Object[].class);
+        }
+        converter.convertAll(values, 0, values, 0, values.length);
+        return values;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <K> K[] toArray(K[] array) {
-        return MountiplexUtil.toArray(this, array);
+        Object[] values = toArray();
+        if (array.length < values.length) {
+            return (K[]) Arrays.copyOf(values, values.length, array.getClass());
+        }
+        System.arraycopy(values, 0, array, 0, values.length);
+        if (array.length > values.length) {
+            array[values.length] = null;
+        }
+        return array;
     }
 }
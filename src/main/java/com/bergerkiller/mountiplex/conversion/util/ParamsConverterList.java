@@ -129,6 +129,16 @@ public class ParamsConverterList<T> {
          */
         boolean available();
 
+        /**
+         * Gets the functional parameter list if it was already initialized successfully,
+         * without initializing it.
+         *
+         * @return parameter list, or null if not yet initialized
+         */
+        default ParamsConverterList<T> getIfInitialized() {
+            return null;
+        }
+
         @SuppressWarnings("unchecked")
         public static <T> Supplier<T> uninitialized() {
             return UNINITIALIZED_SUPPLIER;
@@ -159,6 +169,11 @@ public class ParamsConverterList<T> {
                 public boolean available() {
                     return true;
                 }
+
+                @Override
+                public ParamsConverterList<T> getIfInitialized() {
+                    return value;
+                }
             };
         }
 
@@ -0,0 +1,554 @@
+package com.bergerkiller.mountiplex.conversion.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A fixed-size List view of a primitive array, like {@link Arrays#asList(Object...)} is for
+ * arrays of objects. Elements are boxed when read and unboxed when written, and changes are
+ * written to the array itself. The implementations for each primitive type offer typed
+ * getters and setters that avoid boxing, and copy elements to and from arrays of boxed values
+ * without using {@link java.lang.reflect.Array}.
+ *
+ * @param <E> - boxed element type
+ */
+public abstract class PrimitiveArrayList<E> extends AbstractList<E> implements RandomAccess {
+
+    private PrimitiveArrayList() {
+    }
+
+    /**
+     * Gets the primitive array this list is a view of
+     * 
+     * @return primitive array
+     */
+    public abstract Object getArray();
+
+    /**
+     * Copies all the elements of this list into an array, boxing them
+     * 
+     * @param output Array to write the boxed elements to, starting at index 0
+     */
+    public abstract void copyTo(Object[] output);
+
+    /**
+     * Sets all the elements of this list to the boxed values of an array. Null values
+     * are stored as the default value of the primitive type, such as 0 or false.
+     * 
+     * @param input Array of boxed values to read, starting at index 0
+     */
+    public abstract void setAll(Object[] input);
+
+    @Override
+    public Object[] toArray() {
+        Object[] result = new Object[size()];
+        copyTo(result);
+        return result;
+    }
+
+    @Override
+    public <T> T[] toArray(T[] a) {
+        int size = size();
+        if (a.length < size) {
+            a = Arrays.copyOf(a, size);
+        } else if (a.length > size) {
+            a[size] = null;
+        }
+        copyTo(a);
+        return a;
+    }
+
+    /**
+     * Creates a List view of a primitive array
+     * 
+     * @param array Primitive array, such as int[]
+     * @return list view of the array
+     * @throws IllegalArgumentException if the array is not an array of a primitive type
+     */
+    public static PrimitiveArrayList<?> wrap(Object array) {
+        if (array instanceof boolean[]) {
+            return new OfBoolean((boolean[]) array);
+        } else if (array instanceof byte[]) {
+            return new OfByte((byte[]) array);
+        } else if (array instanceof char[]) {
+            return new OfCharacter((char[]) array);
+        } else if (array instanceof short[]) {
+            return new OfShort((short[]) array);
+        } else if (array instanceof int[]) {
+            return new OfInteger((int[]) array);
+        } else if (array instanceof long[]) {
+            return new OfLong((long[]) array);
+        } else if (array instanceof float[]) {
+            return new OfFloat((float[]) array);
+        } else if (array instanceof double[]) {
+            return new OfDouble((double[]) array);
+        } else {
+            throw new IllegalArgumentException("Not a primitive array: " + ((array == null) ? "null" : array.getClass().getName()));
+        }
+    }
+
+    /**
+     * List view of a {@code boolean[]} array
+     */
+    public static final class OfBoolean extends PrimitiveArrayList<Boolean> {
+        private final boolean[] array;
+
+        public OfBoolean(boolean[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public boolean[] getArray() {
+            return this.array;
+        }
+
+        @Override
+        public int size() {
+            return this.array.length;
+        }
+
+        @Override
+        public Boolean get(int index) {
+            return Boolean.valueOf(this.array[index]);
+        }
+
+        @Override
+        public Boolean set(int index, Boolean element) {
+            boolean old = this.array[index];
+            this.array[index] = element.booleanValue();
+            return Boolean.valueOf(old);
+        }
+
+        public boolean getBoolean(int index) {
+            return this.array[index];
+        }
+
+        public void setBoolean(int index, boolean value) {
+            this.array[index] = value;
+        }
+
+        @Override
+        public void copyTo(Object[] output) {
+            boolean[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                output[i] = Boolean.valueOf(array[i]);
+            }
+        }
+
+        @Override
+        public void setAll(Object[] input) {
+            boolean[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                Object value = input[i];
+                array[i] = (value == null) ? false : ((Boolean) value).booleanValue();
+            }
+        }
+    }
+
+    /**
+     * List view of a {@code byte[]} array
+     */
+    public static final class OfByte extends PrimitiveArrayList<Byte> {
+        private final byte[] array;
+
+        public OfByte(byte[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public byte[] getArray() {
+            return this.array;
+        }
+
+        @Override
+        public int size() {
+            return this.array.length;
+        }
+
+        @Override
+        public Byte get(int index) {
+            return Byte.valueOf(this.array[index]);
+        }
+
+        @Override
+        public Byte set(int index, Byte element) {
+            byte old = this.array[index];
+            this.array[index] = element.byteValue();
+            return Byte.valueOf(old);
+        }
+
+        public byte getByte(int index) {
+            return this.array[index];
+        }
+
+        public void setByte(int index, byte value) {
+            this.array[index] = value;
+        }
+
+        @Override
+        public void copyTo(Object[] output) {
+            byte[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                output[i] = Byte.valueOf(array[i]);
+            }
+        }
+
+        @Override
+        public void setAll(Object[] input) {
+            byte[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                Object value = input[i];
+                array[i] = (value == null) ? (byte) 0 : ((Byte) value).byteValue();
+            }
+        }
+    }
+
+    /**
+     * List view of a {@code char[]} array
+     */
+    public static final class OfCharacter extends PrimitiveArrayList<Character> {
+        private final char[] array;
+
+        public OfCharacter(char[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public char[] getArray() {
+            return this.array;
+        }
+
+        @Override
+        public int size() {
+            return this.array.length;
+        }
+
+        @Override
+        public Character get(int index) {
+            return Character.valueOf(this.array[index]);
+        }
+
+        @Override
+        public Character set(int index, Character element) {
+            char old = this.array[index];
+            this.array[index] = element.charValue();
+            return Character.valueOf(old);
+        }
+
+        public char getCharacter(int index) {
+            return this.array[index];
+        }
+
+        public void setCharacter(int index, char value) {
+            this.array[index] = value;
+        }
+
+        @Override
+        public void copyTo(Object[] output) {
+            char[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                output[i] = Character.valueOf(array[i]);
+            }
+        }
+
+        @Override
+        public void setAll(Object[] input) {
+            char[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                Object value = input[i];
+                array[i] = (value == null) ? (char) 0 : ((Character) value).charValue();
+            }
+        }
+    }
+
+    /**
+     * List view of a {@code short[]} array
+     */
+    public static final class OfShort extends PrimitiveArrayList<Short> {
+        private final short[] array;
+
+        public OfShort(short[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public short[] getArray() {
+            return this.array;
+        }
+
+        @Override
+        public int size() {
+            return this.array.length;
+        }
+
+        @Override
+        public Short get(int index) {
+            return Short.valueOf(this.array[index]);
+        }
+
+        @Override
+        public Short set(int index, Short element) {
+            short old = this.array[index];
+            this.array[index] = element.shortValue();
+            return Short.valueOf(old);
+        }
+
+        public short getShort(int index) {
+            return this.array[index];
+        }
+
+        public void setShort(int index, short value) {
+            this.array[index] = value;
+        }
+
+        @Override
+        public void copyTo(Object[] output) {
+            short[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                output[i] = Short.valueOf(array[i]);
+            }
+        }
+
+        @Override
+        public void setAll(Object[] input) {
+            short[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                Object value = input[i];
+                array[i] = (value == null) ? (short) 0 : ((Short) value).shortValue();
+            }
+        }
+    }
+
+    /**
+     * List view of a {@code int[]} array
+     */
+    public static final class OfInteger extends PrimitiveArrayList<Integer> {
+        private final int[] array;
+
+        public OfInteger(int[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public int[] getArray() {
+            return this.array;
+        }
+
+        @Override
+        public int size() {
+            return this.array.length;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return Integer.valueOf(this.array[index]);
+        }
+
+        @Override
+        public Integer set(int index, Integer element) {
+            int old = this.array[index];
+            this.array[index] = element.intValue();
+            return Integer.valueOf(old);
+        }
+
+        public int getInteger(int index) {
+            return this.array[index];
+        }
+
+        public void setInteger(int index, int value) {
+            this.array[index] = value;
+        }
+
+        @Override
+        public void copyTo(Object[] output) {
+            int[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                output[i] = Integer.valueOf(array[i]);
+            }
+        }
+
+        @Override
+        public void setAll(Object[] input) {
+            int[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                Object value = input[i];
+                array[i] = (value == null) ? 0 : ((Integer) value).intValue();
+            }
+        }
+    }
+
+    /**
+     * List view of a {@code long[]} array
+     */
+    public static final class OfLong extends PrimitiveArrayList<Long> {
+        private final long[] array;
+
+        public OfLong(long[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public long[] getArray() {
+            return this.array;
+        }
+
+        @Override
+        public int size() {
+            return this.array.length;
+        }
+
+        @Override
+        public Long get(int index) {
+            return Long.valueOf(this.array[index]);
+        }
+
+        @Override
+        public Long set(int index, Long element) {
+            long old = this.array[index];
+            this.array[index] = element.longValue();
+            return Long.valueOf(old);
+        }
+
+        public long getLong(int index) {
+            return this.array[index];
+        }
+
+        public void setLong(int index, long value) {
+            this.array[index] = value;
+        }
+
+        @Override
+        public void copyTo(Object[] output) {
+            long[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                output[i] = Long.valueOf(array[i]);
+            }
+        }
+
+        @Override
+        public void setAll(Object[] input) {
+            long[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                Object value = input[i];
+                array[i] = (value == null) ? 0L : ((Long) value).longValue();
+            }
+        }
+    }
+
+    /**
+     * List view of a {@code float[]} array
+     */
+    public static final class OfFloat extends PrimitiveArrayList<Float> {
+        private final float[] array;
+
+        public OfFloat(float[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public float[] getArray() {
+            return this.array;
+        }
+
+        @Override
+        public int size() {
+            return this.array.length;
+        }
+
+        @Override
+        public Float get(int index) {
+            return Float.valueOf(this.array[index]);
+        }
+
+        @Override
+        public Float set(int index, Float element) {
+            float old = this.array[index];
+            this.array[index] = element.floatValue();
+            return Float.valueOf(old);
+        }
+
+        public float getFloat(int index) {
+            return this.array[index];
+        }
+
+        public void setFloat(int index, float value) {
+            this.array[index] = value;
+        }
+
+        @Override
+        public void copyTo(Object[] output) {
+            float[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                output[i] = Float.valueOf(array[i]);
+            }
+        }
+
+        @Override
+        public void setAll(Object[] input) {
+            float[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                Object value = input[i];
+                array[i] = (value == null) ? 0.0f : ((Float) value).floatValue();
+            }
+        }
+    }
+
+    /**
+     * List view of a {@code double[]} array
+     */
+    public static final class OfDouble extends PrimitiveArrayList<Double> {
+        private final double[] array;
+
+        public OfDouble(double[] array) {
+            this.array = array;
+        }
+
+        @Override
+        public double[] getArray() {
+            return this.array;
+        }
+
+        @Override
+        public int size() {
+            return this.array.length;
+        }
+
+        @Override
+        public Double get(int index) {
+            return Double.valueOf(this.array[index]);
+        }
+
+        @Override
+        public Double set(int index, Double element) {
+            double old = this.array[index];
+            this.array[index] = element.doubleValue();
+            return Double.valueOf(old);
+        }
+
+        public double getDouble(int index) {
+            return this.array[index];
+        }
+
+        public void setDouble(int index, double value) {
+            this.array[index] = value;
+        }
+
+        @Override
+        public void copyTo(Object[] output) {
+            double[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                output[i] = Double.valueOf(array[i]);
+            }
+        }
+
+        @Override
+        public void setAll(Object[] input) {
+            double[] array = this.array;
+            for (int i = 0; i < array.length; i++) {
+                Object value = input[i];
+                array[i] = (value == null) ? 0.0 : ((Double) value).doubleValue();
+            }
+        }
+    }
+}
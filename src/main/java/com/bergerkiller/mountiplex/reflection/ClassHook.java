@@ -359,6 +359,19 @@ public class ClassHook<T extends ClassHook<?>> extends ClassInterceptor {
             return declaration;
         }
 
+        @Override
+        public Method getDirectTarget(Method hookedMethod) {
+            // Only when no conversion of arguments or return value is needed
+            // GeneratedHook verifies the method is public and can be linked
+            if (method.getReturnType() == hookedMethod.getReturnType() &&
+                Arrays.equals(method.getParameterTypes(), hookedMethod.getParameterTypes()))
+            {
+                return method;
+            } else {
+                return null;
+            }
+        }
+
         public boolean foundMethod(TypeDeclaration type) {
             return superMethodMap.containsKey(type);
         }
@@ -34,6 +34,7 @@ public abstract class ClassInterceptor {
     private static Map<Class<?>, Map<Method, Invoker<?>>> globalMethodDelegatesMap = new HashMap<Class<?>, Map<Method, Invoker<?>>>();
     private static Map<ClassPair, EnhancedClass> enhancedTypes = new HashMap<ClassPair, EnhancedClass>();
     private boolean useGlobalCallbacks = true;
+    private boolean useDirectDispatch = false;
     private final ClassLoader hookClassLoader;
     private final Map<Method, Invoker<?>> globalMethodDelegates;
     private final InstanceHolder lastHookedObject = new InstanceHolder();
@@ -240,6 +241,28 @@ public abstract class ClassInterceptor {
         useGlobalCallbacks = global;
     }
 
+    /**
+     * Sets whether callbacks are resolved once per enhanced class, and then called directly
+     * by the generated class. This avoids the per-call callback lookup, and the boxing of
+     * arguments for callbacks that support it, which is much faster for methods called very often.
+     * This is off by default. When enabled:
+     * <ul>
+     * <li>getCallback() is only called once per method per hooked class, when the class is generated
+     * <li>the same callbacks are used for all interceptor instances of this type hooking the same class
+     * <li>callbacks receive the hooked object as instance
+     * <li>{@link InterceptorCallback} callbacks are called on the interceptor returned by
+     *     {@link EnhancedObject#CI_getInterceptor()}
+     * <li>the called object is still tracked on the call stack, so that {@link #instance()} returns it,
+     *     also during and after nested calls on other hooked objects
+     * </ul>
+     * Must be set before the first object is hooked.
+     *
+     * @param direct whether to call callbacks directly from the generated class
+     */
+    public final void setUseDirectDispatch(boolean direct) {
+        useDirectDispatch = direct;
+    }
+
     /**
      * Gets the Object that is currently being invoked.
      * If this is called when no callback is being handled, then the
@@ -258,6 +281,27 @@ public abstract class ClassInterceptor {
         }
     }
 
+    /**
+     * Tracks a hooked object as the object being called, so that {@link #instance()} returns it.
+     * Called by classes generated for direct dispatch before calling a callback. Internal use only.
+     *
+     * @param enhancedInstance Hooked object
+     */
+    public static void enterDirectDispatch(Object enhancedInstance) {
+        ((EnhancedObject) enhancedInstance).CI_getInterceptor().stackInfo.get().pushFrame(enhancedInstance);
+    }
+
+    /**
+     * Stops tracking a hooked object tracked by {@link #enterDirectDispatch(Object)}.
+     * Called by classes generated for direct dispatch after calling a callback. Internal use only.
+     *
+     * @param enhancedInstance Hooked object
+     */
+    public static void exitDirectDispatch(Object enhancedInstance) {
+        StackInformation stack = ((EnhancedObject) enhancedInstance).CI_getInterceptor().stackInfo.get();
+        stack.popFrame(stack.frame);
+    }
+
     /**
      * Gets the Base Type of the Object that is currently being invoked.
      * If this is called when no callback is being handled, then the Base Type
@@ -329,7 +373,7 @@ public abstract class ClassInterceptor {
         }
 
         // The key used to access the EnhancedClass instance for creating this instance
-        final ClassPair key = new ClassPair(interceptor.getClass(), objectType);
+        final ClassPair key = new ClassPair(interceptor.getClass(), objectType, interceptor.useDirectDispatch);
 
         // Try to find the CGLib-generated enhanced class that provides the needed callbacks
         // If none exists yet, generate a new one and put it into the table for future re-use
@@ -361,6 +405,12 @@ public abstract class ClassInterceptor {
                     return null;
                 }
 
+                // Callback is called directly by the generated class, which stores it in a static field
+                // InterceptorCallback calls itself on the interceptor of the hooked instance
+                if (interceptor.useDirectDispatch) {
+                    return new DirectDispatchCallback(callback);
+                }
+
                 // Register the callback
                 current_stack.storeCallback(method, callback);
 
@@ -388,11 +438,13 @@ public abstract class ClassInterceptor {
     private static final class ClassPair {
         public final Class<?> hookClass;
         public final Class<?> instanceClass;
+        public final boolean directDispatch;
         private final int hashcode;
 
-        public ClassPair(Class<?> hookClass, Class<?> instanceClass) {
+        public ClassPair(Class<?> hookClass, Class<?> instanceClass, boolean directDispatch) {
             this.hookClass = hookClass;
             this.instanceClass = instanceClass;
+            this.directDispatch = directDispatch;
             this.hashcode = (hookClass.hashCode() >> 1) + (instanceClass.hashCode() >> 1);
         }
 
@@ -405,7 +457,8 @@ public abstract class ClassInterceptor {
         public boolean equals(Object other) {
             if (other instanceof ClassPair) {
                 ClassPair p = (ClassPair) other;
-                return hookClass.equals(p.hookClass) && instanceClass.equals(p.instanceClass);
+                return hookClass.equals(p.hookClass) && instanceClass.equals(p.instanceClass) &&
+                       directDispatch == p.directDispatch;
             }
             return false;
         }
@@ -508,17 +561,8 @@ public abstract class ClassInterceptor {
         public Object invokeVA(Object instance, Object... args) {
             ClassInterceptor interceptor = ((EnhancedObject) instance).CI_getInterceptor();
             StackInformation stack = interceptor.stackInfo.get();
-            StackFrame frame = stack.frame.next;
-
-            // Push new stack element
-            if (frame == null) {
-                frame = stack.frame.next = new StackFrame(stack.frame);
-            }
-            stack.frame = frame;
-
+            StackFrame frame = stack.pushFrame(instance);
             try {
-                frame.instance = instance;
-
                 // Find method callback delegate if we don't know yet
                 Invoker<?> callback = stack.getCallback(method);
                 if (callback == null) {
@@ -550,10 +594,58 @@ public abstract class ClassInterceptor {
                 // Execute the callback
                 return callback.invokeVA(instance, args);
             } finally {
-                // Pop stack element
-                // Make sure to reset instance, otherwise we risk a memory leak
-                frame.instance = null;
-                stack.frame = frame.prev;
+                stack.popFrame(frame);
+            }
+        }
+    }
+
+    /**
+     * Callback of a method of a class generated for direct dispatch. The generated class calls
+     * the callback directly, in between {@link ClassInterceptor#enterDirectDispatch(Object)} and
+     * {@link ClassInterceptor#exitDirectDispatch(Object)}, which track the called object on the
+     * call stack so that {@link ClassInterceptor#instance()} returns it.
+     */
+    private static final class DirectDispatchCallback implements GeneratedHook.FramedCallback {
+        private static final Method enterMethod;
+        private static final Method exitMethod;
+        static {
+            try {
+                enterMethod = ClassInterceptor.class.getMethod("enterDirectDispatch", Object.class);
+                exitMethod = ClassInterceptor.class.getMethod("exitDirectDispatch", Object.class);
+            } catch (Throwable t) {
+                throw MountiplexUtil.uncheckedRethrow(t);
+            }
+        }
+
+        private final Invoker<?> callback;
+
+        public DirectDispatchCallback(Invoker<?> callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public Method getEnterMethod() {
+            return enterMethod;
+        }
+
+        @Override
+        public Method getExitMethod() {
+            return exitMethod;
+        }
+
+        @Override
+        public Invoker<?> getFramedCallback() {
+            return callback;
+        }
+
+        @Override
+        public Object invokeVA(Object instance, Object... args) {
+            StackInformation stack = ((EnhancedObject) instance).CI_getInterceptor().stackInfo.get();
+            StackFrame frame = stack.pushFrame(instance);
+            try {
+                return callback.invokeVA(instance, args);
+            } finally {
+                stack.popFrame(frame);
             }
         }
     }
@@ -562,14 +654,39 @@ public abstract class ClassInterceptor {
      * Calls a method on this interceptor when invoked. The interceptorCallback field
      * should be set to a valid invoker.
      */
-    public static abstract class InterceptorCallback implements Invoker<Object> {
+    public static abstract class InterceptorCallback implements GeneratedHook.DirectCallback {
+        private static final Method getInterceptorMethod;
+        static {
+            try {
+                getInterceptorMethod = EnhancedObject.class.getMethod("CI_getInterceptor");
+            } catch (Throwable t) {
+                throw MountiplexUtil.uncheckedRethrow(t);
+            }
+        }
+
         public Invoker<Object> interceptorCallback = InitInvoker.unavailableMethod();
 
         @Override
         public Object invokeVA(Object instance, Object... args) {
-            // This is never actually called because of optimizations in the method interceptor
+            // This is only called when direct dispatch is used, otherwise the method interceptor
+            // calls the interceptorCallback itself
             return interceptorCallback.invokeVA(((EnhancedObject) instance).CI_getInterceptor(), args);
         }
+
+        /**
+         * Gets the method on the interceptor to call directly from the hooked method, without
+         * boxing the arguments. Only used when direct dispatch is used. By default returns null,
+         * which calls this callback instead.
+         */
+        @Override
+        public Method getDirectTarget(Method hookedMethod) {
+            return null;
+        }
+
+        @Override
+        public final Method getDirectTargetInstanceGetter() {
+            return getInterceptorMethod;
+        }
     }
 
     /**
@@ -601,6 +718,22 @@ public abstract class ClassInterceptor {
             return this.frame.instance;
         }
 
+        public StackFrame pushFrame(Object instance) {
+            StackFrame frame = this.frame.next;
+            if (frame == null) {
+                frame = this.frame.next = new StackFrame(this.frame);
+            }
+            frame.instance = instance;
+            this.frame = frame;
+            return frame;
+        }
+
+        public void popFrame(StackFrame frame) {
+            // Make sure to reset instance, otherwise we risk a memory leak
+            frame.instance = null;
+            this.frame = frame.prev;
+        }
+
         public Invoker<?> getCallback(Method method) {
             // Last called method (Fastest)
             if (method == last_method) {
@@ -652,7 +785,7 @@ public abstract class ClassInterceptor {
      * Sometimes ClassInterceptors can be copied (ClassHook!) and so we must wrap the object
      */
     private static class InstanceHolder {
-        public Object value = null;
+        public volatile Object value = null;
     }
 
     /**
@@ -2,6 +2,9 @@ package com.bergerkiller.mountiplex.reflection;
 
 import com.bergerkiller.mountiplex.conversion.Converter;
 import com.bergerkiller.mountiplex.conversion.type.DuplexConverter;
+import com.bergerkiller.mountiplex.conversion.type.LazyConverter;
+import com.bergerkiller.mountiplex.conversion.type.PrimitiveConverter;
+import com.bergerkiller.mountiplex.reflection.util.FastField;
 
 /**
  * A field accessor that can translate from one type to another to expose a
@@ -13,6 +16,7 @@ public class TranslatorFieldAccessor<T> implements FieldAccessor<T> {
 
     private final FieldAccessor<Object> base;
     private final DuplexConverter<Object, T> converterPair;
+    private final FastField<?> primitiveField;
 
     @SuppressWarnings("unchecked")
     public TranslatorFieldAccessor(FieldAccessor<?> base, Converter<?, ?> setConverter, Converter<?, T> getConverter) {
@@ -29,6 +33,14 @@ public class TranslatorFieldAccessor<T> implements FieldAccessor<T> {
         }
         this.base = (FieldAccessor<Object>) base;
         this.converterPair = (DuplexConverter<Object, T>) converterPair;
+
+        // Primitive fields can be read/written without boxing using a primitive converter
+        if (base instanceof SafeField) {
+            Class<?> type = ((SafeField<?>) base).getType();
+            this.primitiveField = (type != null && type.isPrimitive()) ? ((SafeField<?>) base).getFastField() : null;
+        } else {
+            this.primitiveField = null;
+        }
     }
 
     @Override
@@ -67,6 +79,167 @@ public class TranslatorFieldAccessor<T> implements FieldAccessor<T> {
         return setInternal(instance, converterPair.convertReverse(value));
     }
 
+    /**
+     * Gets the primitive converter used to read the field value without boxing.
+     * Returns null if the field or the get converter is not primitive.
+     *
+     * @return primitive get converter, or null
+     */
+    private PrimitiveConverter<?, ?> getPrimitiveReader() {
+        return (primitiveField == null) ? null : unwrapPrimitive(converterPair.getInputConverter());
+    }
+
+    /**
+     * Gets the primitive converter used to write the field value without boxing.
+     * Returns null if the field or the set converter is not primitive.
+     *
+     * @return primitive set converter, or null
+     */
+    private PrimitiveConverter<?, ?> getPrimitiveWriter() {
+        return (primitiveField == null) ? null : unwrapPrimitive(converterPair.getOutputConverter());
+    }
+
+    private static PrimitiveConverter<?, ?> unwrapPrimitive(Converter<?, ?> converter) {
+        if (converter instanceof LazyConverter) {
+            converter = ((LazyConverter<?, ?>) converter).converter;
+        }
+        return (converter instanceof PrimitiveConverter) ? (PrimitiveConverter<?, ?>) converter : null;
+    }
+
+    /**
+     * Gets the translated byte field value from an instance.
+     * When both the field and the exposed type are primitive, no boxing is performed,
+     * and errors reading the field are thrown instead of logged.
+     *
+     * @param instance containing this Field
+     * @return translated field value from instance
+     */
+    public byte getByte(Object instance) {
+        PrimitiveConverter<?, ?> c = getPrimitiveReader();
+        return (c != null) ? c.readByte(primitiveField, instance) : ((Number) get(instance)).byteValue();
+    }
+
+    /**
+     * Sets the byte field value for an instance, translating it to the internally stored type.
+     * When both the field and the exposed type are primitive, no boxing is performed,
+     * and errors writing the field are thrown instead of logged.
+     *
+     * @param instance containing this Field
+     * @param value to set the field to
+     * @return True if successful, False if not
+     */
+    @SuppressWarnings("unchecked")
+    public boolean setByte(Object instance, byte value) {
+        PrimitiveConverter<?, ?> c = getPrimitiveWriter();
+        if (c == null) {
+            return set(instance, (T) Byte.valueOf(value));
+        }
+        c.writeByte(primitiveField, instance, value);
+        return true;
+    }
+
+    /** @see #getByte(Object) */
+    public short getShort(Object instance) {
+        PrimitiveConverter<?, ?> c = getPrimitiveReader();
+        return (c != null) ? c.readShort(primitiveField, instance) : ((Number) get(instance)).shortValue();
+    }
+
+    /** @see #setByte(Object, byte) */
+    @SuppressWarnings("unchecked")
+    public boolean setShort(Object instance, short value) {
+        PrimitiveConverter<?, ?> c = getPrimitiveWriter();
+        if (c == null) {
+            return set(instance, (T) Short.valueOf(value));
+        }
+        c.writeShort(primitiveField, instance, value);
+        return true;
+    }
+
+    /** @see #getByte(Object) */
+    public int getInteger(Object instance) {
+        PrimitiveConverter<?, ?> c = getPrimitiveReader();
+        return (c != null) ? c.readInteger(primitiveField, instance) : ((Number) get(instance)).intValue();
+    }
+
+    /** @see #setByte(Object, byte) */
+    @SuppressWarnings("unchecked")
+    public boolean setInteger(Object instance, int value) {
+        PrimitiveConverter<?, ?> c = getPrimitiveWriter();
+        if (c == null) {
+            return set(instance, (T) Integer.valueOf(value));
+        }
+        c.writeInteger(primitiveField, instance, value);
+        return true;
+    }
+
+    /** @see #getByte(Object) */
+    public long getLong(Object instance) {
+        PrimitiveConverter<?, ?> c = getPrimitiveReader();
+        return (c != null) ? c.readLong(primitiveField, instance) : ((Number) get(instance)).longValue();
+    }
+
+    /** @see #setByte(Object, byte) */
+    @SuppressWarnings("unchecked")
+    public boolean setLong(Object instance, long value) {
+        PrimitiveConverter<?, ?> c = getPrimitiveWriter();
+        if (c == null) {
+            return set(instance, (T) Long.valueOf(value));
+        }
+        c.writeLong(primitiveField, instance, value);
+        return true;
+    }
+
+    /** @see #getByte(Object) */
+    public float getFloat(Object instance) {
+        PrimitiveConverter<?, ?> c = getPrimitiveReader();
+        return (c != null) ? c.readFloat(primitiveField, instance) : ((Number) get(instance)).floatValue();
+    }
+
+    /** @see #setByte(Object, byte) */
+    @SuppressWarnings("unchecked")
+    public boolean setFloat(Object instance, float value) {
+        PrimitiveConverter<?, ?> c = getPrimitiveWriter();
+        if (c == null) {
+            return set(instance, (T) Float.valueOf(value));
+        }
+        c.writeFloat(primitiveField, instance, value);
+        return true;
+    }
+
+    /** @see #getByte(Object) */
+    public double getDouble(Object instance) {
+        PrimitiveConverter<?, ?> c = getPrimitiveReader();
+        return (c != null) ? c.readDouble(primitiveField, instance) : ((Number) get(instance)).doubleValue();
+    }
+
+    /** @see #setByte(Object, byte) */
+    @SuppressWarnings("unchecked")
+    public boolean setDouble(Object instance, double value) {
+        PrimitiveConverter<?, ?> c = getPrimitiveWriter();
+        if (c == null) {
+            return set(instance, (T) Double.valueOf(value));
+        }
+        c.writeDouble(primitiveField, instance, value);
+        return true;
+    }
+
+    /** @see #getByte(Object) */
+    public boolean getBoolean(Object instance) {
+        PrimitiveConverter<?, ?> c = getPrimitiveReader();
+        return (c != null) ? c.readBoolean(primitiveField, instance) : ((Boolean) get(instance)).booleanValue();
+    }
+
+    /** @see #setByte(Object, byte) */
+    @SuppressWarnings("unchecked")
+    public boolean setBoolean(Object instance, boolean value) {
+        PrimitiveConverter<?, ?> c = getPrimitiveWriter();
+        if (c == null) {
+            return set(instance, (T) Boolean.valueOf(value));
+        }
+        c.writeBoolean(primitiveField, instance, value);
+        return true;
+    }
+
     @Override
     public T transfer(Object from, Object to) {
         return converterPair.convert(base.transfer(from, to));
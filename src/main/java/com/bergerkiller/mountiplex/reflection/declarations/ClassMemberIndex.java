@@ -0,0 +1,191 @@
+package com.bergerkiller.mountiplex.reflection.declarations;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+import com.bergerkiller.mountiplex.MountiplexUtil;
+import com.bergerkiller.mountiplex.reflection.ReflectionUtil;
+import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
+
+/**
+ * Indexes the real fields and methods of a Class by name, so that field and method
+ * declarations can be matched against only the members with the same name.
+ * The index is created once per Class and is shared by all templates and subclasses
+ * that resolve members of it.
+ */
+final class ClassMemberIndex {
+    private static volatile ClassValue<ClassMemberIndex> indices = createIndices();
+    private final Class<?> type;
+    private Throwable declaredFieldsError = null;
+    private List<Field> inheritedFields = null;
+    private Map<String, Field> fieldsByName = null;
+    private Method[] methods = null;
+    private Map<String, List<Method>> methodsByNameAndArity = null;
+
+    static {
+        MountiplexUtil.registerUnloader(() -> indices = createIndices());
+    }
+
+    private static ClassValue<ClassMemberIndex> createIndices() {
+        return new ClassValue<ClassMemberIndex>() {
+            @Override
+            protected ClassMemberIndex computeValue(Class<?> type) {
+                return new ClassMemberIndex(type);
+            }
+        };
+    }
+
+    private ClassMemberIndex(Class<?> type) {
+        this.type = type;
+    }
+
+    /**
+     * Gets the member index of a Class
+     *
+     * @param type Class
+     * @return member index
+     */
+    public static ClassMemberIndex of(Class<?> type) {
+        return indices.get(type);
+    }
+
+    /**
+     * Gets all fields declared in the Class, and all non-private fields declared in
+     * superclasses, by name. Fields of a subclass hide fields in superclasses by the
+     * same name.
+     *
+     * @return Map of fields by name
+     */
+    public synchronized Map<String, Field> getFieldsByName() {
+        if (fieldsByName == null) {
+            Map<String, Field> result = new HashMap<String, Field>();
+            Field[] declared = getDeclaredFields();
+            if (declared != null) {
+                for (Field field : declared) {
+                    result.putIfAbsent(MPLType.getName(field), field);
+                }
+            }
+            if (declared != null && type.getSuperclass() != null) {
+                for (Field field : of(type.getSuperclass()).getInheritedFields()) {
+                    result.putIfAbsent(MPLType.getName(field), field);
+                }
+            }
+            fieldsByName = Collections.unmodifiableMap(result);
+        }
+        return fieldsByName;
+    }
+
+    /**
+     * Gets all the non-static methods declared in the Class, and all the public methods,
+     * without duplicate overridden methods.
+     *
+     * @return methods
+     */
+    public synchronized Method[] getMethods() {
+        if (methods == null) {
+            try {
+                // Merge declared and public methods as one long array
+                // Skip declared methods that are public - they are already in the list
+                methods = Stream.concat(
+                                ReflectionUtil.getDeclaredMethods(type),
+                                ReflectionUtil.getMethods(type)
+                                        .filter(m -> !Modifier.isStatic(m.getModifiers()))
+                        ).filter(ReflectionUtil.createDuplicateMethodFilter())
+                        .toArray(Method[]::new);
+            } catch (Throwable t) {
+                MountiplexUtil.LOGGER.log(Level.SEVERE, "Failed to identify methods of class " + MPLType.getName(type), t);
+                methods = new Method[0];
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Finds all methods returned by {@link #getMethods()} with the given name and number of parameters,
+     * in the same order.
+     *
+     * @param name Method name
+     * @param parameterCount Number of parameters of the method
+     * @return methods matching the name and number of parameters
+     */
+    public List<Method> findMethods(String name, int parameterCount) {
+        Map<String, List<Method>> byName;
+        synchronized (this) {
+            byName = methodsByNameAndArity;
+            if (byName == null) {
+                byName = new HashMap<String, List<Method>>();
+                for (Method method : getMethods()) {
+                    byName.computeIfAbsent(methodKey(MPLType.getName(method), method.getParameterCount()),
+                            k -> new ArrayList<Method>(1)).add(method);
+                }
+                methodsByNameAndArity = byName;
+            }
+        }
+        return byName.getOrDefault(methodKey(name, parameterCount), Collections.emptyList());
+    }
+
+    /**
+     * Logs the errors that occurred reading the declared fields of this Class and
+     * its superclasses, if any did. Fields of classes at and beyond a class that failed
+     * are missing from {@link #getFieldsByName()}.
+     */
+    public void logFieldErrors() {
+        for (Class<?> t = type; t != null; t = t.getSuperclass()) {
+            ClassMemberIndex index = of(t);
+            Throwable error;
+            synchronized (index) {
+                error = index.declaredFieldsError;
+            }
+            if (error != null) {
+                MountiplexUtil.LOGGER.log(Level.SEVERE, "Failed to get declared fields of " + t, error);
+                break;
+            }
+        }
+    }
+
+    private static String methodKey(String name, int parameterCount) {
+        return name + "/" + parameterCount;
+    }
+
+    private synchronized List<Field> getInheritedFields() {
+        if (inheritedFields == null) {
+            Field[] declared = getDeclaredFields();
+            if (declared == null) {
+                inheritedFields = Collections.emptyList(); // Failed, stop at this class
+            } else {
+                List<Field> result = new ArrayList<Field>();
+                for (Field field : declared) {
+                    if (!Modifier.isPrivate(field.getModifiers())) {
+                        result.add(field);
+                    }
+                }
+                if (type.getSuperclass() != null) {
+                    result.addAll(of(type.getSuperclass()).getInheritedFields());
+                }
+                inheritedFields = result;
+            }
+        }
+        return inheritedFields;
+    }
+
+    // Returns null if the fields could not be read, see logFieldErrors()
+    private synchronized Field[] getDeclaredFields() {
+        if (type == Object.class || type.isInterface()) {
+            return new Field[0];
+        }
+        try {
+            return type.getDeclaredFields();
+        } catch (Throwable t) {
+            declaredFieldsError = t;
+            return null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.bergerkiller.mountiplex.reflection.declarations;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -7,6 +8,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
 
@@ -25,6 +28,8 @@ import com.bergerkiller.mountiplex.reflection.util.fast.GeneratedCodeInvoker;
 public class ClassResolver {
     private static final List<String> default_imports = Arrays.asList("java.lang.*", "java.util.*");
     private static final Runnable[] default_bootstrap = new Runnable[0];
+    private static final Map<ClassLoader, Map<ResolveIndexKey, Map<String, IndexedResult>>> resolveIndices = new WeakHashMap<>();
+    private static volatile int resolveIndexGeneration = 0;
     public static final ClassResolver DEFAULT = new ClassResolver().immutable();
 
     private final ArrayList<String> imports;
@@ -40,6 +45,12 @@ public class ClassResolver {
     private boolean logErrors;
     private boolean isGenerating;
     private Runnable[] bootstrap;
+    private Map<String, IndexedResult> resolveIndex = null;
+    private int resolveIndexGenerationOfResolver = -1;
+
+    static {
+        MountiplexUtil.registerUnloader(ClassResolver::clearResolveIndex);
+    }
 
     private ClassResolver(ClassResolver src) {
         this.classDeclarationResolverName = src.classDeclarationResolverName;
@@ -152,6 +163,7 @@ public class ClassResolver {
      */
     public void setClassLoader(ClassLoader loader) {
         this.classLoader = loader;
+        this.resolveIndex = null;
     }
 
     public ClassLoader getClassLoader() {
@@ -457,166 +469,93 @@ public class ClassResolver {
     }
 
     /**
-     * Evaluates a simple logical expression using the variables set
+     * Evaluates a simple logical expression using the variables set.
+     * The expression is parsed once and re-used. The result of expressions that only
+     * compare variables is remembered until the variables change.
      *
      * @param expression to evaluate
      * @return True if the expression evaluates as True, False if not
      */
     public boolean evaluateExpression(String expression) {
-        // Find instances of && or || in the String, and separate each expression by these
-        // We evaluate left to right, which means this statement:
-        // true && false || true
-        // evaluates to true, because true && false = false -> false || true = true
-        boolean prevExpressionResult = false;
-        int prevExpressionStart = 0;
-        boolean compareAnd = false;
-        for (int cIdx = 0; cIdx < expression.length()-1; cIdx++) {
-            char c = expression.charAt(cIdx);
-
-            boolean nextCompareAnd;
-            if (c == '&' && expression.charAt(cIdx+1) == '&') {
-                nextCompareAnd = true;
-            } else if (c == '|' && expression.charAt(cIdx+1) == '|') {
-                nextCompareAnd = false;
-            } else {
-                continue;
-            }
-
-            // Evaluate previous expression
-            if (compareAnd) {
-                prevExpressionResult &= evaluateExpression_part(expression.substring(prevExpressionStart, cIdx));
-            } else {
-                prevExpressionResult |= evaluateExpression_part(expression.substring(prevExpressionStart, cIdx));
-            }
-
-            // Reset to the next expression
-            cIdx++; // skip second & or |
-            compareAnd = nextCompareAnd;
-            prevExpressionStart = cIdx + 1;
-        }
-
-        // Trailing part
-        if (compareAnd) {
-            return prevExpressionResult && evaluateExpression_part(expression.substring(prevExpressionStart));
+        ConditionalExpression compiled = ConditionalExpression.compile(expression);
+        if (compiled.isVariablesOnly()) {
+            return this.variables.evaluate(compiled, this);
         } else {
-            return prevExpressionResult || evaluateExpression_part(expression.substring(prevExpressionStart));
+            return compiled.evaluate(this);
         }
     }
 
-    private boolean evaluateExpression_part(String expression) {
-        // =============== Tokenize the expression ================
-        expression = expression.trim();
-        String varName = null;
-        for (int cIdx = 0; cIdx < expression.length(); cIdx++) {
-            char c = expression.charAt(cIdx);
-            if (c == ' ' || (!Character.isLetter(c) && c != '_' && c != '!')) {
-                varName = expression.substring(0, cIdx);
-                expression = expression.substring(cIdx).trim();
-                break;
-            }
-        }
-        if (varName == null) {
-            varName = expression;
-            expression = "";
-        }
+    /**
+     * Gets the value of an environment variable, parsed as a text value sequence
+     *
+     * @param name variable name
+     * @return parsed variable value, null if not found
+     */
+    TextValueSequence getVariableSequence(String name) {
+        return this.variables.getSequence(name);
+    }
 
-        boolean inverted = false;
-        while (varName.startsWith("!")) {
-            inverted = !inverted;
-            varName = varName.substring(1);
+    /**
+     * Checks whether a Class exists, and if specified, a method, field or constructor
+     * declared inside of it.
+     *
+     * @param classPath Path of the Class to find
+     * @param signatureStr Signature of the member to find, empty to only check the Class
+     * @return True if found
+     */
+    boolean evaluateExistsCondition(String classPath, String signatureStr) {
+        // Find class that the object is declared in
+        Class<?> declaredClass = Resolver.loadClass(classPath, false, this.classLoader);
+        if (declaredClass == null) {
+            return false; // Class not available
         }
 
-        if (varName.equals("classexists") || // legacy
-            varName.equals("methodexists") || // legacy
-            varName.equals("fieldexists") || // legacy
-            varName.equals("exists"))
-        {
-            int signatureStart = expression.indexOf(' ');
-            String classPath;
-            if (signatureStart == -1) {
-                classPath = expression;
-                signatureStart = expression.length();
-            } else {
-                classPath = expression.substring(0, signatureStart);
-                signatureStart++;
-            }
-            while (classPath.endsWith(";")) {
-                classPath = classPath.substring(0, classPath.length() - 1);
-            }
-
-            // Find class that the object is declared in
-            Class<?> declaredClass = Resolver.loadClass(classPath, false, this.classLoader);
-            if (declaredClass == null) {
-                return inverted; // Class not available
-            }
-
-            // Rest is method/field signature
-            String signatureStr = expression.substring(signatureStart).trim();
-            if (signatureStr.isEmpty()) {
-                return !inverted; // Only Class is asked
-            }
-
-            // Parse the signature
-            ClassResolver resolver = new ClassResolver(this);
-            resolver.setDeclaredClass(declaredClass, classPath);
-            resolver.setLogErrors(false);
-            Declaration declaration = Declaration.parseDeclaration(resolver, signatureStr);
-            if (declaration == null) {
-                if (this.getLogErrors()) {
-                    MountiplexUtil.LOGGER.warning("Failed to parse declaration to check existance: " + signatureStr);
-                    return inverted;
-                }
-            }
-
-            // If signature itself could not be resolved, it simply doesn't exist
-            if (!declaration.isResolved()) {
-                return inverted;
-            }
-
-            // Find the declaration's actual method/field/constructor to check it exists
-            return (declaration.discover() != null) != inverted;
+        // Rest is method/field signature
+        if (signatureStr.isEmpty()) {
+            return true; // Only Class is asked
         }
 
-        if (varName.equals("assignable")) {
-            int secondClassStart = expression.indexOf(' ');
-            String firstClassPath, secondClassPath;
-            if (secondClassStart == -1) {
-                firstClassPath = expression;
-                secondClassPath = Object.class.getName();
-            } else {
-                firstClassPath = expression.substring(0, secondClassStart);
-                secondClassPath = expression.substring(secondClassStart + 1).trim();
+        // Parse the signature
+        ClassResolver resolver = new ClassResolver(this);
+        resolver.setDeclaredClass(declaredClass, classPath);
+        resolver.setLogErrors(false);
+        Declaration declaration = Declaration.parseDeclaration(resolver, signatureStr);
+        if (declaration == null) {
+            if (this.getLogErrors()) {
+                MountiplexUtil.LOGGER.warning("Failed to parse declaration to check existance: " + signatureStr);
             }
+            return false;
+        }
 
-            firstClassPath = this.resolvePath(firstClassPath);
-            secondClassPath = this.resolvePath(secondClassPath);
+        // If signature itself could not be resolved, it simply doesn't exist
+        if (!declaration.isResolved()) {
+            return false;
+        }
 
-            Class<?> firstClass = Resolver.loadClass(firstClassPath, false, this.classLoader);
-            Class<?> secondClass = Resolver.loadClass(secondClassPath, false, this.classLoader);
-            if (firstClass == null || secondClass == null) {
-                return !inverted; // Either class not available
-            }
+        // Find the declaration's actual method/field/constructor to check it exists
+        return declaration.discover() != null;
+    }
 
-            // Check assignable
-            return firstClass.isAssignableFrom(secondClass) != inverted;
+    /**
+     * Checks whether one Class is assignable from another. If either Class
+     * could not be found, returns true.
+     *
+     * @param firstClassPath Path of the Class assigned to
+     * @param secondClassPath Path of the Class assigned from
+     * @return True if assignable, or either Class is not available
+     */
+    boolean evaluateAssignableCondition(String firstClassPath, String secondClassPath) {
+        firstClassPath = this.resolvePath(firstClassPath);
+        secondClassPath = this.resolvePath(secondClassPath);
+
+        Class<?> firstClass = Resolver.loadClass(firstClassPath, false, this.classLoader);
+        Class<?> secondClass = Resolver.loadClass(secondClassPath, false, this.classLoader);
+        if (firstClass == null || secondClass == null) {
+            return true; // Either class not available
         }
 
-        String value1 = this.variables.get(varName);
-        if (value1 == null) {
-            // Edge cases: true/false constants
-            if (varName.equals("1") || varName.equalsIgnoreCase("true")) {
-                return !inverted;
-            }
-            return inverted; // variable not found; never evaluates to True
-        }
-        int logicEndIdx = expression.indexOf(' ');
-        if (logicEndIdx == -1) {
-            // #if <varname> simply checks if the variable exists
-            return !inverted;
-        }
-        String operand = expression.substring(0, logicEndIdx);
-        String value2 = expression.substring(logicEndIdx + 1).trim();
-        return TextValueSequence.evaluateText(value1, operand, value2) != inverted;
+        // Check assignable
+        return firstClass.isAssignableFrom(secondClass);
     }
 
     /**
@@ -678,6 +617,40 @@ public class ClassResolver {
             }
         }
 
+        // All resolvers with the same imports, package and class loader share the same results
+        // The class loader is weakly referenced, so that it can be garbage collected
+        Map<String, IndexedResult> index = this.resolveIndex;
+        if (index == null || this.resolveIndexGenerationOfResolver != resolveIndexGeneration) {
+            this.resolveIndexGenerationOfResolver = resolveIndexGeneration;
+            synchronized (resolveIndices) {
+                this.resolveIndex = index = resolveIndices.computeIfAbsent(this.classLoader,
+                        loader -> new ConcurrentHashMap<ResolveIndexKey, Map<String, IndexedResult>>())
+                        .computeIfAbsent(new ResolveIndexKey(this.imports, this.packagePath),
+                                key -> new ConcurrentHashMap<String, IndexedResult>());
+            }
+        }
+        IndexedResult indexed = index.get(name);
+        ResolveResult result = (indexed == null) ? null : indexed.get();
+        if (result == null) {
+            result = resolveUncached(name);
+            index.put(name, new IndexedResult(result));
+        }
+        return result;
+    }
+
+    /**
+     * Clears the results of resolving class names shared by all class resolvers.
+     * Must be called when the classes that can be loaded by a path change,
+     * for example, when a new class path resolver is registered.
+     */
+    public static void clearResolveIndex() {
+        synchronized (resolveIndices) {
+            resolveIndices.clear();
+        }
+        resolveIndexGeneration++;
+    }
+
+    private ResolveResult resolveUncached(String name) {
         // Directly by name
         Class<?> byAbsoluteName = Resolver.loadClass(name, false, this.classLoader);
         if (byAbsoluteName != null) {
@@ -831,6 +804,7 @@ public class ClassResolver {
     }
 
     private void regenImports() {
+        this.resolveIndex = null;
         this.imports.clear();
         this.imports.addAll(this.manualImports);
         Collections.reverse(this.imports);
@@ -867,6 +841,68 @@ public class ClassResolver {
         }
     }
 
+    /**
+     * Result of resolving a class name, stored in the index shared by all class resolvers.
+     * The class is weakly referenced, so that the index does not keep the class loader
+     * it is stored for loaded.
+     */
+    private static final class IndexedResult {
+        private final String classPath;
+        private final WeakReference<Class<?>> classType;
+        private final ResolveResult notFound;
+
+        public IndexedResult(ResolveResult result) {
+            this.classPath = result.classPath;
+            if (result.classType == null) {
+                this.classType = null;
+                this.notFound = result;
+            } else {
+                this.classType = new WeakReference<Class<?>>(result.classType);
+                this.notFound = null;
+            }
+        }
+
+        /**
+         * Gets the resolve result, or null if the class was garbage collected
+         */
+        public ResolveResult get() {
+            if (this.classType == null) {
+                return this.notFound;
+            }
+            Class<?> type = this.classType.get();
+            return (type == null) ? null : new ResolveResult(this.classPath, type);
+        }
+    }
+
+    private static final class ResolveIndexKey {
+        private final List<String> imports;
+        private final String packagePath;
+        private final int hashCode;
+
+        public ResolveIndexKey(List<String> imports, String packagePath) {
+            this.imports = new ArrayList<String>(imports);
+            this.packagePath = packagePath;
+            this.hashCode = this.imports.hashCode() * 31 + packagePath.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof ResolveIndexKey) {
+                ResolveIndexKey other = (ResolveIndexKey) o;
+                return this.hashCode == other.hashCode &&
+                       this.packagePath.equals(other.packagePath) &&
+                       this.imports.equals(other.imports);
+            } else {
+                return false;
+            }
+        }
+    }
+
     private static class ImmutableClassResolver extends ClassResolver {
 
         public ImmutableClassResolver(ClassResolver resolver) {
@@ -963,6 +999,8 @@ public class ClassResolver {
     private static class VariablesMap {
         private final Map<String, String> _map;
         private String _decl;
+        private final Map<String, TextValueSequence> _sequences = new ConcurrentHashMap<String, TextValueSequence>();
+        private final Map<ConditionalExpression, Boolean> _results = new ConcurrentHashMap<ConditionalExpression, Boolean>();
         public static final VariablesMap EMPTY = new VariablesMap();
 
         private VariablesMap() {
@@ -983,6 +1021,28 @@ public class ClassResolver {
             return this._map.get(key);
         }
 
+        public TextValueSequence getSequence(String key) {
+            TextValueSequence seq = this._sequences.get(key);
+            if (seq == null) {
+                String value = this._map.get(key);
+                if (value == null) {
+                    return null;
+                }
+                seq = TextValueSequence.parse(value);
+                this._sequences.put(key, seq);
+            }
+            return seq;
+        }
+
+        public boolean evaluate(ConditionalExpression expression, ClassResolver resolver) {
+            Boolean result = this._results.get(expression);
+            if (result == null) {
+                result = Boolean.valueOf(expression.evaluate(resolver));
+                this._results.put(expression, result);
+            }
+            return result.booleanValue();
+        }
+
         public VariablesMap modify(Consumer<Map<String, String>> modifier) {
             Map<String, String> new_map = new HashMap<String, String>(this._map);
             modifier.accept(new_map);
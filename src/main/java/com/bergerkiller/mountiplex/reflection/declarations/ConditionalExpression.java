@@ -0,0 +1,254 @@
+package com.bergerkiller.mountiplex.reflection.declarations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.bergerkiller.mountiplex.MountiplexUtil;
+import com.bergerkiller.mountiplex.logic.TextValueSequence;
+
+/**
+ * A logical expression used in #if statements of template sources and in hook method
+ * conditions, for example <i>version >= 1.16.4 && exists some.Type</i>. Expressions are
+ * parsed once and cached by their text, after which they can be evaluated with the
+ * variables of any ClassResolver. The values compared against are pre-parsed as a
+ * {@link TextValueSequence}.<br>
+ * <br>
+ * Conditions are evaluated left to right, which means this statement:
+ * <i>true && false || true</i> evaluates to true, because true && false = false -> false || true = true
+ */
+final class ConditionalExpression {
+    private static final Map<String, ConditionalExpression> cache = new ConcurrentHashMap<String, ConditionalExpression>();
+    private final Condition[] conditions;
+    private final boolean[] compareAnd;
+    private final boolean variablesOnly;
+
+    static {
+        MountiplexUtil.registerUnloader(cache::clear);
+    }
+
+    private ConditionalExpression(Condition[] conditions, boolean[] compareAnd) {
+        this.conditions = conditions;
+        this.compareAnd = compareAnd;
+        boolean variablesOnly = true;
+        for (Condition condition : conditions) {
+            variablesOnly &= (condition instanceof VariableCondition);
+        }
+        this.variablesOnly = variablesOnly;
+    }
+
+    /**
+     * Parses an expression, or returns the previously parsed expression with the same text
+     *
+     * @param expression Expression to parse
+     * @return compiled expression
+     */
+    public static ConditionalExpression compile(String expression) {
+        ConditionalExpression compiled = cache.get(expression);
+        if (compiled == null) {
+            compiled = cache.computeIfAbsent(expression, ConditionalExpression::parse);
+        }
+        return compiled;
+    }
+
+    /**
+     * Gets whether this expression only compares variables. The result of these
+     * expressions only changes when the variables change.
+     *
+     * @return True if only variables are used
+     */
+    public boolean isVariablesOnly() {
+        return this.variablesOnly;
+    }
+
+    /**
+     * Evaluates this expression
+     *
+     * @param resolver Class Resolver whose variables, imports and class loader are used
+     * @return True if the expression evaluates as True, False if not
+     */
+    public boolean evaluate(ClassResolver resolver) {
+        boolean result = this.conditions[0].evaluate(resolver);
+        for (int i = 1; i < this.conditions.length; i++) {
+            if (this.compareAnd[i] ? result : !result) {
+                result = this.conditions[i].evaluate(resolver);
+            }
+        }
+        return result;
+    }
+
+    private static ConditionalExpression parse(String expression) {
+        // Find instances of && or || in the String, and separate each expression by these
+        List<Condition> conditions = new ArrayList<Condition>();
+        List<Boolean> compareAnd = new ArrayList<Boolean>();
+        compareAnd.add(Boolean.FALSE);
+        int prevExpressionStart = 0;
+        for (int cIdx = 0; cIdx < expression.length()-1; cIdx++) {
+            char c = expression.charAt(cIdx);
+
+            boolean nextCompareAnd;
+            if (c == '&' && expression.charAt(cIdx+1) == '&') {
+                nextCompareAnd = true;
+            } else if (c == '|' && expression.charAt(cIdx+1) == '|') {
+                nextCompareAnd = false;
+            } else {
+                continue;
+            }
+
+            conditions.add(parseCondition(expression.substring(prevExpressionStart, cIdx)));
+            compareAnd.add(nextCompareAnd);
+
+            // Reset to the next expression
+            cIdx++; // skip second & or |
+            prevExpressionStart = cIdx + 1;
+        }
+
+        // Trailing part
+        conditions.add(parseCondition(expression.substring(prevExpressionStart)));
+
+        boolean[] compareAndArr = new boolean[compareAnd.size()];
+        for (int i = 0; i < compareAndArr.length; i++) {
+            compareAndArr[i] = compareAnd.get(i).booleanValue();
+        }
+        return new ConditionalExpression(conditions.toArray(new Condition[conditions.size()]), compareAndArr);
+    }
+
+    private static Condition parseCondition(String expression) {
+        // =============== Tokenize the expression ================
+        expression = expression.trim();
+        String varName = null;
+        for (int cIdx = 0; cIdx < expression.length(); cIdx++) {
+            char c = expression.charAt(cIdx);
+            if (c == ' ' || (!Character.isLetter(c) && c != '_' && c != '!')) {
+                varName = expression.substring(0, cIdx);
+                expression = expression.substring(cIdx).trim();
+                break;
+            }
+        }
+        if (varName == null) {
+            varName = expression;
+            expression = "";
+        }
+
+        boolean inverted = false;
+        while (varName.startsWith("!")) {
+            inverted = !inverted;
+            varName = varName.substring(1);
+        }
+
+        if (varName.equals("classexists") || // legacy
+            varName.equals("methodexists") || // legacy
+            varName.equals("fieldexists") || // legacy
+            varName.equals("exists"))
+        {
+            int signatureStart = expression.indexOf(' ');
+            String classPath;
+            if (signatureStart == -1) {
+                classPath = expression;
+                signatureStart = expression.length();
+            } else {
+                classPath = expression.substring(0, signatureStart);
+                signatureStart++;
+            }
+            while (classPath.endsWith(";")) {
+                classPath = classPath.substring(0, classPath.length() - 1);
+            }
+
+            // Rest is method/field signature
+            return new ExistsCondition(inverted, classPath, expression.substring(signatureStart).trim());
+        }
+
+        if (varName.equals("assignable")) {
+            int secondClassStart = expression.indexOf(' ');
+            if (secondClassStart == -1) {
+                return new AssignableCondition(inverted, expression, Object.class.getName());
+            } else {
+                return new AssignableCondition(inverted,
+                        expression.substring(0, secondClassStart),
+                        expression.substring(secondClassStart + 1).trim());
+            }
+        }
+
+        int logicEndIdx = expression.indexOf(' ');
+        if (logicEndIdx == -1) {
+            // #if <varname> simply checks if the variable exists
+            return new VariableCondition(inverted, varName, null, null);
+        } else {
+            String operand = expression.substring(0, logicEndIdx);
+            String value2 = expression.substring(logicEndIdx + 1).trim();
+            return new VariableCondition(inverted, varName, operand, TextValueSequence.parse(value2));
+        }
+    }
+
+    private static abstract class Condition {
+        protected final boolean inverted;
+
+        public Condition(boolean inverted) {
+            this.inverted = inverted;
+        }
+
+        public abstract boolean evaluate(ClassResolver resolver);
+    }
+
+    private static final class ExistsCondition extends Condition {
+        private final String classPath;
+        private final String signature;
+
+        public ExistsCondition(boolean inverted, String classPath, String signature) {
+            super(inverted);
+            this.classPath = classPath;
+            this.signature = signature;
+        }
+
+        @Override
+        public boolean evaluate(ClassResolver resolver) {
+            return resolver.evaluateExistsCondition(this.classPath, this.signature) != this.inverted;
+        }
+    }
+
+    private static final class AssignableCondition extends Condition {
+        private final String firstClassPath;
+        private final String secondClassPath;
+
+        public AssignableCondition(boolean inverted, String firstClassPath, String secondClassPath) {
+            super(inverted);
+            this.firstClassPath = firstClassPath;
+            this.secondClassPath = secondClassPath;
+        }
+
+        @Override
+        public boolean evaluate(ClassResolver resolver) {
+            return resolver.evaluateAssignableCondition(this.firstClassPath, this.secondClassPath) != this.inverted;
+        }
+    }
+
+    private static final class VariableCondition extends Condition {
+        private final String varName;
+        private final String operand;
+        private final TextValueSequence value2;
+        private final boolean isTrueConstant;
+
+        public VariableCondition(boolean inverted, String varName, String operand, TextValueSequence value2) {
+            super(inverted);
+            this.varName = varName;
+            this.operand = operand;
+            this.value2 = value2;
+            this.isTrueConstant = varName.equals("1") || varName.equalsIgnoreCase("true");
+        }
+
+        @Override
+        public boolean evaluate(ClassResolver resolver) {
+            TextValueSequence value1 = resolver.getVariableSequence(this.varName);
+            if (value1 == null) {
+                // Edge cases: true/false constants
+                // Variable not found; never evaluates to True
+                return this.isTrueConstant != this.inverted;
+            } else if (this.operand == null) {
+                return !this.inverted;
+            } else {
+                return TextValueSequence.evaluate(value1, this.operand, this.value2) != this.inverted;
+            }
+        }
+    }
+}
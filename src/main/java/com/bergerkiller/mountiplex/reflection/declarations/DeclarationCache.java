@@ -0,0 +1,389 @@
+package com.bergerkiller.mountiplex.reflection.declarations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import com.bergerkiller.mountiplex.MountiplexUtil;
+import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
+
+/**
+ * Persistent cache of the real fields and methods that field and method declarations
+ * were resolved to. When a declaration is found in this cache, the member is looked up
+ * by its exact name and signature, skipping the matching against all the members of the class.
+ * This makes a warm start with a large number of template declarations a lot faster.<br>
+ * <br>
+ * Results are stored per class, keyed by a hash of the bytecode of the class, its superclasses
+ * and its interfaces. If the class changes, its results are discarded. Cached members are
+ * also verified to still match the declaration when they are used. The hash of every class is
+ * computed only once, and reused for all the classes that extend it.<br>
+ * <br>
+ * Only the resolution of members is cached. Template declarations are still parsed from
+ * source on every start.<br>
+ * <br>
+ * The cache is disabled by default. Call {@link #load(File)} before templates are initialized,
+ * and {@link #save()} after, to enable it.
+ */
+public final class DeclarationCache {
+    private static final int FILE_VERSION = 1;
+    private static final ClassValue<String> classHashes = new ClassValue<String>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return computeClassHash(type);
+        }
+    };
+    private static final ClassValue<byte[]> hierarchyHashes = new ClassValue<byte[]>() {
+        @Override
+        protected byte[] computeValue(Class<?> type) {
+            return computeHierarchyHash(type);
+        }
+    };
+    private static final Map<String, ClassEntry> entries = new ConcurrentHashMap<String, ClassEntry>();
+    private static final AtomicInteger hitCount = new AtomicInteger();
+    private static File cacheFile = null;
+    private static volatile boolean enabled = false;
+    private static volatile boolean changed = false;
+
+    private DeclarationCache() {
+    }
+
+    /**
+     * Enables the cache and loads the previously saved contents of a cache file.
+     * If the file does not exist or can not be read, the cache starts out empty.
+     *
+     * @param file Cache file to load from, and to save to with {@link #save()}
+     */
+    public static synchronized void load(File file) {
+        entries.clear();
+        hitCount.set(0);
+        cacheFile = file;
+        changed = false;
+        enabled = true;
+        if (!file.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_VERSION) {
+                return; // Outdated, start over
+            }
+            int numClasses = in.readInt();
+            for (int i = 0; i < numClasses; i++) {
+                String className = in.readUTF();
+                ClassEntry entry = new ClassEntry(in.readUTF());
+                int numMembers = in.readInt();
+                for (int j = 0; j < numMembers; j++) {
+                    String declaration = in.readUTF();
+                    entry.members.put(declaration, new MemberEntry(in.readUTF(), in.readUTF(), in.readUTF()));
+                }
+                entries.put(className, entry);
+            }
+        } catch (IOException ex) {
+            MountiplexUtil.LOGGER.log(Level.WARNING, "Failed to read declaration cache " + file, ex);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Saves the contents of this cache to the file specified in {@link #load(File)}.
+     * Does nothing if the cache is not enabled, or nothing changed since loading.
+     */
+    public static synchronized void save() {
+        if (!enabled || !changed) {
+            return;
+        }
+
+        File parent = cacheFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)))) {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, ClassEntry> classEntry : entries.entrySet()) {
+                out.writeUTF(classEntry.getKey());
+                out.writeUTF(classEntry.getValue().hash);
+                out.writeInt(classEntry.getValue().members.size());
+                for (Map.Entry<String, MemberEntry> member : classEntry.getValue().members.entrySet()) {
+                    out.writeUTF(member.getKey());
+                    out.writeUTF(member.getValue().declaringClassName);
+                    out.writeUTF(member.getValue().name);
+                    out.writeUTF(member.getValue().descriptor);
+                }
+            }
+            changed = false;
+        } catch (IOException ex) {
+            MountiplexUtil.LOGGER.log(Level.WARNING, "Failed to write declaration cache " + cacheFile, ex);
+        }
+    }
+
+    /**
+     * Disables the cache and discards all results stored in memory.
+     * The cache file is not deleted.
+     */
+    public static synchronized void disable() {
+        enabled = false;
+        cacheFile = null;
+        entries.clear();
+    }
+
+    /**
+     * Gets whether this cache is enabled using {@link #load(File)}
+     *
+     * @return True if enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Gets the number of field and method declarations that were resolved using this cache,
+     * since it was last loaded using {@link #load(File)}
+     *
+     * @return number of cache hits
+     */
+    public static int getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Looks up the cached field a field declaration was resolved to before
+     *
+     * @param type Class in which the field was resolved
+     * @param declaration Name-resolved field declaration
+     * @return cached field declaration matching the declaration, or null if not cached
+     */
+    static FieldDeclaration findField(Class<?> type, FieldDeclaration declaration) {
+        MemberEntry member = find(type, declaration);
+        if (member == null) {
+            return null;
+        }
+        try {
+            for (Class<?> t = type; t != null; t = t.getSuperclass()) {
+                if (t.getName().equals(member.declaringClassName)) {
+                    Field field = t.getDeclaredField(member.name);
+                    if (MPLType.getDescriptor(field.getType()).equals(member.descriptor)) {
+                        // Name was already checked by looking the field up by the stored name
+                        // The declaration can have an alias-only name, which would not match it
+                        FieldDeclaration result = new FieldDeclaration(declaration.getResolver(), field);
+                        if (declaration.matchSignature(result)) {
+                            hitCount.incrementAndGet();
+                            return result;
+                        }
+                        return null;
+                    }
+                    break;
+                }
+            }
+        } catch (Throwable t) { /* Not found, resolve normally */ }
+        return null;
+    }
+
+    /**
+     * Looks up the cached method a method declaration was resolved to before
+     *
+     * @param type Class in which the method was resolved
+     * @param declaration Name-resolved method declaration
+     * @return cached method matching the declaration, or null if not cached
+     */
+    static Method findMethod(Class<?> type, MethodDeclaration declaration) {
+        MemberEntry member = find(type, declaration);
+        if (member == null) {
+            return null;
+        }
+        try {
+            Class<?> declaringClass = findInHierarchy(type, member.declaringClassName);
+            if (declaringClass != null) {
+                for (Method method : declaringClass.getDeclaredMethods()) {
+                    if (method.getName().equals(member.name) &&
+                        MPLType.getMethodDescriptor(method).equals(member.descriptor))
+                    {
+                        MethodDeclaration result = new MethodDeclaration(declaration.getResolver(), method);
+                        if (result.match(declaration)) {
+                            hitCount.incrementAndGet();
+                            return method;
+                        }
+                        return null;
+                    }
+                }
+            }
+        } catch (Throwable t) { /* Not found, resolve normally */ }
+        return null;
+    }
+
+    /**
+     * Stores the field a field declaration was resolved to
+     *
+     * @param type Class in which the field was resolved
+     * @param declaration Name-resolved field declaration, before the field is assigned
+     * @param field Field the declaration resolved to
+     */
+    static void storeField(Class<?> type, FieldDeclaration declaration, Field field) {
+        store(type, declaration, new MemberEntry(field.getDeclaringClass().getName(),
+                field.getName(), MPLType.getDescriptor(field.getType())));
+    }
+
+    /**
+     * Stores the method a method declaration was resolved to
+     *
+     * @param type Class in which the method was resolved
+     * @param declaration Name-resolved method declaration
+     * @param method Method the declaration resolved to
+     */
+    static void storeMethod(Class<?> type, MethodDeclaration declaration, Method method) {
+        store(type, declaration, new MemberEntry(method.getDeclaringClass().getName(),
+                method.getName(), MPLType.getMethodDescriptor(method)));
+    }
+
+    private static MemberEntry find(Class<?> type, Declaration declaration) {
+        if (!enabled) {
+            return null;
+        }
+        ClassEntry entry = entries.get(type.getName());
+        if (entry == null) {
+            return null;
+        }
+        String hash = classHashes.get(type);
+        if (hash == null || !hash.equals(entry.hash)) {
+            return null;
+        }
+        return entry.members.get(declaration.toString(true));
+    }
+
+    private static void store(Class<?> type, Declaration declaration, MemberEntry member) {
+        if (!enabled) {
+            return;
+        }
+        String hash = classHashes.get(type);
+        if (hash == null) {
+            return; // Bytecode unavailable, can't detect changes
+        }
+        ClassEntry entry = entries.compute(type.getName(), (name, existing) -> {
+            return (existing != null && existing.hash.equals(hash)) ? existing : new ClassEntry(hash);
+        });
+        entry.members.put(declaration.toString(true), member);
+        changed = true;
+    }
+
+    private static Class<?> findInHierarchy(Class<?> type, String className) {
+        if (type == null) {
+            return null;
+        } else if (type.getName().equals(className)) {
+            return type;
+        }
+        Class<?> result = findInHierarchy(type.getSuperclass(), className);
+        if (result == null) {
+            for (Class<?> iif : type.getInterfaces()) {
+                if ((result = findInHierarchy(iif, className)) != null) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes a hash of the bytecode of a class, all its superclasses and interfaces.
+     * Classes of the Java runtime itself are represented by the Java version.
+     * Returns null if the bytecode of one of the classes can not be read.
+     */
+    private static String computeClassHash(Class<?> type) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(System.getProperty("java.version", "").getBytes("UTF-8"));
+            if (!digestHierarchy(digest, type)) {
+                return null;
+            }
+            return new BigInteger(1, digest.digest()).toString(16);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds the hash of the bytecode of a class, all its superclasses and interfaces to a digest.
+     * Classes of the Java runtime itself are skipped. Returns false if the bytecode of one of the
+     * classes can not be read.
+     */
+    static boolean digestHierarchy(MessageDigest digest, Class<?> type) {
+        if (type == null) {
+            return true;
+        }
+        byte[] hash = hierarchyHashes.get(type);
+        if (hash == null) {
+            return false;
+        }
+        digest.update(hash);
+        return true;
+    }
+
+    /**
+     * Hashes the bytecode of a class together with the hashes of its superclass and interfaces.
+     * As those are memoized as well, the bytecode of every class is only read once, no matter
+     * how many classes extend it. Returns null if the bytecode of one of the classes can not be read.
+     */
+    private static byte[] computeHierarchyHash(Class<?> type) {
+        if (type.getClassLoader() == null) {
+            return new byte[0]; // Java runtime, represented by the Java version
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            try (InputStream in = type.getClassLoader().getResourceAsStream(type.getName().replace('.', '/') + ".class")) {
+                if (in == null) {
+                    return null;
+                }
+                byte[] buffer = new byte[4096];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, len);
+                }
+            }
+            if (!digestHierarchy(digest, type.getSuperclass())) {
+                return null;
+            }
+            for (Class<?> iif : type.getInterfaces()) {
+                if (!digestHierarchy(digest, iif)) {
+                    return null;
+                }
+            }
+            return digest.digest();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private static final class ClassEntry {
+        public final String hash;
+        public final Map<String, MemberEntry> members = new ConcurrentHashMap<String, MemberEntry>();
+
+        public ClassEntry(String hash) {
+            this.hash = hash;
+        }
+    }
+
+    private static final class MemberEntry {
+        public final String declaringClassName;
+        public final String name;
+        public final String descriptor;
+
+        public MemberEntry(String declaringClassName, String name, String descriptor) {
+            this.declaringClassName = declaringClassName;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+    }
+}
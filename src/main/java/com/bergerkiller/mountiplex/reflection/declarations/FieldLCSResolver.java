@@ -1,17 +1,14 @@
 package com.bergerkiller.mountiplex.reflection.declarations;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
 import com.bergerkiller.mountiplex.MountiplexUtil;
-import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
 
 /**
  * Attempts to find the longest common sequence from two
@@ -58,6 +55,14 @@ public class FieldLCSResolver {
                 continue;
             }
 
+            // Field resolved before at a previous run, skip matching
+            FieldDeclaration cached = DeclarationCache.findField(this.declaringClass, nameResolved);
+            if (cached != null) {
+                nameResolved.copyFieldFrom(cached);
+                this.fields[i] = nameResolved;
+                continue;
+            }
+
             remainingInputFields.add(new FieldDeclarationReference(nameResolved, i));
         }
 
@@ -66,6 +71,12 @@ public class FieldLCSResolver {
             return;
         }
 
+        // Fields can only match a real field by the same name. If all fields are found
+        // by name in the member index, the real fields don't have to be matched at all.
+        if (resolveByName(remainingInputFields)) {
+            return;
+        }
+
         // Match
         FieldDeclaration[] realFields = this.getRealFields();
         List<Pair> pairs = lcs(remainingInputFields, realFields);
@@ -111,34 +122,48 @@ public class FieldLCSResolver {
         }
     }
 
+    private boolean resolveByName(List<FieldDeclarationReference> inputFields) {
+        Map<String, Field> realRefFieldsByName = ClassMemberIndex.of(this.declaringClass).getFieldsByName();
+        FieldDeclaration[] found = new FieldDeclaration[inputFields.size()];
+        for (int i = 0; i < found.length; i++) {
+            FieldDeclaration field = inputFields.get(i).field;
+            if (field.name.isAliasOnly()) {
+                return false;
+            }
+            Field realRefField = realRefFieldsByName.get(field.name.value());
+            if (realRefField == null) {
+                return false;
+            }
+            try {
+                found[i] = new FieldDeclaration(resolver, realRefField);
+            } catch (Throwable t) {
+                return false;
+            }
+            if (!field.match(found[i])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < found.length; i++) {
+            applyLCSResult(inputFields.get(i), found[i]);
+        }
+        return true;
+    }
+
     private void applyLCSResult(FieldDeclarationReference ref, FieldDeclaration field) {
+        if (field.field != null) {
+            DeclarationCache.storeField(this.declaringClass, ref.field, field.field);
+        }
         ref.field.copyFieldFrom(field);
         this.fields[ref.index] = ref.field;
     }
 
     private FieldDeclaration[] getRealFields() {
         if (realFields == null) {
-            Map<String, Field> realRefFieldsByName = new HashMap<>();
-
             // Find all fields the type contains, including non-private fields declared in super classes
-            boolean excludePrivateFields = false;
-            Class<?> currentType = this.declaringClass;
-            while (currentType != null && currentType != Object.class && !currentType.isInterface()) {
-                try {
-                    for (java.lang.reflect.Field field : currentType.getDeclaredFields()) {
-                        if (!excludePrivateFields || !Modifier.isPrivate(field.getModifiers())) {
-                            realRefFieldsByName.putIfAbsent(MPLType.getName(field), field);
-                        }
-                    }
-                } catch (Throwable t) {
-                    if (this.resolver.getLogErrors()) {
-                        MountiplexUtil.LOGGER.log(Level.SEVERE, "Failed to get declared fields of " + currentType, t);
-                    }
-                    break;
-                }
-
-                currentType = currentType.getSuperclass();
-                excludePrivateFields = true;
+            ClassMemberIndex index = ClassMemberIndex.of(this.declaringClass);
+            Map<String, Field> realRefFieldsByName = index.getFieldsByName();
+            if (this.resolver.getLogErrors()) {
+                index.logFieldErrors();
             }
 
             this.realFields = new FieldDeclaration[realRefFieldsByName.size()];
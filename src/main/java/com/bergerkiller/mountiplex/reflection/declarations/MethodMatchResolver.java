@@ -1,11 +1,9 @@
 package com.bergerkiller.mountiplex.reflection.declarations;
 
-import java.lang.reflect.Modifier;
 import java.util.logging.Level;
 import java.util.stream.Stream;
 
 import com.bergerkiller.mountiplex.MountiplexUtil;
-import com.bergerkiller.mountiplex.reflection.ReflectionUtil;
 import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
 
 /**
@@ -47,6 +45,14 @@ class MethodMatchResolver {
                 continue;
             }
 
+            // Method resolved before at a previous run, skip matching
+            java.lang.reflect.Method cached = DeclarationCache.findMethod(declaringClass, nameResolved);
+            if (cached != null) {
+                nameResolved.method = cached;
+                methods[i] = nameResolved;
+                continue;
+            }
+
             // Try to assign it to a real existing method by looking at the real methods array
             if (assignRealMethod(method, nameResolved)) {
                 methods[i] = nameResolved;
@@ -60,8 +66,17 @@ class MethodMatchResolver {
     }
 
     private boolean assignRealMethod(MethodDeclaration method, MethodDeclaration nameResolved) {
-        // LCS search using all known real method names
-        MethodDeclaration[] realMethods = getRealMethods();
+        // Only methods by the same name and number of parameters can match, unless only an alias is specified
+        MethodDeclaration[] realMethods;
+        if (nameResolved.name.isAliasOnly()) {
+            realMethods = getRealMethods();
+        } else {
+            realMethods = ClassMemberIndex.of(declaringClass)
+                    .findMethods(nameResolved.name.value(), nameResolved.parameters.parameters.length)
+                    .stream()
+                    .map(m -> new MethodDeclaration(resolver, m))
+                    .toArray(MethodDeclaration[]::new);
+        }
         for (MethodDeclaration realMethod : realMethods) {
             if (realMethod.match(nameResolved)) {
                 // Log a warning when modifiers differ, but do not fail the matching
@@ -77,6 +92,10 @@ class MethodMatchResolver {
                     }
                 }
 
+                if (realMethod.method != null) {
+                    DeclarationCache.storeMethod(declaringClass, nameResolved, realMethod.method);
+                }
+
                 // This makes the method 'discovered' (isDiscovered() = true)
                 nameResolved.method = realMethod.method;
                 nameResolved.constructor = realMethod.constructor;
@@ -90,13 +109,7 @@ class MethodMatchResolver {
     private MethodDeclaration[] getRealMethods() {
         if (realMethods == null) {
             try {
-                // Merge declared and public methods as one long array
-                // Skip declared methods that are public - they are already in the list
-                realMethods = Stream.concat(
-                                ReflectionUtil.getDeclaredMethods(declaringClass),
-                                ReflectionUtil.getMethods(declaringClass)
-                                        .filter(m -> !Modifier.isStatic(m.getModifiers()))
-                        ).filter(ReflectionUtil.createDuplicateMethodFilter())
+                realMethods = Stream.of(ClassMemberIndex.of(declaringClass).getMethods())
                         .map(m -> new MethodDeclaration(resolver, m))
                         .toArray(MethodDeclaration[]::new);
             } catch (Throwable t) {
@@ -0,0 +1,295 @@
+package com.bergerkiller.mountiplex.reflection.declarations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import com.bergerkiller.mountiplex.MountiplexUtil;
+import com.bergerkiller.mountiplex.reflection.resolver.ClassDeclarationResolver;
+import com.bergerkiller.mountiplex.reflection.util.GeneratorClassLoader;
+
+/**
+ * Stores the generated implementation classes of {@link Template.Handle Handle} types ahead of time,
+ * and loads them again at runtime instead of generating them. This moves the bytecode generation
+ * of Handles out of the startup of an application.<br>
+ * <br>
+ * Handle implementations are precompiled with {@link #precompile(SourceDeclaration, String, Map, ClassLoader, File)},
+ * or by running this class as a program, for one set of template variables with the target classes
+ * on the classpath. The bytecode is stored as resources keyed by a signature of the bytecode of the
+ * Handle, Template Class and target classes, and the members the declarations resolved to. At runtime
+ * a stored implementation is only used if the signature is the same, otherwise the implementation is
+ * generated like before.<br>
+ * <br>
+ * Loading precompiled Handles is disabled by default. Call {@link #setEnabled(boolean)} before templates
+ * are initialized to enable it.
+ */
+public final class PrecompiledHandles {
+    /** Resource directory in which the precompiled Handle classes are stored */
+    public static final String RESOURCE_PATH = "META-INF/mountiplex/handles/";
+    /** Changes when the bytecode generated for Handles changes */
+    private static final String FORMAT_VERSION = "2";
+    private static volatile boolean enabled = false;
+
+    private PrecompiledHandles() {
+    }
+
+    /**
+     * Sets whether precompiled Handle implementations are loaded when a Template Class creates
+     * its first Handle. Computing the signature reads the bytecode of the types involved, so this
+     * should only be enabled when the Handles were precompiled.
+     *
+     * @param enabled True to load precompiled Handles, False to always generate them
+     */
+    public static void setEnabled(boolean enabled) {
+        PrecompiledHandles.enabled = enabled;
+    }
+
+    /**
+     * Gets whether precompiled Handle implementations are loaded
+     *
+     * @return True if enabled
+     * @see #setEnabled(boolean)
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Loads the precompiled implementation of a Handle, if one was stored for the same
+     * signature as the Handle currently has.
+     *
+     * @param builder Handle builder
+     * @return precompiled Handle implementation, or null if not available
+     */
+    static Class<?> load(TemplateHandleBuilder<?> builder) {
+        if (!enabled) {
+            return null;
+        }
+
+        List<Template.Class<?>> templateClasses = builder.getTemplateClasses();
+        ClassLoader classLoader = templateClasses.get(0).getHandleType().getClassLoader();
+        if (classLoader == null) {
+            return null;
+        }
+
+        String signature = computeSignature(templateClasses);
+        if (signature == null) {
+            return null;
+        }
+
+        String name = builder.getPrecompiledName();
+        byte[] bytecode;
+        try (InputStream in = classLoader.getResourceAsStream(getResourcePath(name, signature))) {
+            if (in == null) {
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            bytecode = out.toByteArray();
+        } catch (IOException ex) {
+            return null;
+        }
+
+        try {
+            return GeneratorClassLoader.get(classLoader).createClassFromBytecode(name, bytecode, null);
+        } catch (Throwable t) {
+            MountiplexUtil.LOGGER.log(Level.WARNING, "Failed to load precompiled handle " + name, t);
+            return null;
+        }
+    }
+
+    /**
+     * Precompiles the implementations of all the Handle types generated for a source declaration.
+     * The Handle types and the classes they represent are loaded using the class loader, without
+     * initializing the Handle types. Template Classes are created using the class declarations of
+     * the source declaration.
+     *
+     * @param source Source declaration, loaded using the same variables as specified
+     * @param targetPackage Package root in which the Handle classes were generated
+     * @param variables Variables the source declaration was loaded with
+     * @param classLoader Class loader to load the Handle classes with
+     * @param outputDirectory Directory in which to write the {@link #RESOURCE_PATH} resources
+     * @return number of Handle implementations that were precompiled
+     */
+    public static int precompile(SourceDeclaration source, String targetPackage, Map<String, String> variables,
+            ClassLoader classLoader, File outputDirectory)
+    {
+        final SourceClassDeclarationResolver resolver = new SourceClassDeclarationResolver(source, variables);
+        final Map<Class<?>, Template.Class<?>> templateClasses = new HashMap<Class<?>, Template.Class<?>>();
+        int count = 0;
+        for (Class<?> handleType : TemplateInitializer.findHandleTypes(source, targetPackage, classLoader)) {
+            Template.Class<?> templateClass = createTemplateClass(templateClasses, resolver, handleType);
+            if (templateClass == null || !templateClass.isAvailable()) {
+                MountiplexUtil.LOGGER.warning("Handle " + handleType.getName() + " skipped: class not available");
+                continue;
+            }
+
+            try {
+                TemplateHandleBuilder<?> builder = new TemplateHandleBuilder<>(templateClass,
+                        h -> createTemplateClass(templateClasses, resolver, h));
+                String signature = computeSignature(builder.getTemplateClasses());
+                if (signature == null) {
+                    MountiplexUtil.LOGGER.warning("Handle " + handleType.getName() + " skipped: bytecode of the types is not available");
+                    continue;
+                }
+
+                File file = new File(outputDirectory, getResourcePath(builder.getPrecompiledName(), signature));
+                file.getParentFile().mkdirs();
+                Files.write(file.toPath(), builder.precompile());
+                count++;
+            } catch (Throwable t) {
+                MountiplexUtil.LOGGER.log(Level.SEVERE, "Failed to precompile handle " + handleType.getName(), t);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Precompiles the Handles of a template source file found on disk. The classes of the Handles,
+     * and the classes they represent, must be on the classpath.<br>
+     * <br>
+     * Arguments: <i>[source directory] [source file] [target package] [output directory] [name=value]...</i>
+     *
+     * @param args Program arguments
+     */
+    public static void main(String[] args) {
+        if (args.length < 4) {
+            System.err.println("Usage: PrecompiledHandles <source directory> <source file> <target package> <output directory> [name=value]...");
+            System.exit(1);
+            return;
+        }
+
+        Map<String, String> variables = new LinkedHashMap<String, String>();
+        for (int i = 4; i < args.length; i++) {
+            int eq = args[i].indexOf('=');
+            if (eq == -1) {
+                variables.put(args[i], "");
+            } else {
+                variables.put(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+
+        SourceDeclaration source = SourceDeclaration.loadFromDisk(new File(args[0]), args[1], variables);
+        int count = precompile(source, args[2], variables, PrecompiledHandles.class.getClassLoader(), new File(args[3]));
+        MountiplexUtil.LOGGER.info("Precompiled " + count + " handles");
+    }
+
+    private static String getResourcePath(String className, String signature) {
+        return RESOURCE_PATH + className.replace('.', '/') + "/" + signature + ".bin";
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static Template.Class<?> createTemplateClass(Map<Class<?>, Template.Class<?>> templateClasses,
+            ClassDeclarationResolver resolver, Class<?> handleType)
+    {
+        Template.Class<?> templateClass = templateClasses.get(handleType);
+        if (templateClass == null && !templateClasses.containsKey(handleType)) {
+            try {
+                // Does not initialize the Handle type itself, which would create its template using its own resolver
+                Class<?> templateClassType = handleType.getField("T").getType();
+                templateClass = Template.Class.create((Class) templateClassType, resolver);
+            } catch (Throwable t) {
+                MountiplexUtil.LOGGER.log(Level.SEVERE, "Failed to create template of handle " + handleType.getName(), t);
+            }
+            templateClasses.put(handleType, templateClass);
+        }
+        return templateClass;
+    }
+
+    /**
+     * Computes a signature of everything that goes into the generated implementation of a Handle.
+     * Returns null if the bytecode of one of the types can not be read.
+     */
+    private static String computeSignature(List<Template.Class<?>> templateClasses) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digestString(digest, FORMAT_VERSION);
+            digestString(digest, Template.class.getName());
+            for (Template.Class<?> templateClass : templateClasses) {
+                ClassDeclaration classDec = templateClass.getClassDeclaration();
+                if (classDec == null || templateClass.getType() == null) {
+                    return null;
+                }
+
+                digestString(digest, templateClass.getHandleType().getName());
+                if (!DeclarationCache.digestHierarchy(digest, templateClass.getHandleType()) ||
+                    !DeclarationCache.digestHierarchy(digest, templateClass.getSelfClassType()) ||
+                    !DeclarationCache.digestHierarchy(digest, templateClass.getType()))
+                {
+                    return null;
+                }
+
+                // Declarations, and the real members they resolved to
+                digestString(digest, classDec.toString());
+                for (FieldDeclaration fieldDec : classDec.fields) {
+                    digestString(digest, String.valueOf(fieldDec.field));
+                }
+                for (MethodDeclaration methodDec : classDec.methods) {
+                    digestString(digest, String.valueOf(methodDec.method));
+                }
+            }
+            return new BigInteger(1, digest.digest()).toString(16);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private static void digestString(MessageDigest digest, String text) {
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Resolves the class declarations of a single source declaration by the class path
+     * of the type they declare.
+     */
+    private static final class SourceClassDeclarationResolver implements ClassDeclarationResolver {
+        private final SourceDeclaration source;
+        private final Map<String, String> variables;
+        private final Map<String, ClassDeclaration> classes = new HashMap<String, ClassDeclaration>();
+
+        public SourceClassDeclarationResolver(SourceDeclaration source, Map<String, String> variables) {
+            this.source = source;
+            this.variables = variables;
+            for (ClassDeclaration classDec : source.classes) {
+                register(classDec);
+            }
+        }
+
+        private void register(ClassDeclaration classDec) {
+            this.classes.put(classDec.type.typePath, classDec);
+            for (ClassDeclaration subclass : classDec.subclasses) {
+                register(subclass);
+            }
+        }
+
+        @Override
+        public ClassDeclaration resolveClassDeclaration(String classPath, Class<?> classType) {
+            return this.classes.get(classPath);
+        }
+
+        @Override
+        public void resolveClassVariables(String classPath, Class<?> classType, Map<String, String> variables) {
+            variables.putAll(this.variables);
+        }
+
+        @Override
+        public ClassResolver getRootClassResolver(String classPath, Class<?> classType) {
+            return this.source.getResolver();
+        }
+    }
+}
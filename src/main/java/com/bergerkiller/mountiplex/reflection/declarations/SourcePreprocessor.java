@@ -1,11 +1,17 @@
 package com.bergerkiller.mountiplex.reflection.declarations;
 
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.Locale;
+
+import com.bergerkiller.mountiplex.reflection.util.StringBuffer;
 
 /**
  * Pre-processes template source code to resolve if,
- * else,elseif,select case and variable macros.
+ * else,elseif,select case and variable macros.<br>
+ * <br>
+ * The lines of the source are processed in a single pass as portions of one char buffer.
+ * Included lines are copied straight into the result, only the expressions and variables
+ * of directives are turned into Strings.
  */
 public class SourcePreprocessor {
     private final ClassResolver resolver;
@@ -20,41 +26,55 @@ public class SourcePreprocessor {
     }
 
     public String preprocess(String declaration) {
-        // Trim block comments from the declaration text
-        while (true) {
-            int startIndex = declaration.lastIndexOf("/*");
-            if (startIndex == -1) {
-                break;
-            }
-            int endIndex = declaration.indexOf("*/", startIndex + 2);
-            if (endIndex == -1) {
-                break;
-            }
-            declaration = declaration.substring(0, startIndex) +
-                    declaration.substring(endIndex + 2);
+        StringBuffer text = trimBlockComments(declaration);
+        result.ensureCapacity(result.length() + text.length() + 1);
+
+        // Trailing empty lines are omitted
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\n') {
+            end--;
+            if (end > 0 && text.charAt(end - 1) == '\r') {
+                end--;
+            }
         }
 
-        for (String line : declaration.split("\\r?\\n")) {
-            preprocessLine(line);
+        if (end > 0 || text.length() == 0) {
+            int lineStart = 0;
+            while (true) {
+                int lineEnd = text.indexOf('\n', lineStart);
+                if (lineEnd == -1 || lineEnd >= end) {
+                    preprocessLine(text.substring(lineStart, end));
+                    break;
+                }
+                if (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r') {
+                    preprocessLine(text.substring(lineStart, lineEnd - 1));
+                } else {
+                    preprocessLine(text.substring(lineStart, lineEnd));
+                }
+                lineStart = lineEnd + 1;
+            }
         }
 
         return result.toString();
     }
 
     public void preprocessLine(String line) {
-        String lineTrimmed = line.trim();
-        String lineLower = lineTrimmed.toLowerCase(Locale.ENGLISH);
+        preprocessLine(StringBuffer.of(line));
+    }
+
+    private void preprocessLine(StringBuffer line) {
+        StringBuffer lineTrimmed = line.trim();
 
         // Translate select case statements into if-elseif-else-endif blocks
         int selectCaseIndent = -1;
-        if (lineLower.startsWith("#select ")) {
+        if (lineTrimmed.startsWithIgnoreCase("#select ")) {
             int start = line.indexOf('#');
             if (start != -1) {
-                selectStack.offer(line.substring(start + 8));
+                selectStack.offer(line.substringToString(start + 8));
                 isFirstSelectCase = true;
             }
             return;
-        } else if (lineLower.startsWith("#endselect")) {
+        } else if (lineTrimmed.startsWithIgnoreCase("#endselect")) {
             selectStack.pollLast();
             if (isFirstSelectCase) {
                 isFirstSelectCase = false;
@@ -64,91 +84,89 @@ public class SourcePreprocessor {
             if (start == -1) {
                 return;
             }
-            line = line.substring(0, start) + "#endif";
+            line = line.substring(0, start).append("#endif");
             lineTrimmed = line.trim();
-            lineLower = lineTrimmed.toLowerCase(Locale.ENGLISH);
-        } else if (lineLower.startsWith("#case")) {
+        } else if (lineTrimmed.startsWithIgnoreCase("#case")) {
             int start = line.indexOf('#');
             if (start == -1 || selectStack.isEmpty()) {
                 return;
             }
-            String statement = line.substring(start + 5);
+            StringBuffer statement = line.substring(start + 5);
 
             // Check whether the statement is "default"
-            String afterElse = null;
+            StringBuffer afterElse = null;
             boolean isFinalElse;
             {
-                String statementTrimmed = statement;
+                StringBuffer statementTrimmed = statement;
                 int statementEnd = statement.indexOf(':');
                 if (statementEnd != -1) {
                     afterElse = statement.substring(statementEnd+1);
                     statementTrimmed = statement.substring(0, statementEnd);
                     selectCaseIndent = start + 5 + statementEnd;
                 }
-                isFinalElse = statementTrimmed.trim().equalsIgnoreCase("else");
+                statementTrimmed = statementTrimmed.trim();
+                isFinalElse = statementTrimmed.length() == 4 && statementTrimmed.startsWithIgnoreCase("else");
             }
 
-            StringBuilder replacement = new StringBuilder();
-            replacement.append(line.substring(0, start));
+            StringBuilder replacement = new StringBuilder(line.length() + 16);
+            line.substring(0, start).appendTo(replacement);
             if (!isFirstSelectCase && isFinalElse) {
                 replacement.append("#else");
                 if (afterElse != null) {
-                    replacement.append(':').append(afterElse);
+                    afterElse.appendTo(replacement.append(':'));
                 }
             } else {
                 replacement.append(isFirstSelectCase ? "#if " : "#elseif ");
-                replacement.append(selectStack.peekLast()).append(statement);
+                statement.appendTo(replacement.append(selectStack.peekLast()));
             }
-            line = replacement.toString();
+            line = StringBuffer.of(replacement);
             lineTrimmed = line.trim();
-            lineLower = lineTrimmed.toLowerCase(Locale.ENGLISH);
             isFirstSelectCase = false;
         }
 
         // For if/elseif/else statements, check if they have a statement on the same line following a :
         // If so, correct indentation and process the statement on a new line
-        if (lineLower.startsWith("#if") || lineLower.startsWith("#elseif") || lineLower.startsWith("#else")) {
+        if (lineTrimmed.startsWithIgnoreCase("#if") || lineTrimmed.startsWithIgnoreCase("#else")) {
             int statementEnd = line.indexOf(':');
             if (statementEnd != -1) {
                 // Line with #if/#elseif/#else
                 preprocessLine(line.substring(0, statementEnd));
 
                 // Line with the first line of statement code
-                StringBuilder statementStr = new StringBuilder();
-
                 // Select case translated, use original indent in select case block
                 int numSpacesIndent = (selectCaseIndent != -1) ? selectCaseIndent : statementEnd;
+                StringBuffer statement = line.substring(statementEnd + 1);
+                StringBuilder statementStr = new StringBuilder(numSpacesIndent + 1 + statement.length());
                 for (int n = 0; n <= numSpacesIndent; n++) {
                     statementStr.append(' ');
                 }
-
-                statementStr.append(line.substring(statementEnd + 1));
-                preprocessLine(statementStr.toString());
+                statement.appendTo(statementStr);
+                preprocessLine(StringBuffer.of(statementStr));
                 return;
             }
         }
 
         if (disabledIfLevel > 1) {
             // At this level, #elseif and #else have no effect, only switch levels
-            if (lineLower.startsWith("#if")) {
+            if (lineTrimmed.startsWithIgnoreCase("#if")) {
                 disabledIfLevel++;
-            } else if (lineLower.startsWith("#endif")) {
+            } else if (lineTrimmed.startsWithIgnoreCase("#endif")) {
                 disabledIfLevel--;
             }
             return;
         }
         if (disabledIfLevel == 1) {
             // At this level, #elseif or #else can toggle modes
-            if (lineLower.startsWith("#if")) {
+            if (lineTrimmed.startsWithIgnoreCase("#if")) {
                 disabledIfLevel++;
-            } else if (lineLower.startsWith("#endif")) {
+            } else if (lineTrimmed.startsWithIgnoreCase("#endif")) {
                 disabledIfLevel--;
-            } else if (lineLower.startsWith("#else")) {
-                int ifIdx = lineTrimmed.indexOf("if", 5);
+            } else if (lineTrimmed.startsWithIgnoreCase("#else")) {
+                int ifIdx = indexOfIf(lineTrimmed, 5);
                 boolean evaluates = true;
                 if (ifIdx != -1) {
                     // Else if - evaluate expression to decide whether to allow
-                    String expr = lineTrimmed.substring(ifIdx + 2).trim();
+                    String expr = lineTrimmed.substring(ifIdx + 2).trim().toString();
                     evaluates = resolver.evaluateExpression(expr);
                 }
                 if (!disabledIfExpression && evaluates) {
@@ -163,42 +181,103 @@ public class SourcePreprocessor {
         // Parse if-statements in case we go a level deeper
         // All else-evaluations fail here
         disabledIfExpression = false;
-        if (lineLower.startsWith("#if")) {
-            String expr = lineTrimmed.substring(3).trim();
+        if (lineTrimmed.startsWithIgnoreCase("#if")) {
+            String expr = lineTrimmed.substring(3).trim().toString();
             if (!resolver.evaluateExpression(expr)) {
                 disabledIfLevel++;
             }
             return;
         }
-        if (lineLower.startsWith("#else")) {
+        if (lineTrimmed.startsWithIgnoreCase("#else")) {
             disabledIfLevel++;
             disabledIfExpression = true;
             return;
         }
-        if (lineLower.startsWith("#endif")) {
+        if (lineTrimmed.startsWithIgnoreCase("#endif")) {
             return; // ignore
         }
 
         // Ignore comments
-        if (lineLower.startsWith("//")) {
+        if (lineTrimmed.startsWith("//")) {
             return;
         }
 
         // The below statements are all included in the source
-        result.append(line).append('\n');
-        if (lineLower.startsWith("#set ")) {
-            lineTrimmed = lineTrimmed.substring(5).trim();
-            int nameEndIdx = lineTrimmed.indexOf(' ');
+        line.appendTo(result).append('\n');
+        if (lineTrimmed.startsWithIgnoreCase("#set ")) {
+            StringBuffer statement = lineTrimmed.substring(5).trim();
+            int nameEndIdx = statement.indexOf(' ');
             if (nameEndIdx == -1) {
                 return;
             }
-            String varName = lineTrimmed.substring(0, nameEndIdx);
-            String varValue = lineTrimmed.substring(nameEndIdx + 1);
-            while (varValue.length() > 0 && varValue.charAt(0) == ' ') {
-                varValue = varValue.substring(1);
+            String varName = statement.substringToString(0, nameEndIdx);
+            int valueStart = nameEndIdx + 1;
+            while (valueStart < statement.length() && statement.charAt(valueStart) == ' ') {
+                valueStart++;
             }
-            resolver.setVariable(varName, varValue);
+            resolver.setVariable(varName, statement.substringToString(valueStart));
             return;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Removes all block comments from the declaration text. Every comment end closes the innermost
+     * open comment start before it, and nested block comments are removed as a whole. A comment start
+     * that is never closed does not open a comment, and is kept as-is. This happens, for example,
+     * when a line comment mentions a path ending in a wildcard.
+     */
+    private static StringBuffer trimBlockComments(String declaration) {
+        char[] buffer = declaration.toCharArray();
+        int len = buffer.length;
+
+        // Pair every comment end with the innermost open comment start, and store where the comment ends
+        int[] commentEnds = null;
+        int[] openStack = null;
+        int openCount = 0;
+        for (int i = 0; (i + 1) < len;) {
+            if (buffer[i] == '/' && buffer[i + 1] == '*') {
+                if (openStack == null) {
+                    openStack = new int[4];
+                } else if (openCount == openStack.length) {
+                    openStack = Arrays.copyOf(openStack, openCount * 2);
+                }
+                openStack[openCount++] = i;
+                i += 2;
+            } else if (openCount > 0 && buffer[i] == '*' && buffer[i + 1] == '/') {
+                if (commentEnds == null) {
+                    commentEnds = new int[len];
+                }
+                commentEnds[openStack[--openCount]] = i + 2;
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        if (commentEnds == null) {
+            return new StringBuffer(buffer, 0, len);
+        }
+
+        // Copy all text outside of the outermost comments
+        int writeIdx = 0;
+        int readIdx = 0;
+        while (readIdx < len) {
+            int commentEnd = commentEnds[readIdx];
+            if (commentEnd != 0) {
+                readIdx = commentEnd;
+            } else {
+                buffer[writeIdx++] = buffer[readIdx++];
+            }
+        }
+        return new StringBuffer(buffer, 0, writeIdx);
+    }
+
+    // Finds the (case-sensitive) 'if' in an #elseif statement
+    private static int indexOfIf(StringBuffer text, int startIndex) {
+        for (int i = startIndex, end = text.length() - 1; i < end; i++) {
+            if (text.charAt(i) == 'i' && text.charAt(i + 1) == 'f') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
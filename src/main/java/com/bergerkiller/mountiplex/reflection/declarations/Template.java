@@ -11,9 +11,11 @@ import java.util.logging.Level;
 
 import com.bergerkiller.mountiplex.MountiplexUtil;
 import com.bergerkiller.mountiplex.conversion.Conversion;
+import com.bergerkiller.mountiplex.conversion.Converter;
 import com.bergerkiller.mountiplex.conversion.type.DisabledConverter;
 import com.bergerkiller.mountiplex.conversion.type.DuplexConverter;
 import com.bergerkiller.mountiplex.conversion.type.LazyConverter;
+import com.bergerkiller.mountiplex.conversion.type.PrimitiveConverter;
 import com.bergerkiller.mountiplex.conversion.util.ParamsConverterList;
 import com.bergerkiller.mountiplex.reflection.FieldAccessor;
 import com.bergerkiller.mountiplex.reflection.IgnoredFieldAccessor;
@@ -31,10 +33,60 @@ import com.bergerkiller.mountiplex.reflection.util.LazyInitializedObject;
 import com.bergerkiller.mountiplex.reflection.util.NullInstantiator;
 import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
 import com.bergerkiller.mountiplex.reflection.util.fast.ClassFieldCopier;
+import com.bergerkiller.mountiplex.reflection.util.fast.GeneratedCodeInvoker;
+import com.bergerkiller.mountiplex.reflection.util.fast.GeneratedMemberBatch;
 import com.bergerkiller.mountiplex.reflection.util.fast.InitInvoker;
 import com.bergerkiller.mountiplex.reflection.util.fast.Invoker;
 
 public class Template {
+    private static boolean batchMethodBodies = false;
+    private static boolean handleFieldBinding = false;
+    private static boolean batchMembers = false;
+
+    /**
+     * Sets whether the method bodies declared in the class declaration of a template are compiled
+     * into a single generated class, instead of generating a class for every method body. This
+     * reduces the number of classes that are defined, at the cost of compiling all method bodies
+     * as soon as the first one is used. Only affects templates initialized after calling this method.
+     *
+     * @param enabled True to compile the method bodies of a template as a batch
+     * @see GeneratedCodeInvoker#createBatch(java.util.Collection)
+     */
+    public static void setBatchMethodBodiesEnabled(boolean enabled) {
+        batchMethodBodies = enabled;
+    }
+
+    /**
+     * Sets whether the invokers of the public methods and constructors, and the accessors of the
+     * public fields, declared in the class declaration of a template are generated into a single
+     * class, instead of generating a class for every method and field. This reduces the number of
+     * classes that are defined, at the cost of generating the calls to all these members as soon as
+     * the first one is used. Only affects templates initialized after calling this method.
+     *
+     * @param enabled True to generate the member invokers and accessors of a template as a batch
+     * @see GeneratedMemberBatch#create(java.lang.Class, java.util.Collection)
+     */
+    public static void setBatchMembersEnabled(boolean enabled) {
+        batchMembers = enabled;
+    }
+
+    /**
+     * Sets whether the generated {@link Handle} implementations access non-public fields through the
+     * field accessor directly, stored in a static final field of the implementation. By default the
+     * getters and setters go through the Template Field, which is looked up on every call. Binding
+     * the accessors makes these calls faster, at the cost of initializing the accessors of all the
+     * fields of a Handle as soon as it is created. Only affects Handle types created after calling
+     * this method, and not precompiled Handles.
+     *
+     * @param enabled True to bind the field accessors into generated Handles
+     */
+    public static void setHandleFieldBindingEnabled(boolean enabled) {
+        handleFieldBinding = enabled;
+    }
+
+    static boolean isHandleFieldBindingEnabled() {
+        return handleFieldBinding;
+    }
 
     /**
      * The Class represents all the Class-level information for an instance type.
@@ -56,6 +108,8 @@ public class Template {
         private TemplateElement<?>[] elements = new TemplateElement<?>[0];
         private ClassFieldCopier<Object> fieldCopier = null;
         private ClassDeclaration classDec = null;
+        private GeneratedCodeInvoker.Batch methodBodyBatch = null;
+        private GeneratedMemberBatch memberBatch = null;
 
         /**
          * Initializes a new Class instance of the given Class Type. No class declarations are queried, instead, such information
@@ -120,6 +174,22 @@ public class Template {
             if (this.handleBuilderMethod != null) {
                 return handleBuilderMethod.invoke(null, instance);
             }
+            return getHandleBuilder().create(instance);
+        }
+
+        /**
+         * Creates a new handle cursor for this Template Class type. A cursor holds a single
+         * Handle instance that can be bound to different raw instances, so that iterating
+         * over many instances does not create a new Handle for every one of them.
+         * 
+         * @return new handle cursor
+         * @see HandleCursor
+         */
+        public final HandleCursor<H> createHandleCursor() {
+            return new HandleCursor<H>(this);
+        }
+
+        private TemplateHandleBuilder<H> getHandleBuilder() {
             if (this.handleBuilder == null) {
                 synchronized (this) {
                     if (this.handleBuilder == null) {
@@ -131,7 +201,7 @@ public class Template {
                     }
                 }
             }
-            return this.handleBuilder.create(instance);
+            return this.handleBuilder;
         }
 
         /**
@@ -231,6 +301,39 @@ public class Template {
                 this.classDec.getResolver().runBootstrap();
             }
 
+            // Compile all method bodies into a single class, if enabled
+            this.methodBodyBatch = null;
+            if (this.valid && batchMethodBodies) {
+                ArrayList<MethodDeclaration> methodBodies = new ArrayList<MethodDeclaration>();
+                for (MethodDeclaration methodDec : this.classDec.methods) {
+                    if (methodDec.body != null && methodDec.isDiscovered()) {
+                        methodBodies.add(methodDec);
+                    }
+                }
+                this.methodBodyBatch = GeneratedCodeInvoker.createBatch(methodBodies);
+            }
+
+            // Generate the invokers and accessors of all public members into a single class, if enabled
+            this.memberBatch = null;
+            if (this.valid && batchMembers && this.classType != null) {
+                ArrayList<java.lang.reflect.Member> members = new ArrayList<java.lang.reflect.Member>();
+                for (MethodDeclaration methodDec : this.classDec.methods) {
+                    if (methodDec.body == null && methodDec.isDiscovered()) {
+                        if (methodDec.method != null) {
+                            members.add(methodDec.method);
+                        } else if (methodDec.constructor != null) {
+                            members.add(methodDec.constructor);
+                        }
+                    }
+                }
+                for (FieldDeclaration fieldDec : this.classDec.fields) {
+                    if (fieldDec.field != null) {
+                        members.add(fieldDec.field);
+                    }
+                }
+                this.memberBatch = GeneratedMemberBatch.create(this.classType, members);
+            }
+
             // Initialize all declared fields
             boolean fieldsSuccessful = true;
             ArrayList<TemplateElement<?>> elementsList = new ArrayList<TemplateElement<?>>();
@@ -550,6 +653,52 @@ public class Template {
         }
     }
 
+    /**
+     * Reuses a single {@link Handle} for accessing many raw instances, one after the other.
+     * Each call to {@link #bind(Object)} changes the raw instance of the same handle, avoiding
+     * the creation of a new handle. This is useful in loops over large numbers of instances.<br>
+     * <br>
+     * A cursor is not thread-safe and the handle returned by it must not be stored, as its raw
+     * instance changes on the next bind. Use a separate cursor for every thread.
+     * If the Template Class declares its own createHandle method, a new handle is created
+     * every bind instead.
+     *
+     * @param <H> Handle type
+     */
+    public static final class HandleCursor<H extends Handle> {
+        private final Class<H> handleClass;
+        private final H handle;
+        private final TemplateHandleBuilder.RebindableHandle rebindable;
+
+        private HandleCursor(Class<H> handleClass) {
+            this.handleClass = handleClass;
+            if (handleClass.handleBuilderMethod == null) {
+                this.handle = handleClass.getHandleBuilder().createRebindable(null);
+                this.rebindable = (TemplateHandleBuilder.RebindableHandle) this.handle;
+            } else {
+                this.handle = null;
+                this.rebindable = null;
+            }
+        }
+
+        /**
+         * Binds the handle of this cursor to a new raw instance.
+         * If the instance is null, null is returned.
+         *
+         * @param instance Raw instance to bind to
+         * @return handle of this cursor bound to the instance
+         */
+        public H bind(Object instance) {
+            if (this.rebindable == null) {
+                return this.handleClass.createHandle(instance, false);
+            }
+
+            // Also when null, so the previous instance is no longer referenced
+            this.rebindable.TH_rebind(instance);
+            return (instance == null) ? null : this.handle;
+        }
+    }
+
     // duplex converter for converting from/to raw type/handle type
     public static final class DuplexHandleConverter<H extends Handle> extends DuplexConverter<Object, H> {
         public final Class<H> handleClass;
@@ -720,7 +869,7 @@ public class Template {
                         return null;
                     }
 
-                    this.field.init(fieldDec.field);
+                    this.field.init(fieldDec.field, owner.memberBatch);
                     return fieldDec;
                 }
             }
@@ -806,7 +955,7 @@ public class Template {
                     }
 
                     this.method = methodDec;
-                    this.invoker = InitInvoker.forMethod(this, "invoker", methodDec);
+                    this.invoker = InitInvoker.forMethod(this, "invoker", methodDec, owner.methodBodyBatch, owner.memberBatch);
                     return methodDec;
                 }
             }
@@ -853,6 +1002,7 @@ public class Template {
         public final F raw;
         protected LazyConverter<?, T> converter = LazyConverter.uninitialized();
         protected LazyConverter<T, ?> reverse = LazyConverter.uninitialized();
+        private boolean rawPrimitive = false;
 
         protected AbstractFieldConverter(F raw) {
             this.raw = raw;
@@ -887,6 +1037,7 @@ public class Template {
             }
             FieldDeclaration fDec = this.raw.init(owner, dec, name);
             if (fDec != null) {
+                this.rawPrimitive = fDec.type.isPrimitive;
                 if (this.isReadonly()) {
                     this.converter = LazyConverter.create(fDec.type, fDec.type.cast);
                     this.reverse = LazyConverter.of(new DisabledConverter<T, Object>(fDec.type.cast, fDec.type, "Field " + name + " is readonly"));
@@ -938,6 +1089,28 @@ public class Template {
         public F raw() {
             return raw;
         }
+
+        /**
+         * Gets the converter used to read the field value, if it is a primitive converter that
+         * can convert the primitive raw field value without boxing.
+         *
+         * @return primitive get converter, or null if not available (yet)
+         */
+        protected final PrimitiveConverter<?, ?> getPrimitiveConverter() {
+            Converter<?, T> c = converter.converter;
+            return (rawPrimitive && c instanceof PrimitiveConverter) ? (PrimitiveConverter<?, ?>) c : null;
+        }
+
+        /**
+         * Gets the converter used to write the field value, if it is a primitive converter that
+         * can write to the primitive raw field without boxing.
+         *
+         * @return primitive set converter, or null if not available (yet)
+         */
+        protected final PrimitiveConverter<?, ?> getPrimitiveReverse() {
+            Converter<T, ?> c = reverse.converter;
+            return (rawPrimitive && c instanceof PrimitiveConverter) ? (PrimitiveConverter<?, ?>) c : null;
+        }
     }
 
     public static abstract class AbstractParamsConverter<R extends TemplateElement<?>, T, D extends Declaration> extends TemplateElement<D> {
@@ -2045,6 +2218,125 @@ public class Template {
                 raw.set(rawValue);
             }
 
+            /** @see #get() */
+            public final byte getByte() {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readByte(raw.field, null) : ((java.lang.Number) get()).byteValue();
+            }
+
+            /** @see #set(Object) */
+            @SuppressWarnings("unchecked")
+            public final void setByte(byte value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeByte(raw.field, null, value);
+                } else {
+                    set((T) java.lang.Byte.valueOf(value));
+                }
+            }
+
+            /** @see #get() */
+            public final short getShort() {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readShort(raw.field, null) : ((java.lang.Number) get()).shortValue();
+            }
+
+            /** @see #set(Object) */
+            @SuppressWarnings("unchecked")
+            public final void setShort(short value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeShort(raw.field, null, value);
+                } else {
+                    set((T) java.lang.Short.valueOf(value));
+                }
+            }
+
+            /** @see #get() */
+            public final int getInteger() {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readInteger(raw.field, null) : ((java.lang.Number) get()).intValue();
+            }
+
+            /** @see #set(Object) */
+            @SuppressWarnings("unchecked")
+            public final void setInteger(int value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeInteger(raw.field, null, value);
+                } else {
+                    set((T) java.lang.Integer.valueOf(value));
+                }
+            }
+
+            /** @see #get() */
+            public final long getLong() {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readLong(raw.field, null) : ((java.lang.Number) get()).longValue();
+            }
+
+            /** @see #set(Object) */
+            @SuppressWarnings("unchecked")
+            public final void setLong(long value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeLong(raw.field, null, value);
+                } else {
+                    set((T) java.lang.Long.valueOf(value));
+                }
+            }
+
+            /** @see #get() */
+            public final float getFloat() {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readFloat(raw.field, null) : ((java.lang.Number) get()).floatValue();
+            }
+
+            /** @see #set(Object) */
+            @SuppressWarnings("unchecked")
+            public final void setFloat(float value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeFloat(raw.field, null, value);
+                } else {
+                    set((T) java.lang.Float.valueOf(value));
+                }
+            }
+
+            /** @see #get() */
+            public final double getDouble() {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readDouble(raw.field, null) : ((java.lang.Number) get()).doubleValue();
+            }
+
+            /** @see #set(Object) */
+            @SuppressWarnings("unchecked")
+            public final void setDouble(double value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeDouble(raw.field, null, value);
+                } else {
+                    set((T) java.lang.Double.valueOf(value));
+                }
+            }
+
+            /** @see #get() */
+            public final boolean getBoolean() {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readBoolean(raw.field, null) : ((java.lang.Boolean) get()).booleanValue();
+            }
+
+            /** @see #set(Object) */
+            @SuppressWarnings("unchecked")
+            public final void setBoolean(boolean value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeBoolean(raw.field, null, value);
+                } else {
+                    set((T) java.lang.Boolean.valueOf(value));
+                }
+            }
+
             @Override
             public final StaticField<Object> raw() {
                 return this.raw;
@@ -2298,6 +2590,125 @@ public class Template {
                 raw.copy(instanceFrom, instanceTo);
             }
 
+            /** @see #get(Object) */
+            public final byte getByte(Object instance) {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readByte(raw.field, instance) : ((java.lang.Number) get(instance)).byteValue();
+            }
+
+            /** @see #set(Object, Object) */
+            @SuppressWarnings("unchecked")
+            public final void setByte(Object instance, byte value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeByte(raw.field, instance, value);
+                } else {
+                    set(instance, (T) java.lang.Byte.valueOf(value));
+                }
+            }
+
+            /** @see #get(Object) */
+            public final short getShort(Object instance) {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readShort(raw.field, instance) : ((java.lang.Number) get(instance)).shortValue();
+            }
+
+            /** @see #set(Object, Object) */
+            @SuppressWarnings("unchecked")
+            public final void setShort(Object instance, short value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeShort(raw.field, instance, value);
+                } else {
+                    set(instance, (T) java.lang.Short.valueOf(value));
+                }
+            }
+
+            /** @see #get(Object) */
+            public final int getInteger(Object instance) {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readInteger(raw.field, instance) : ((java.lang.Number) get(instance)).intValue();
+            }
+
+            /** @see #set(Object, Object) */
+            @SuppressWarnings("unchecked")
+            public final void setInteger(Object instance, int value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeInteger(raw.field, instance, value);
+                } else {
+                    set(instance, (T) java.lang.Integer.valueOf(value));
+                }
+            }
+
+            /** @see #get(Object) */
+            public final long getLong(Object instance) {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readLong(raw.field, instance) : ((java.lang.Number) get(instance)).longValue();
+            }
+
+            /** @see #set(Object, Object) */
+            @SuppressWarnings("unchecked")
+            public final void setLong(Object instance, long value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeLong(raw.field, instance, value);
+                } else {
+                    set(instance, (T) java.lang.Long.valueOf(value));
+                }
+            }
+
+            /** @see #get(Object) */
+            public final float getFloat(Object instance) {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readFloat(raw.field, instance) : ((java.lang.Number) get(instance)).floatValue();
+            }
+
+            /** @see #set(Object, Object) */
+            @SuppressWarnings("unchecked")
+            public final void setFloat(Object instance, float value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeFloat(raw.field, instance, value);
+                } else {
+                    set(instance, (T) java.lang.Float.valueOf(value));
+                }
+            }
+
+            /** @see #get(Object) */
+            public final double getDouble(Object instance) {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readDouble(raw.field, instance) : ((java.lang.Number) get(instance)).doubleValue();
+            }
+
+            /** @see #set(Object, Object) */
+            @SuppressWarnings("unchecked")
+            public final void setDouble(Object instance, double value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeDouble(raw.field, instance, value);
+                } else {
+                    set(instance, (T) java.lang.Double.valueOf(value));
+                }
+            }
+
+            /** @see #get(Object) */
+            public final boolean getBoolean(Object instance) {
+                PrimitiveConverter<?, ?> c = getPrimitiveConverter();
+                return (c != null) ? c.readBoolean(raw.field, instance) : ((java.lang.Boolean) get(instance)).booleanValue();
+            }
+
+            /** @see #set(Object, Object) */
+            @SuppressWarnings("unchecked")
+            public final void setBoolean(Object instance, boolean value) {
+                PrimitiveConverter<?, ?> c = getPrimitiveReverse();
+                if (c != null) {
+                    c.writeBoolean(raw.field, instance, value);
+                } else {
+                    set(instance, (T) java.lang.Boolean.valueOf(value));
+                }
+            }
+
             @Override
             public final Field<Object> raw() {
                 return this.raw;
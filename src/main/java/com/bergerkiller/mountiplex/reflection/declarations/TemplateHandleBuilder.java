@@ -4,17 +4,29 @@ import static org.objectweb.asm.Opcodes.*;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
 import java.util.logging.Level;
 
 import com.bergerkiller.mountiplex.MountiplexUtil;
+import com.bergerkiller.mountiplex.conversion.Converter;
+import com.bergerkiller.mountiplex.conversion.type.FailingConverter;
+import com.bergerkiller.mountiplex.conversion.type.LazyConverter;
+import com.bergerkiller.mountiplex.conversion.type.PrimitiveConverter;
+import com.bergerkiller.mountiplex.conversion.util.ParamsConverterList;
 import com.bergerkiller.mountiplex.reflection.declarations.Template.Handle;
 import com.bergerkiller.mountiplex.reflection.resolver.Resolver;
 import com.bergerkiller.mountiplex.reflection.util.BoxedType;
 import com.bergerkiller.mountiplex.reflection.util.ExtendedClassWriter;
 import com.bergerkiller.mountiplex.reflection.util.FastConstructor;
+import com.bergerkiller.mountiplex.reflection.util.FastField;
+import com.bergerkiller.mountiplex.reflection.util.LazyInitializedObject;
 import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
 import com.bergerkiller.mountiplex.reflection.util.fast.GeneratedExactSignatureInvoker;
 import com.bergerkiller.mountiplex.reflection.util.fast.Invoker;
+import com.bergerkiller.mountiplex.reflection.util.fast.Reader;
+import com.bergerkiller.mountiplex.reflection.util.fast.Writer;
 
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
@@ -27,13 +39,21 @@ import org.objectweb.asm.MethodVisitor;
 public class TemplateHandleBuilder<H extends Handle> {
     private final Template.Class<H> templateClass;
     private final Class<H> handleType;
+    private final Function<Class<?>, Template.Class<?>> templateClassLookup;
     private Class<? extends H> handleImplType;
     private final FastConstructor<H> handleConstructor = new FastConstructor<H>();
+    private final FastConstructor<H> rebindableConstructor = new FastConstructor<H>();
 
     public TemplateHandleBuilder(Template.Class<H> templateClass) {
+        this(templateClass, TemplateHandleBuilder::getTemplateClassOfHandle);
+    }
+
+    TemplateHandleBuilder(Template.Class<H> templateClass, Function<Class<?>, Template.Class<?>> templateClassLookup) {
         this.templateClass = templateClass;
         this.handleType = templateClass.getHandleType();
+        this.templateClassLookup = templateClassLookup;
         this.handleConstructor.initUnavailable("new " + handleType.getName() + "()");
+        this.rebindableConstructor.initUnavailable("new " + handleType.getName() + "()");
     }
 
     public Class<? extends H> getImplType() {
@@ -44,8 +64,33 @@ public class TemplateHandleBuilder<H extends Handle> {
         return handleConstructor.newInstance(instance);
     }
 
+    /**
+     * Creates a new Handle whose raw instance can be changed afterwards. The class of this
+     * Handle is separate from the one used by {@link #create(Object)}, and is only generated
+     * when this method is first called. Must be called after {@link #build()}.
+     *
+     * @param instance Initial raw instance of the Handle
+     * @return new handle, which implements {@link RebindableHandle}
+     */
+    @SuppressWarnings("unchecked")
+    public H createRebindable(Object instance) {
+        if (!this.rebindableConstructor.isAvailable()) {
+            synchronized (this) {
+                if (!this.rebindableConstructor.isAvailable()) {
+                    if (this.handleImplType == FallbackHandle.class) {
+                        this.rebindableConstructor.init(findConstructor(RebindableFallbackHandle.class, Object.class));
+                    } else {
+                        this.rebindableConstructor.init(findConstructor(
+                                (Class<? extends H>) write(false, true).generate(), getConstructorInstanceType()));
+                    }
+                }
+            }
+        }
+        return rebindableConstructor.newInstance(instance);
+    }
+
     //TODO: Might be incorrect if somebody named this something other than T!
-    private Template.Class<?> getTemplateClass(Class<?> handleClass) {
+    private static Template.Class<?> getTemplateClassOfHandle(Class<?> handleClass) {
         try {
             return (Template.Class<?>) handleClass.getField("T").get(null);
         } catch (Throwable t) {
@@ -58,6 +103,63 @@ public class TemplateHandleBuilder<H extends Handle> {
                ((Template.AbstractMethod<?>) templateElement).invoker instanceof GeneratedExactSignatureInvoker;
     }
 
+    /**
+     * Gets the converter of a lazy converter if it was already found, without looking it up
+     *
+     * @param lazy Lazy converter
+     * @return converter, or null if not yet initialized or not found
+     */
+    private static Converter<?, ?> getInitializedConverter(LazyConverter<?, ?> lazy) {
+        Converter<?, ?> c = lazy.converter;
+        return (c instanceof LazyInitializedObject || c instanceof FailingConverter) ? null : c;
+    }
+
+    /**
+     * Gets the Template Class of the Handle type, and those of all the Handle types it extends.
+     * These are all the Template Classes whose members are implemented by the generated Handle.
+     *
+     * @return list of template classes, starting with the Template Class of the Handle type
+     */
+    List<Template.Class<?>> getTemplateClasses() {
+        List<Template.Class<?>> result = new ArrayList<Template.Class<?>>();
+        Class<?> currentHandleType = this.handleType;
+        Template.Class<?> currentTemplateClass = this.templateClass;
+        do {
+            result.add(currentTemplateClass);
+            currentHandleType = currentHandleType.getSuperclass();
+            if (currentHandleType == Template.Handle.class) {
+                break;
+            }
+            currentTemplateClass = this.templateClassLookup.apply(currentHandleType);
+        } while (true);
+        return result;
+    }
+
+    /**
+     * Gets the name of the Handle implementation class stored by {@link #precompile()}
+     *
+     * @return precompiled class name
+     */
+    String getPrecompiledName() {
+        return MPLType.getName(this.handleType) + "$impl";
+    }
+
+    /**
+     * Generates the bytecode of the Handle implementation class, so that it can be stored
+     * and defined again later. The class does not refer to any runtime-generated classes.
+     *
+     * @return bytecode of the class named {@link #getPrecompiledName()}
+     */
+    byte[] precompile() {
+        if (this.templateClass.getType() == null) {
+            throw new IllegalStateException("Handle internal type of " + this.handleType + " is null");
+        }
+        if (this.handleType == Template.Handle.class) {
+            throw new IllegalStateException("Fallback handles can not be precompiled");
+        }
+        return write(true, false).generateBytecode();
+    }
+
     @SuppressWarnings("unchecked")
     public void build() {
         if (this.templateClass.getType() == null) {
@@ -66,26 +168,52 @@ public class TemplateHandleBuilder<H extends Handle> {
 
         if (this.handleType == Template.Handle.class) {
             this.handleImplType = (Class<? extends H>) FallbackHandle.class;
-            try {
-                Constructor<? extends H> constructor;
-                try {
-                    constructor = this.handleImplType.getConstructor(Object.class);
-                } catch (Throwable t) {
-                    throw new IllegalStateException("Failed to find generated handle constructor for fallback handle", t);
-                }
-
-                this.handleConstructor.init(constructor);
-            } catch (Throwable t) {
-                throw MountiplexUtil.uncheckedRethrow(t);
-            }
+            this.handleConstructor.init(findConstructor(this.handleImplType, Object.class));
             return;
         }
 
+        // Use a precompiled implementation if one was stored for the exact same types
+        this.handleImplType = (Class<? extends H>) PrecompiledHandles.load(this);
+        if (this.handleImplType == null) {
+            this.handleImplType = write(false, false).generate();
+        }
+
+        this.handleConstructor.init(findConstructor(this.handleImplType, getConstructorInstanceType()));
+    }
+
+    /**
+     * Gets the type of the raw instance accepted by the constructor of generated Handles
+     */
+    private Class<?> getConstructorInstanceType() {
+        Class<?> topInstanceType = this.templateClass.getType();
+        if (!Resolver.getMeta(topInstanceType).isPublic) {
+            topInstanceType = Object.class;
+        }
+        return topInstanceType;
+    }
+
+    private static <T> Constructor<? extends T> findConstructor(Class<? extends T> implType, Class<?> instanceType) {
+        try {
+            return implType.getConstructor(instanceType);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to find generated handle constructor of handle for " + MPLType.getName(instanceType), t);
+        }
+    }
+
+    private ExtendedClassWriter<H> write(boolean precompiled, boolean rebindable) {
         // Set up the class writer for the implementation of the handle type
-        ExtendedClassWriter<H> cw = ExtendedClassWriter.builder(this.handleType)
+        ExtendedClassWriter.Builder<H> builder = ExtendedClassWriter.<H>builder(this.handleType)
                 .setFlags(ClassWriter.COMPUTE_MAXS)
-                .setAccess(ACC_FINAL)
-                .setPostfix("$impl").build();
+                .setAccess(ACC_FINAL);
+        if (rebindable) {
+            builder.addInterface(RebindableHandle.class);
+        }
+        if (precompiled) {
+            builder.setExactName(getPrecompiledName());
+        } else {
+            builder.setPostfix(rebindable ? "$rebindable" : "$impl");
+        }
+        ExtendedClassWriter<H> cw = builder.build();
 
         Class<?> topInstanceType = this.templateClass.getType();
 
@@ -104,7 +232,8 @@ public class TemplateHandleBuilder<H extends Handle> {
         FieldVisitor fv;
 
         // Add instance field of the main handle instance type
-        fv = cw.visitField(ACC_PUBLIC + ACC_FINAL, "instance", instanceTypeDesc, null, null);
+        // Only rebindable handles used by a handle cursor can change it
+        fv = cw.visitField(rebindable ? ACC_PUBLIC : (ACC_PUBLIC | ACC_FINAL), "instance", instanceTypeDesc, null, null);
         fv.visitEnd();
 
         // Add constructor accepting the main handle instance type
@@ -130,6 +259,21 @@ public class TemplateHandleBuilder<H extends Handle> {
         mv.visitMaxs(1, 1);
         mv.visitEnd();
 
+        // Add a TH_rebind(Object) function, changing the instance field
+        if (rebindable) {
+            mv = cw.visitMethod(ACC_PUBLIC + ACC_FINAL, "TH_rebind", "(Ljava/lang/Object;)V", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            if (topInstanceType != Object.class) {
+                mv.visitTypeInsn(CHECKCAST, instanceTypeName);
+            }
+            mv.visitFieldInsn(PUTFIELD, cw.getInternalName(), "instance", instanceTypeDesc);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(2, 2);
+            mv.visitEnd();
+        }
+
         // Walk all Handle superclass types that this Handle class type is
         // For all types we must implement the abstract methods for the fields/methods represented
         Class<?> currentHandleType = this.handleType;
@@ -161,10 +305,13 @@ public class TemplateHandleBuilder<H extends Handle> {
                 // Find out what Template accessor names to use
                 // For example, this returns class type Template.Field.Integer for 'int' fields
                 Class<?> templateElement;
+                Object templateElementValue;
                 String templateElementName;
                 String templateElementDesc;
                 try {
-                    templateElement = templateClassType.getField(fieldName).getType();
+                    java.lang.reflect.Field templateField = templateClassType.getField(fieldName);
+                    templateElement = templateField.getType();
+                    templateElementValue = templateField.get(currentTemplateClass);
                     templateElementName = MPLType.getInternalName(templateElement);
                     templateElementDesc = MPLType.getDescriptor(templateElement);
                 } catch (Throwable t) {
@@ -184,6 +331,16 @@ public class TemplateHandleBuilder<H extends Handle> {
                     }
                 }
 
+                // Converted fields exposing a primitive type have typed overloads that avoid boxing
+                if (accessorName.isEmpty() &&
+                        fieldType.isPrimitive() &&
+                        PrimitiveConverter.isSupported(fieldType) &&
+                        Template.AbstractFieldConverter.class.isAssignableFrom(templateElement))
+                {
+                    accessorName = BoxedType.getBoxedType(fieldType).getSimpleName();
+                    accessorType = fieldTypeDesc;
+                }
+
                 // If the variable is public, we can get it without having to use the accessor in Template.Class
                 // This allows for a slight performance improvement (and avoids unneeded initialization of FastField)
                 boolean isPublicField = instanceAccessible &&
@@ -195,6 +352,43 @@ public class TemplateHandleBuilder<H extends Handle> {
                 boolean isPublicNonfinalField = isPublicField &&
                         !Modifier.isFinal(fieldDec.field.getModifiers());
 
+                // If the converters of a converted field were already found, the raw field and the
+                // converters can be called directly. This avoids the shared get/set of the converted field,
+                // where the converter calls see every type of converter. Not possible when precompiling,
+                // as these are stored as runtime objects in the generated class.
+                Template.Field<?> convertedRawField = null;
+                Converter<?, ?> getConverter = null;
+                Converter<?, ?> setConverter = null;
+                if (!precompiled && accessorName.isEmpty() && templateElementValue instanceof Template.Field.Converted) {
+                    Template.Field.Converted<?> convertedField = (Template.Field.Converted<?>) templateElementValue;
+                    convertedRawField = convertedField.raw;
+                    getConverter = getInitializedConverter(convertedField.converter);
+                    setConverter = getInitializedConverter(convertedField.reverse);
+                }
+
+                // When enabled, the accessors of non-public fields are bound into the generated class,
+                // so that the getter and setter access the field without looking up the Template Field.
+                // If an accessor can not be initialized, the Template Field produces the error when used.
+                Reader<?> boundReader = null;
+                Writer<?> boundWriter = null;
+                if (!precompiled && !isPublicField && Template.isHandleFieldBindingEnabled() &&
+                        fieldDec.type.cast == null && templateElementValue instanceof Template.AbstractField)
+                {
+                    FastField<?> fastField = ((Template.AbstractField<?>) templateElementValue).field;
+                    try {
+                        boundReader = fastField.getReader();
+                    } catch (RuntimeException ex) {
+                        MountiplexUtil.LOGGER.log(Level.FINE, "Field " + fieldName + " reader can not be bound", ex);
+                    }
+                    if (!fieldDec.modifiers.isReadonly()) {
+                        try {
+                            boundWriter = fastField.getWriter();
+                        } catch (RuntimeException ex) {
+                            MountiplexUtil.LOGGER.log(Level.FINE, "Field " + fieldName + " writer can not be bound", ex);
+                        }
+                    }
+                }
+
                 // Generate getter
                 String getterName = TemplateGenerator.getGetterName(fieldDec);
                 mv = cw.visitMethod(ACC_PUBLIC + ACC_FINAL, getterName, "()" + fieldTypeDesc, null, null);
@@ -203,6 +397,27 @@ public class TemplateHandleBuilder<H extends Handle> {
                     mv.visitVarInsn(ALOAD, 0);
                     mv.visitFieldInsn(GETFIELD, cw.getInternalName(), "instance", instanceTypeDesc);
                     mv.visitFieldInsn(GETFIELD, instanceTypeName, fieldDec.getAccessedName(), fieldTypeDesc);
+                } else if (getConverter != null) {
+                    cw.visitPush(mv, Converter.class, getConverter);
+                    cw.visitPush(mv, Template.Field.class, convertedRawField);
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitFieldInsn(GETFIELD, cw.getInternalName(), "instance", instanceTypeDesc);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, MPLType.getInternalName(Template.Field.class), "get", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, MPLType.getInternalName(Converter.class), "convert", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+                    ExtendedClassWriter.visitUnboxObjectVariable(mv, fieldType);
+                } else if (boundReader != null) {
+                    cw.visitPush(mv, Reader.class, boundReader);
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitFieldInsn(GETFIELD, cw.getInternalName(), "instance", instanceTypeDesc);
+                    if (fieldType.isPrimitive()) {
+                        mv.visitMethodInsn(INVOKEINTERFACE, MPLType.getInternalName(Reader.class),
+                                "get" + BoxedType.getBoxedType(fieldType).getSimpleName(),
+                                "(Ljava/lang/Object;)" + fieldTypeDesc, true);
+                    } else {
+                        mv.visitMethodInsn(INVOKEINTERFACE, MPLType.getInternalName(Reader.class),
+                                "get", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+                        ExtendedClassWriter.visitUnboxObjectVariable(mv, fieldType);
+                    }
                 } else {
                     mv.visitFieldInsn(GETSTATIC, currentHandleName, "T", templateClassDesc);
                     mv.visitFieldInsn(GETFIELD, templateClassName, fieldName, templateElementDesc);
@@ -227,6 +442,28 @@ public class TemplateHandleBuilder<H extends Handle> {
                         mv.visitFieldInsn(GETFIELD, cw.getInternalName(), "instance", instanceTypeDesc);
                         mv.visitVarInsn(MPLType.getOpcode(fieldType, ILOAD), 1);
                         mv.visitFieldInsn(PUTFIELD, instanceTypeName, fieldDec.getAccessedName(), fieldTypeDesc);
+                    } else if (setConverter != null) {
+                        cw.visitPush(mv, Template.Field.class, convertedRawField);
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitFieldInsn(GETFIELD, cw.getInternalName(), "instance", instanceTypeDesc);
+                        cw.visitPush(mv, Converter.class, setConverter);
+                        mv.visitVarInsn(MPLType.getOpcode(fieldType, ILOAD), 1);
+                        MPLType.visitBoxVariable(mv, fieldType);
+                        mv.visitMethodInsn(INVOKEVIRTUAL, MPLType.getInternalName(Converter.class), "convert", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+                        mv.visitMethodInsn(INVOKEVIRTUAL, MPLType.getInternalName(Template.Field.class), "set", "(Ljava/lang/Object;Ljava/lang/Object;)V", false);
+                    } else if (boundWriter != null) {
+                        cw.visitPush(mv, Writer.class, boundWriter);
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitFieldInsn(GETFIELD, cw.getInternalName(), "instance", instanceTypeDesc);
+                        mv.visitVarInsn(MPLType.getOpcode(fieldType, ILOAD), 1);
+                        if (fieldType.isPrimitive()) {
+                            mv.visitMethodInsn(INVOKEINTERFACE, MPLType.getInternalName(Writer.class),
+                                    "set" + BoxedType.getBoxedType(fieldType).getSimpleName(),
+                                    "(Ljava/lang/Object;" + fieldTypeDesc + ")V", true);
+                        } else {
+                            mv.visitMethodInsn(INVOKEINTERFACE, MPLType.getInternalName(Writer.class),
+                                    "set", "(Ljava/lang/Object;Ljava/lang/Object;)V", true);
+                        }
                     } else {
                         mv.visitFieldInsn(GETSTATIC, currentHandleName, "T", templateClassDesc);
                         mv.visitFieldInsn(GETFIELD, templateClassName, fieldName, templateElementDesc);
@@ -288,6 +525,13 @@ public class TemplateHandleBuilder<H extends Handle> {
                         Modifier.isPublic(methodDec.method.getModifiers()) &&
                         !hasTypeConversion;
 
+                // If the converters of a converted method were already found, the raw invoker and the
+                // converters can be called directly, instead of through the invoke() of the converted method
+                ParamsConverterList<?> converters = null;
+                if (!precompiled && !canInline && templateElement instanceof Template.Method.Converted) {
+                    converters = ((Template.Method.Converted<?>) templateElement).converters.getIfInitialized();
+                }
+
                 mv = cw.visitMethod(ACC_PUBLIC, methodName, methodDesc, null, null);
                 mv.visitCode();
                 if (canInline) {
@@ -297,7 +541,7 @@ public class TemplateHandleBuilder<H extends Handle> {
                     MPLType.visitVarILoad(mv, 1, paramTypes);
                     ExtendedClassWriter.visitInvoke(mv, instanceType, methodDec.method);
                     mv.visitInsn(MPLType.getOpcode(returnType, IRETURN));
-                } else if (isGeneratedInvoker(templateElement)) {
+                } else if (!precompiled && isGeneratedInvoker(templateElement)) {
                     // Can cast invoker to a runtime-generated interface and call that directly
                     // Note: these are only local methods, static methods aren't generated here
                     GeneratedExactSignatureInvoker<?> invoker = (GeneratedExactSignatureInvoker<?>) ((Template.AbstractMethod<?>) templateElement).invoker;
@@ -318,6 +562,51 @@ public class TemplateHandleBuilder<H extends Handle> {
 
                     // Close the method with a valid return statement
                     mv.visitInsn(MPLType.getOpcode(returnType, IRETURN));
+                } else if (converters != null) {
+                    // Load the result converter first, so it can be called with the value returned
+                    if (converters.result != null) {
+                        cw.visitPush(mv, Function.class, converters.result);
+                    }
+
+                    // Load the invoker of the raw method
+                    Template.AbstractMethod<?> rawMethod = ((Template.Method.Converted<?>) templateElement).raw;
+                    cw.visitPush(mv, Template.AbstractMethod.class, rawMethod);
+                    mv.visitFieldInsn(GETFIELD, MPLType.getInternalName(Template.AbstractMethod.class), "invoker", MPLType.getDescriptor(Invoker.class));
+
+                    // Load instance
+                    mv.visitVarInsn(ALOAD, 0);
+                    mv.visitFieldInsn(GETFIELD, cw.getInternalName(), "instance", instanceTypeDesc);
+
+                    // Load the parameters, converting them when needed, and invoke
+                    if (paramTypes.length <= 5) {
+                        StringBuilder invokeDescBldr = new StringBuilder();
+                        invokeDescBldr.append("(Ljava/lang/Object;");
+                        int varIdx = 1;
+                        for (int i = 0; i < paramTypes.length; i++) {
+                            varIdx = visitConvertedArgument(cw, mv, varIdx, paramTypes[i], converters, i);
+                            invokeDescBldr.append("Ljava/lang/Object;");
+                        }
+                        invokeDescBldr.append(")Ljava/lang/Object;");
+                        mv.visitMethodInsn(INVOKEINTERFACE, MPLType.getInternalName(Invoker.class), "invoke", invokeDescBldr.toString(), true);
+                    } else {
+                        ExtendedClassWriter.visitPushInt(mv, paramTypes.length);
+                        mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
+                        int varIdx = 1;
+                        for (int i = 0; i < paramTypes.length; i++) {
+                            mv.visitInsn(DUP);
+                            ExtendedClassWriter.visitPushInt(mv, i);
+                            varIdx = visitConvertedArgument(cw, mv, varIdx, paramTypes[i], converters, i);
+                            mv.visitInsn(AASTORE);
+                        }
+                        mv.visitMethodInsn(INVOKEINTERFACE, MPLType.getInternalName(Invoker.class), "invokeVA", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", true);
+                    }
+
+                    // Convert the value returned
+                    if (converters.result != null) {
+                        mv.visitMethodInsn(INVOKEINTERFACE, "java/util/function/Function", "apply", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+                    }
+
+                    visitReturnObject(mv, returnType);
                 } else {
                     // Call into the T.fieldname Template Method
                     mv.visitFieldInsn(GETSTATIC, currentHandleName, "T", templateClassDesc);
@@ -374,16 +663,7 @@ public class TemplateHandleBuilder<H extends Handle> {
                     }
 
                     // Close the method with a valid return statement
-                    // Cast the value returned from invoke() to a primitive if required
-                    if (returnType.equals(void.class)) {
-                        mv.visitInsn(POP);
-                        mv.visitInsn(RETURN);
-                    } else if (returnType.equals(Object.class)) {
-                        mv.visitInsn(ARETURN);
-                    } else {
-                        ExtendedClassWriter.visitUnboxObjectVariable(mv, returnType);
-                        mv.visitInsn(MPLType.getOpcode(returnType, IRETURN));
-                    }
+                    visitReturnObject(mv, returnType);
                 }
                 mv.visitMaxs(3, 2);
                 mv.visitEnd();
@@ -394,22 +674,44 @@ public class TemplateHandleBuilder<H extends Handle> {
             if (currentHandleType == Template.Handle.class) {
                 break;
             }
-            currentTemplateClass = getTemplateClass(currentHandleType);
+            currentTemplateClass = this.templateClassLookup.apply(currentHandleType);
         } while (true);
 
-        this.handleImplType = cw.generate();
+        return cw;
+    }
 
-        try {
-            Constructor<? extends H> constructor;
-            try {
-                constructor = this.handleImplType.getConstructor(topInstanceType);
-            } catch (Throwable t) {
-                throw new IllegalStateException("Failed to find generated handle constructor of handle for " + MPLType.getName(topInstanceType), t);
-            }
+    /**
+     * Loads a method parameter onto the stack as an Object, converting it with the
+     * argument converter of the converters list if one is used.
+     */
+    private static int visitConvertedArgument(ExtendedClassWriter<?> cw, MethodVisitor mv, int varIdx,
+            Class<?> paramType, ParamsConverterList<?> converters, int argIndex)
+    {
+        Function<Object, ?> argConverter = (converters.args == null) ? null : converters.args[argIndex];
+        if (argConverter == null || argConverter == Function.identity()) {
+            return MPLType.visitVarILoadAndBox(mv, varIdx, paramType);
+        }
 
-            this.handleConstructor.init(constructor);
-        } catch (Throwable t) {
-            throw MountiplexUtil.uncheckedRethrow(t);
+        cw.visitPush(mv, Function.class, argConverter);
+        varIdx = MPLType.visitVarILoadAndBox(mv, varIdx, paramType);
+        mv.visitMethodInsn(INVOKEINTERFACE, "java/util/function/Function", "apply", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+        return varIdx;
+    }
+
+    /**
+     * Returns the Object value on the stack from a generated method, casting or unboxing it to the
+     * return type of the method. The value is discarded for void methods.
+     */
+    private static void visitReturnObject(MethodVisitor mv, Class<?> returnType) {
+        // Cast the value returned from invoke() to a primitive if required
+        if (returnType.equals(void.class)) {
+            mv.visitInsn(POP);
+            mv.visitInsn(RETURN);
+        } else if (returnType.equals(Object.class)) {
+            mv.visitInsn(ARETURN);
+        } else {
+            ExtendedClassWriter.visitUnboxObjectVariable(mv, returnType);
+            mv.visitInsn(MPLType.getOpcode(returnType, IRETURN));
         }
     }
 
@@ -430,6 +732,19 @@ public class TemplateHandleBuilder<H extends Handle> {
                method.parameters.parameters[0].type.cast == null;
     }
 
+    /**
+     * Implemented by the Handles created using {@link TemplateHandleBuilder#createRebindable(Object)},
+     * to change the raw instance of an existing handle. Used by {@link Template.HandleCursor}.
+     */
+    public static interface RebindableHandle {
+        /**
+         * Changes the raw instance backing this Handle
+         *
+         * @param instance New raw instance, must be of the handle instance type
+         */
+        void TH_rebind(Object instance);
+    }
+
     /**
      * Fallback Handle class when no declarations/generated methods exist.
      * Merely provides access to the raw instance.
@@ -446,4 +761,26 @@ public class TemplateHandleBuilder<H extends Handle> {
             return this.instance;
         }
     }
+
+    /**
+     * Fallback Handle class created by {@link TemplateHandleBuilder#createRebindable(Object)}
+     * when no declarations/generated methods exist.
+     */
+    static final class RebindableFallbackHandle extends Template.Handle implements RebindableHandle {
+        private Object instance;
+
+        public RebindableFallbackHandle(Object instance) {
+            this.instance = instance;
+        }
+
+        @Override
+        public Object getRaw() {
+            return this.instance;
+        }
+
+        @Override
+        public void TH_rebind(Object instance) {
+            this.instance = instance;
+        }
+    }
 }
@@ -0,0 +1,392 @@
+package com.bergerkiller.mountiplex.reflection.declarations;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import com.bergerkiller.mountiplex.MountiplexUtil;
+import com.bergerkiller.mountiplex.reflection.declarations.Template.Handle;
+import com.bergerkiller.mountiplex.reflection.resolver.Resolver;
+
+/**
+ * Initializes many Template classes at once using a bounded pool of threads. This
+ * includes loading the classes, resolving the class declarations and generating the
+ * methods of all template elements, which is otherwise done on whatever thread first
+ * uses a template.<br>
+ * <br>
+ * Templates referring to other Handle types, for example in the type of a converted
+ * field or as a super class, are initialized after the templates they depend on.
+ * Templates that depend on each other are initialized together on the same thread.
+ * This avoids threads waiting on each other's class initialization.
+ */
+public final class TemplateInitializer {
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    private TemplateInitializer() {
+    }
+
+    /**
+     * Initializes the Template classes of a source declaration, after Handle classes have been
+     * generated for it using the {@link TemplateGenerator}.
+     *
+     * @param source Source declaration whose classes to initialize
+     * @param targetPackage Package root in which the Handle classes were generated
+     * @param classLoader Class loader to load the Handle classes with
+     * @param parallelism Maximum number of threads to use
+     * @return report with the time it took to initialize each template
+     */
+    public static Report initialize(SourceDeclaration source, String targetPackage, ClassLoader classLoader, int parallelism) {
+        return initialize(findHandleTypes(source, targetPackage, classLoader), parallelism);
+    }
+
+    /**
+     * Initializes Template classes. The types can be Handle types or the {@link Template.Class} types
+     * declared inside of them.
+     *
+     * @param types Handle or Template Class types to initialize
+     * @param parallelism Maximum number of threads to use
+     * @return report with the time it took to initialize each template
+     */
+    public static Report initialize(Collection<java.lang.Class<?>> types, int parallelism) {
+        long startTime = System.nanoTime();
+
+        // Deduplicate, and find the Handle types of Template Class types
+        Set<java.lang.Class<?>> handleTypes = new LinkedHashSet<java.lang.Class<?>>();
+        for (java.lang.Class<?> type : types) {
+            if (Template.Class.class.isAssignableFrom(type) &&
+                type.getDeclaringClass() != null &&
+                Handle.class.isAssignableFrom(type.getDeclaringClass()))
+            {
+                handleTypes.add(type.getDeclaringClass());
+            } else {
+                handleTypes.add(type);
+            }
+        }
+
+        // Find the templates that each template depends on, and group cyclic dependencies
+        Map<java.lang.Class<?>, Set<java.lang.Class<?>>> dependencies = new HashMap<java.lang.Class<?>, Set<java.lang.Class<?>>>();
+        for (java.lang.Class<?> handleType : handleTypes) {
+            dependencies.put(handleType, findDependencies(handleType, handleTypes));
+        }
+        List<List<java.lang.Class<?>>> groups = new DependencyGrouper(dependencies).group(handleTypes);
+
+        // Schedule each group to run after all the groups it depends on
+        List<Timing> timings = Collections.synchronizedList(new ArrayList<Timing>(handleTypes.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread thread = new Thread(r, "Mountiplex-TemplateInitializer-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<java.lang.Class<?>, CompletableFuture<Void>> futures = new HashMap<java.lang.Class<?>, CompletableFuture<Void>>();
+            List<CompletableFuture<Void>> allFutures = new ArrayList<CompletableFuture<Void>>(groups.size());
+            for (List<java.lang.Class<?>> group : groups) {
+                List<CompletableFuture<Void>> groupDependencies = new ArrayList<CompletableFuture<Void>>();
+                for (java.lang.Class<?> handleType : group) {
+                    for (java.lang.Class<?> dependency : dependencies.get(handleType)) {
+                        CompletableFuture<Void> dependencyFuture = futures.get(dependency);
+                        if (dependencyFuture != null) {
+                            groupDependencies.add(dependencyFuture);
+                        }
+                    }
+                }
+
+                CompletableFuture<Void> future = CompletableFuture.allOf(groupDependencies.toArray(new CompletableFuture<?>[groupDependencies.size()]))
+                        .thenRunAsync(() -> {
+                            for (java.lang.Class<?> handleType : group) {
+                                timings.add(initializeTemplate(handleType));
+                            }
+                        }, executor);
+                for (java.lang.Class<?> handleType : group) {
+                    futures.put(handleType, future);
+                }
+                allFutures.add(future);
+            }
+            CompletableFuture.allOf(allFutures.toArray(new CompletableFuture<?>[allFutures.size()])).join();
+        } finally {
+            executor.shutdown();
+        }
+
+        return new Report(timings, System.nanoTime() - startTime);
+    }
+
+    private static Timing initializeTemplate(java.lang.Class<?> handleType) {
+        long startTime = System.nanoTime();
+        Throwable error = null;
+        try {
+            java.lang.Class.forName(handleType.getName(), true, handleType.getClassLoader());
+
+            // Find all Template Class instances stored in static fields, and initialize them fully
+            boolean foundTemplate = false;
+            for (Field field : handleType.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) && Template.Class.class.isAssignableFrom(field.getType())) {
+                    field.setAccessible(true);
+                    Template.Class<?> template = (Template.Class<?>) field.get(null);
+                    if (template == null) {
+                        throw new IllegalStateException("Template " + field.getName() + " could not be created");
+                    }
+                    template.forceInitialization();
+                    foundTemplate = true;
+                }
+            }
+            if (!foundTemplate) {
+                MountiplexUtil.LOGGER.warning("Type " + handleType.getName() + " does not declare a Template Class");
+            }
+        } catch (ExceptionInInitializerError ex) {
+            error = ex.getCause();
+        } catch (Throwable t) {
+            error = t;
+        }
+        if (error != null) {
+            MountiplexUtil.LOGGER.log(Level.SEVERE, "Failed to initialize template " + handleType.getName(), error);
+        }
+        return new Timing(handleType, System.nanoTime() - startTime, error);
+    }
+
+    /**
+     * Loads the Handle types generated for all the classes of a source declaration, without
+     * initializing them. Handle types that can not be found are logged and skipped.
+     *
+     * @param source Source declaration whose Handle types to find
+     * @param targetPackage Package root in which the Handle classes were generated
+     * @param classLoader Class loader to load the Handle classes with
+     * @return list of Handle types
+     */
+    static List<java.lang.Class<?>> findHandleTypes(SourceDeclaration source, String targetPackage, ClassLoader classLoader) {
+        List<java.lang.Class<?>> handleTypes = new ArrayList<java.lang.Class<?>>();
+        for (ClassDeclaration classDec : source.classes) {
+            String path = targetPackage + "." + classDec.getResolver().getPackage();
+            collectHandleTypes(handleTypes, classDec, path + "." + handleName(classDec), classLoader);
+        }
+        return handleTypes;
+    }
+
+    private static void collectHandleTypes(List<java.lang.Class<?>> handleTypes, ClassDeclaration classDec, String handleClassName, ClassLoader classLoader) {
+        java.lang.Class<?> handleType = Resolver.loadClass(handleClassName, false, classLoader);
+        if (handleType == null) {
+            MountiplexUtil.LOGGER.warning("Handle class " + handleClassName + " not found");
+        } else {
+            handleTypes.add(handleType);
+        }
+        for (ClassDeclaration subclass : classDec.subclasses) {
+            collectHandleTypes(handleTypes, subclass, handleClassName + "$" + handleName(subclass), classLoader);
+        }
+    }
+
+    // Same name as generated by the TemplateGenerator
+    private static String handleName(ClassDeclaration classDec) {
+        String name = classDec.type.typeName;
+        return name.substring(name.lastIndexOf('.') + 1) + "Handle";
+    }
+
+    /**
+     * Finds the Handle types a Handle type refers to in the members of its Template Class, its
+     * own methods and its super class. Only Handle types that are part of the initialized
+     * types are returned.
+     */
+    private static Set<java.lang.Class<?>> findDependencies(java.lang.Class<?> handleType, Set<java.lang.Class<?>> handleTypes) {
+        Set<java.lang.Class<?>> result = new LinkedHashSet<java.lang.Class<?>>();
+        try {
+            collectHandleTypes(result, handleType.getGenericSuperclass());
+            for (java.lang.Class<?> declared : handleType.getDeclaredClasses()) {
+                if (Template.Class.class.isAssignableFrom(declared)) {
+                    for (Field field : declared.getFields()) {
+                        collectHandleTypes(result, field.getGenericType());
+                    }
+                }
+            }
+            for (Method method : handleType.getDeclaredMethods()) {
+                collectHandleTypes(result, method.getGenericReturnType());
+                for (Type paramType : method.getGenericParameterTypes()) {
+                    collectHandleTypes(result, paramType);
+                }
+            }
+        } catch (Throwable t) {
+            // Types could not be loaded, the template will fail to initialize anyway
+        }
+        result.remove(handleType);
+        result.retainAll(handleTypes);
+        return result;
+    }
+
+    private static void collectHandleTypes(Set<java.lang.Class<?>> result, Type type) {
+        if (type instanceof java.lang.Class) {
+            java.lang.Class<?> c = (java.lang.Class<?>) type;
+            while (c.isArray()) {
+                c = c.getComponentType();
+            }
+            if (Handle.class.isAssignableFrom(c)) {
+                result.add(c);
+            }
+        } else if (type instanceof ParameterizedType) {
+            collectHandleTypes(result, ((ParameterizedType) type).getRawType());
+            for (Type arg : ((ParameterizedType) type).getActualTypeArguments()) {
+                collectHandleTypes(result, arg);
+            }
+        } else if (type instanceof GenericArrayType) {
+            collectHandleTypes(result, ((GenericArrayType) type).getGenericComponentType());
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                collectHandleTypes(result, bound);
+            }
+        }
+    }
+
+    /**
+     * Groups types that (indirectly) depend on each other using Tarjan's algorithm.
+     * Groups are returned in an order where the groups a group depends on come before it.
+     */
+    private static final class DependencyGrouper {
+        private final Map<java.lang.Class<?>, Set<java.lang.Class<?>>> dependencies;
+        private final Map<java.lang.Class<?>, int[]> state = new HashMap<java.lang.Class<?>, int[]>(); // index, lowlink
+        private final List<java.lang.Class<?>> stack = new ArrayList<java.lang.Class<?>>();
+        private final Set<java.lang.Class<?>> onStack = new HashSet<java.lang.Class<?>>();
+        private final List<List<java.lang.Class<?>>> groups = new ArrayList<List<java.lang.Class<?>>>();
+        private int index = 0;
+
+        public DependencyGrouper(Map<java.lang.Class<?>, Set<java.lang.Class<?>>> dependencies) {
+            this.dependencies = dependencies;
+        }
+
+        public List<List<java.lang.Class<?>>> group(Collection<java.lang.Class<?>> types) {
+            for (java.lang.Class<?> type : types) {
+                if (!state.containsKey(type)) {
+                    visit(type);
+                }
+            }
+            return groups;
+        }
+
+        private void visit(java.lang.Class<?> type) {
+            int[] typeState = new int[] { index, index };
+            index++;
+            state.put(type, typeState);
+            stack.add(type);
+            onStack.add(type);
+
+            for (java.lang.Class<?> dependency : dependencies.get(type)) {
+                int[] dependencyState = state.get(dependency);
+                if (dependencyState == null) {
+                    visit(dependency);
+                    typeState[1] = Math.min(typeState[1], state.get(dependency)[1]);
+                } else if (onStack.contains(dependency)) {
+                    typeState[1] = Math.min(typeState[1], dependencyState[0]);
+                }
+            }
+
+            if (typeState[0] == typeState[1]) {
+                List<java.lang.Class<?>> group = new ArrayList<java.lang.Class<?>>();
+                java.lang.Class<?> member;
+                do {
+                    member = stack.remove(stack.size() - 1);
+                    onStack.remove(member);
+                    group.add(member);
+                } while (member != type);
+                Collections.reverse(group);
+                groups.add(group);
+            }
+        }
+    }
+
+    /**
+     * The time it took to initialize a single template
+     */
+    public static final class Timing {
+        /** The Handle type of the template */
+        public final java.lang.Class<?> handleType;
+        /** Time in nanoseconds it took to initialize the template */
+        public final long duration;
+        /** Error that occurred while initializing the template, null if successful */
+        public final Throwable error;
+
+        private Timing(java.lang.Class<?> handleType, long duration, Throwable error) {
+            this.handleType = handleType;
+            this.duration = duration;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return handleType.getName() + " " + String.format("%.2f", duration / 1000000.0) + " ms" +
+                    ((error == null) ? "" : (" FAILED: " + error));
+        }
+    }
+
+    /**
+     * Result of initializing templates
+     */
+    public static final class Report {
+        private final List<Timing> timings;
+        private final long duration;
+
+        private Report(List<Timing> timings, long duration) {
+            List<Timing> sorted = new ArrayList<Timing>(timings);
+            sorted.sort((a, b) -> Long.compare(b.duration, a.duration));
+            this.timings = Collections.unmodifiableList(sorted);
+            this.duration = duration;
+        }
+
+        /**
+         * Gets the time it took to initialize each template, slowest first
+         *
+         * @return timings
+         */
+        public List<Timing> getTimings() {
+            return this.timings;
+        }
+
+        /**
+         * Gets the total time in nanoseconds it took to initialize all templates
+         *
+         * @return duration in nanoseconds
+         */
+        public long getDuration() {
+            return this.duration;
+        }
+
+        /**
+         * Gets whether all templates were initialized without errors
+         *
+         * @return True if successful
+         */
+        public boolean isSuccessful() {
+            for (Timing timing : this.timings) {
+                if (timing.error != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Logs the total time and the time of the slowest templates
+         *
+         * @param limit Maximum number of templates to log
+         */
+        public void log(int limit) {
+            MountiplexUtil.LOGGER.info("Initialized " + this.timings.size() + " templates in " +
+                    String.format("%.2f", this.duration / 1000000.0) + " ms");
+            for (int i = 0; i < limit && i < this.timings.size(); i++) {
+                MountiplexUtil.LOGGER.info("  " + this.timings.get(i));
+            }
+        }
+    }
+}
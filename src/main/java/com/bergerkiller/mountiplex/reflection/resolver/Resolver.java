@@ -1,12 +1,17 @@
 package com.bergerkiller.mountiplex.reflection.resolver;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.GenericSignatureFormatError;
 import java.lang.reflect.MalformedParameterizedTypeException;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 
 import com.bergerkiller.mountiplex.MountiplexUtil;
@@ -34,7 +39,8 @@ public class Resolver {
     private MethodNameResolver methodNameResolverChain = NoOpResolver.INSTANCE;
     private MethodAliasResolver methodAliasResolverChain = NoOpResolver.INSTANCE;
     private boolean enableClassLoaderRemapping = false;
-    private final HashMap<String, ClassMeta> classCache = new HashMap<String, ClassMeta>();
+    private final Map<ClassLoader, Map<String, LoadClassTask>> classCache = new WeakHashMap<ClassLoader, Map<String, LoadClassTask>>();
+    private final Map<String, LoadedClass> classByPathCache = new ConcurrentHashMap<String, LoadedClass>();
     private final Map<Class<?>, ClassMeta> classTypeCache = new ConcurrentHashMap<Class<?>, ClassMeta>();
     private final PackageNameCache packageNameCache = new PackageNameCache();
 
@@ -166,12 +172,10 @@ public class Resolver {
      * @throws ClassNotFoundException If class by this name could not be found
      */
     public static Class<?> getClassByExactName(String name) throws ClassNotFoundException {
-        HashMap<String, ClassMeta> classCache = resolver.classCache;
-        synchronized (classCache) {
-            ClassMeta meta = classCache.get(name);
-            if (meta != null && meta.type != null && MPLType.getName(meta.type).equals(name)) {
-                return meta.type;
-            }
+        LoadedClass loaded = resolver.classByPathCache.get(name);
+        Class<?> type = (loaded == null) ? null : loaded.get();
+        if (type != null && MPLType.getName(type).equals(name)) {
+            return type;
         }
 
         return MPLType.getClassByName(name);
@@ -198,34 +202,73 @@ public class Resolver {
      * @return The loaded class, or null if the class could not be loaded
      */
     public static Class<?> loadClass(String path, boolean initialize, ClassLoader loader) {
-        HashMap<String, ClassMeta> classCache = resolver.classCache;
-        synchronized (classCache) {
-            ClassMeta meta = classCache.get(path);
-            if (meta == null) {
-                Class<?> type = loadClassImpl(path, initialize, loader);
-                if (type == null) {
-                    classCache.put(path, ClassMeta.MISSING);
-                    return null;
-                } else {
-                    meta = getMeta(type);
-                    meta.loaded = initialize;
-                    classCache.put(path, meta);
-                }
+        // Every path is looked up at most once per class loader. Threads loading the same
+        // path wait for the result, while other paths can be loaded at the same time.
+        Resolver resolver = Resolver.resolver;
+        Map<String, LoadClassTask> loaderClassCache = resolver.getClassCache(loader);
+        LoadClassTask task = loaderClassCache.get(path);
+        if (task == null) {
+            LoadClassTask newTask = new LoadClassTask(() -> {
+                LoadedClass loaded = LoadedClass.of(loadClassImpl(path, loader));
+                resolver.classByPathCache.putIfAbsent(path, loaded);
+                return loaded;
+            });
+            task = loaderClassCache.putIfAbsent(path, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
             }
+        }
 
-            // Load the class if required
-            if (!meta.loaded && initialize) {
-                if (meta.type != null) {
-                    initializeClass(meta.type);
-                }
-                meta.loaded = true;
+        LoadedClass loaded;
+        if (task.isLoadingOnCurrentThread()) {
+            // A class path resolver loads the same path while it is being loaded
+            // Waiting for the result would never complete, so load it again without caching
+            loaded = LoadedClass.of(loadClassImpl(path, loader));
+        } else {
+            try {
+                loaded = task.get();
+            } catch (ExecutionException ex) {
+                throw MountiplexUtil.uncheckedRethrow(ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        // Initialize the class if required
+        // This is done outside of loading, so that static initializers that load
+        // other classes can not deadlock with threads loading this class
+        Class<?> type = loaded.get();
+        if (initialize && !loaded.initialized) {
+            if (!initializeClassImpl(type)) {
+                // Failed to initialize, treat the class as missing from now on
+                LoadClassTask missing = new LoadClassTask(() -> LoadedClass.MISSING);
+                missing.run();
+                loaderClassCache.put(path, missing);
+                resolver.classByPathCache.remove(path, loaded);
+                return null;
             }
+            loaded.initialized = true;
+        }
+
+        return type;
+    }
 
-            return meta.type;
+    /**
+     * Gets the classes loaded by path using a class loader. The class loader is weakly
+     * referenced, so that the cache does not keep class loaders loaded that are no longer used.
+     *
+     * @param loader Class loader, null for the bootstrap class loader
+     * @return Map of class path to the task that loads that class
+     */
+    private Map<String, LoadClassTask> getClassCache(ClassLoader loader) {
+        synchronized (classCache) {
+            return classCache.computeIfAbsent(loader, l -> new ConcurrentHashMap<String, LoadClassTask>());
         }
     }
 
-    private static Class<?> loadClassImpl(String path, boolean initialize, ClassLoader loader) {
+    private static Class<?> loadClassImpl(String path, ClassLoader loader) {
         // There is a strange glitch where the class loader fails to find primitive types
         // This is a workaround so that types like 'double' and 'void' are properly resolved
         Class<?> prim = BoxedType.getUnboxedType(path);
@@ -235,7 +278,7 @@ public class Resolver {
 
         // Handle arrays here
         if (path.endsWith("[]")) {
-            Class<?> componentType = loadClass(path.substring(0, path.length() - 2), initialize);
+            Class<?> componentType = loadClass(path.substring(0, path.length() - 2), false, loader);
             if (componentType == null) {
                 return null;
             } else {
@@ -251,12 +294,9 @@ public class Resolver {
         /* ===================== */
         String alterPath = resolveClassPath(path);
         try {
-            Class<?> result = MPLType.getClassByName(alterPath, initialize, loader);
+            Class<?> result = MPLType.getClassByName(alterPath, false, loader);
             resolver.packageNameCache.addPackageOfClassName(path);
             return result;
-        } catch (ExceptionInInitializerError e) {
-            MountiplexUtil.LOGGER.log(Level.SEVERE, "Failed to initialize class '" + alterPath + "':", e.getCause());
-            return null;
         } catch (ClassNotFoundException e) {
             // This handles paths like these:
             //   net.minecraft.server.DataWatcher.Item
@@ -269,9 +309,9 @@ public class Resolver {
                     // Try to probe a nested class, but only if the parent class actually exists
                     // Avoids filling the cache with endless my.package$String which can't exist
                     String parentClass = path.substring(0, last_dot);
-                    if (loadClass(parentClass, false) != null) {
+                    if (loadClass(parentClass, false, loader) != null) {
                         String path_new = parentClass + "$" + path.substring(last_dot+1);
-                        return loadClass(path_new, initialize);
+                        return loadClass(path_new, false, loader);
                     }
                 }
             }
@@ -286,14 +326,29 @@ public class Resolver {
      * @param classType to initialize
      */
     public static void initializeClass(Class<?> classType) {
+        initializeClassImpl(classType);
+    }
+
+    private static boolean initializeClassImpl(Class<?> classType) {
+        if (classType == null || classType.isPrimitive()) {
+            return true;
+        }
+        if (classType.isArray()) {
+            return initializeClassImpl(classType.getComponentType());
+        }
+
         String className = MPLType.getName(classType);
         try {
             MPLType.getClassByName(className, true, classType.getClassLoader());
+            return true;
         } catch (ExceptionInInitializerError e) {
             MountiplexUtil.LOGGER.log(Level.SEVERE, "Failed to initialize class '" + className + "':", e.getCause());
+            return false;
         } catch (ClassNotFoundException e) {
+            return true;
         } catch (Throwable t) {
             MountiplexUtil.LOGGER.log(Level.SEVERE, "Unhandled error initializing class " + classType, t);
+            return false;
         }
     }
 
@@ -305,8 +360,12 @@ public class Resolver {
     public static void registerClassResolver(ClassPathResolver resolver) {
         Resolver.resolver.classPathResolverChain = ChainResolver.chain(
                 Resolver.resolver.classPathResolverChain, resolver);
-        Resolver.resolver.classCache.clear();
+        synchronized (Resolver.resolver.classCache) {
+            Resolver.resolver.classCache.clear();
+        }
+        Resolver.resolver.classByPathCache.clear();
         Resolver.resolver.packageNameCache.reset();
+        ClassResolver.clearResolveIndex();
     }
 
     public static void registerCompiledFieldResolver(CompiledFieldNameResolver resolver) {
@@ -538,10 +597,62 @@ public class Resolver {
         return MPLType.getDeclaredField(declaringClass, trueName);
     }
 
+    /**
+     * Loads a class by path, and remembers the thread that is loading it. This way
+     * a class path resolver that loads the same path again is detected.
+     */
+    private static final class LoadClassTask extends FutureTask<LoadedClass> {
+        private volatile Thread loadingThread = null;
+
+        public LoadClassTask(Callable<LoadedClass> callable) {
+            super(callable);
+        }
+
+        public boolean isLoadingOnCurrentThread() {
+            return this.loadingThread == Thread.currentThread();
+        }
+
+        @Override
+        public void run() {
+            this.loadingThread = Thread.currentThread();
+            try {
+                super.run();
+            } finally {
+                this.loadingThread = null;
+            }
+        }
+    }
+
+    /**
+     * A class loaded by path. The class is weakly referenced, so that the class caches
+     * do not keep the class loader it was loaded with loaded.
+     */
+    private static final class LoadedClass {
+        public static final LoadedClass MISSING = new LoadedClass(null);
+        private final WeakReference<Class<?>> type;
+        public volatile boolean initialized;
+
+        private LoadedClass(Class<?> type) {
+            this.type = (type == null) ? null : new WeakReference<Class<?>>(type);
+            this.initialized = (type == null);
+        }
+
+        public static LoadedClass of(Class<?> type) {
+            return (type == null) ? MISSING : new LoadedClass(type);
+        }
+
+        /**
+         * Gets the loaded class, or null if it is missing or was garbage collected
+         */
+        public Class<?> get() {
+            return (this.type == null) ? null : this.type.get();
+        }
+    }
+
     public static final class ClassMeta {
         public static final ClassMeta MISSING = new ClassMeta(null, true);
         public final Class<?> type;
-        protected boolean loaded;
+        protected volatile boolean loaded;
         public final TypeDeclaration typeDec;
         public final TypeDeclaration[] interfaces;
         public final TypeDeclaration superType;
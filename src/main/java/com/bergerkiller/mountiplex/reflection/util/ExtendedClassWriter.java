@@ -14,7 +14,6 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import com.bergerkiller.mountiplex.reflection.declarations.MethodDeclaration;
-import com.bergerkiller.mountiplex.reflection.resolver.Resolver;
 import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
 import com.bergerkiller.mountiplex.reflection.util.asm.javassist.MPLJavac;
 import com.bergerkiller.mountiplex.reflection.util.fast.InitInvoker;
@@ -279,6 +278,26 @@ public class ExtendedClassWriter<T> extends ClassWriter {
         }
     }
 
+    /**
+     * Completes the class and returns its bytecode, without defining the class. This is used
+     * to store generated classes and define them again later, which is only possible when the
+     * class does not refer to objects stored at runtime. Classes with static or singleton member
+     * fields initialized with a value, or that were changed using Javassist, are not supported.
+     *
+     * @return Bytecode of the generated class
+     * @throws IllegalStateException If the class refers to objects stored at runtime
+     */
+    public byte[] generateBytecode() {
+        if (ctClass != null || !javassistActions.isEmpty()) {
+            throw new IllegalStateException("Class " + name.name + " uses Javassist, bytecode can not be stored");
+        }
+        if (!pendingStaticFields.isEmpty() || !singletonMemberFields.isEmpty()) {
+            throw new IllegalStateException("Class " + name.name + " has fields initialized at runtime, bytecode can not be stored");
+        }
+        this.closeASM();
+        return this.toByteArray();
+    }
+
     /**
      * Generates the class and obtains a suitable Constructor for it
      *
@@ -906,30 +925,14 @@ public class ExtendedClassWriter<T> extends ClassWriter {
                 superClassName = MPLType.getName(superClass);
             }
 
-            // Bugfix: pick a different postfix if another class already exists with this name
-            // This can happen by accident as well, when a jar is incorrectly reloaded
+            // Bugfix: pick a different postfix if another class was already generated with this name
             // Namespace clashes are nasty!
+            // The name is reserved with the generator class loader instead of trying to load a class
+            // by this name, which would throw and catch an exception for every class we generate.
             {
                 String postfix_original = postfix;
-                for (int i = 1;; i++) {
-                    String tmpClassPath = superClassName + postfix;
-                    boolean classExists = false;
-
-                    try {
-                        loader.loadClass(tmpClassPath);
-                        classExists = true;
-                    } catch (ClassNotFoundException e) {}
-
-                    try {
-                        Resolver.getClassByExactName(tmpClassPath);
-                        classExists = true;
-                    } catch (ClassNotFoundException ex) {}
-
-                    if (classExists) {
-                        postfix = postfix_original + "_" + i;
-                    } else {
-                        break;
-                    }
+                for (int i = 1; !loader.reserveClassName(superClassName + postfix); i++) {
+                    postfix = postfix_original + "_" + i;
                 }
             }
 
@@ -6,6 +6,7 @@ import java.lang.reflect.Modifier;
 import com.bergerkiller.mountiplex.reflection.resolver.Resolver;
 import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
 import com.bergerkiller.mountiplex.reflection.util.fast.Copier;
+import com.bergerkiller.mountiplex.reflection.util.fast.GeneratedMemberBatch;
 import com.bergerkiller.mountiplex.reflection.util.fast.Reader;
 import com.bergerkiller.mountiplex.reflection.util.fast.ReflectionAccessor;
 import com.bergerkiller.mountiplex.reflection.util.fast.Writer;
@@ -21,6 +22,7 @@ public final class FastField<T> implements Reader<T>, Writer<T>, Copier, LazyIni
     private Writer<T> writer;
     private Copier copier;
     private java.lang.reflect.Field field;
+    private GeneratedMemberBatch batch;
     private String missingInfo = "!!UNKNOWN!!"; // stored info for when field is null
 
     public FastField() {
@@ -38,7 +40,21 @@ public final class FastField<T> implements Reader<T>, Writer<T>, Copier, LazyIni
      * @param field to initialize to
      */
     public final void init(java.lang.reflect.Field field) {
+        this.init(field, null);
+    }
+
+    /**
+     * Initializes the fast field using a Java Reflection Field. If the field is part of the
+     * batch of members specified, the field is accessed through the class generated for
+     * the batch, instead of generating an accessor for only this field.
+     * To deinitialize this fast field, use null.
+     * 
+     * @param field to initialize to
+     * @param batch Batch of members the field might be part of, null to not use a batch
+     */
+    public final void init(java.lang.reflect.Field field, GeneratedMemberBatch batch) {
         this.field = field;
+        this.batch = (batch != null && field != null && batch.contains(field)) ? batch : null;
         FastFieldInitProxy initProxy = new FastFieldInitProxy();
         this.reader = initProxy;
         this.writer = initProxy;
@@ -143,6 +159,32 @@ public final class FastField<T> implements Reader<T>, Writer<T>, Copier, LazyIni
         }
     }
 
+    /**
+     * Gets the accessor this Fast Field reads the field value with. Initializes it if this
+     * was not done yet. Calling the returned reader directly skips the forwarding done by
+     * this Fast Field.
+     *
+     * @return field reader
+     * @throws UnsupportedOperationException if the field is not available
+     */
+    public final Reader<T> getReader() {
+        reader.checkCanRead();
+        return reader;
+    }
+
+    /**
+     * Gets the accessor this Fast Field writes the field value with. Initializes it if this
+     * was not done yet. Calling the returned writer directly skips the forwarding done by
+     * this Fast Field.
+     *
+     * @return field writer
+     * @throws UnsupportedOperationException if the field is not available
+     */
+    public final Writer<T> getWriter() {
+        writer.checkCanWrite();
+        return writer;
+    }
+
     @Override
     public void forceInitialization() {
         reader.checkCanRead();
@@ -202,6 +244,8 @@ public final class FastField<T> implements Reader<T>, Writer<T>, Copier, LazyIni
                 return (ReflectionAccessor<T>) reader;
             } else if (copier instanceof ReflectionAccessor) {
                 return (ReflectionAccessor<T>) copier;
+            } else if (batch != null) {
+                return batch.getAccessor(field);
             } else {
                 return ReflectionAccessor.create(field);
             }
@@ -3,9 +3,12 @@ package com.bergerkiller.mountiplex.reflection.util;
 import java.lang.reflect.Constructor;
 import java.net.URL;
 import java.security.ProtectionDomain;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import com.bergerkiller.mountiplex.MountiplexUtil;
@@ -131,10 +134,48 @@ public abstract class GeneratorClassLoader extends ClassLoader {
         }
     }
 
+    private final Set<String> reservedClassNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     protected GeneratorClassLoader(ClassLoader base) {
         super(base);
     }
 
+    /**
+     * Reserves a name for a class that will be generated by this class loader. A name can only
+     * be reserved once, across all generator class loaders, so that classes generated by different
+     * class loaders can still be found by name. Classes defined using
+     * {@link #createClassFromBytecode(String, byte[], ProtectionDomain)} reserve their name
+     * automatically. This method is thread-safe.
+     *
+     * @param name Name of the class to generate
+     * @return True if the name was reserved, False if the name was already reserved before
+     */
+    public boolean reserveClassName(String name) {
+        if (!reservedClassNames.add(name)) {
+            return false;
+        }
+
+        // Check no other generator class loader reserved the same name
+        for (GeneratorClassLoader otherLoader : loaders.values()) {
+            if (otherLoader != this && otherLoader.reservedClassNames.contains(name)) {
+                reservedClassNames.remove(name);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets whether a class name was reserved by this class loader using {@link #reserveClassName(String)},
+     * or a class by this name was defined by this class loader
+     *
+     * @param name Name of the class
+     * @return True if reserved
+     */
+    public boolean isClassNameReserved(String name) {
+        return reservedClassNames.contains(name);
+    }
+
     private Class<?> superFindClass(String name) throws MPLType.LoaderClosedException {
         Class<?> loaded = this.findLoadedClass(name);
         return (loaded != null) ? loaded : tryFindClass(this.getParent(), name);
@@ -265,6 +306,7 @@ public abstract class GeneratorClassLoader extends ClassLoader {
      * @return defined class
      */
     public Class<?> createClassFromBytecode(String name, byte[] b, ProtectionDomain protectionDomain, boolean allowRemapping) {
+        reservedClassNames.add(name);
         if (allowRemapping && Resolver.isClassLoaderRemappingEnabled()) {
             return super.defineClass(name, b, 0, b.length, protectionDomain);
         } else {
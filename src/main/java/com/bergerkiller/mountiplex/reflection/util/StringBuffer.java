@@ -189,6 +189,61 @@ public final class StringBuffer implements CharSequence {
         return true;
     }
 
+    /**
+     * Checks whether this buffer starts with a token, ignoring case.
+     * The token must be in lower case.
+     *
+     * @param token Lower-case token
+     * @return True if this buffer starts with the token
+     */
+    public boolean startsWithIgnoreCase(String token) {
+        int len = token.length();
+        if (len > this.buffer_length) {
+            return false;
+        }
+        int bidx = this.buffer_start;
+        for (int i = 0; i < len; i++) {
+            char c = this.buffer[bidx++];
+            if (c != token.charAt(i) && Character.toLowerCase(c) != token.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes leading and trailing whitespace, like {@link String#trim()}.
+     * The returned buffer references the same buffer as this one.
+     *
+     * @return trimmed buffer
+     */
+    public StringBuffer trim() {
+        int start = this.buffer_start;
+        int end = start + this.buffer_length;
+        while (start < end && this.buffer[start] <= ' ') {
+            start++;
+        }
+        while (end > start && this.buffer[end - 1] <= ' ') {
+            end--;
+        }
+        if (start == this.buffer_start && end == (this.buffer_start + this.buffer_length)) {
+            return this;
+        } else {
+            return new StringBuffer(this.buffer, start, end - start);
+        }
+    }
+
+    /**
+     * Appends the contents of this buffer to a StringBuilder without creating
+     * an intermediate String.
+     *
+     * @param builder StringBuilder to append to
+     * @return builder
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
+        return builder.append(this.buffer, this.buffer_start, this.buffer_length);
+    }
+
     public boolean endsWith(String token) {
         int len = token.length();
         if (len > this.buffer_length) {
@@ -196,7 +196,14 @@ public abstract class ClassFieldCopier<T> {
 
         public static ReflectionCopier of(Field field) {
             Class<?> type = field.getType();
-            if (type.isPrimitive()) {
+            if (UnsafeAccessor.canCreate(field)) {
+                // Copies the field by its field offset, without reflection or boxing
+                final Copier copier = UnsafeAccessor.create(field);
+                return new ReflectionCopier(field) {
+                    @Override
+                    protected void copyBase(Field f, Object from, Object to) throws Throwable { copier.copy(from, to); }
+                };
+            } else if (type.isPrimitive()) {
                 return primitiveCopierLookup.get(type).apply(field);
             } else {
                 return new ReflectionCopier(field) {
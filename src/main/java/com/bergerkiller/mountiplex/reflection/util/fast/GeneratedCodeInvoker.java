@@ -2,9 +2,19 @@ package com.bergerkiller.mountiplex.reflection.util.fast;
 
 import static org.objectweb.asm.Opcodes.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 
 import com.bergerkiller.mountiplex.MountiplexUtil;
@@ -57,6 +67,68 @@ public abstract class GeneratedCodeInvoker<T> implements GeneratedExactSignature
                 .defer(writer -> generate(writer, declaration));
     }
 
+    /**
+     * Creates a batch that compiles the method bodies of all the declarations specified into a single
+     * generated class, instead of generating a class for every method body. This is meant for the
+     * method bodies of one ClassDeclaration. Declarations that can not share a class with the others,
+     * because they use a different resolver or because their methods or requirements clash by name,
+     * are not included in the batch.
+     *
+     * @param declarations Method declarations with a body to include in the batch
+     * @return batch, or null if fewer than two method bodies could be included
+     */
+    public static Batch createBatch(Collection<MethodDeclaration> declarations) {
+        List<MethodDeclaration> included = new ArrayList<MethodDeclaration>(declarations.size());
+        Set<String> methodNames = new HashSet<String>();
+        Set<String> methodSignatures = new HashSet<String>();
+        Map<String, String> requirements = new HashMap<String, String>();
+        ClassResolver resolver = null;
+        for (MethodDeclaration declaration : declarations) {
+            if (declaration.body == null || !declaration.isResolved()) {
+                continue;
+            }
+            if (resolver == null) {
+                resolver = declaration.getResolver();
+            } else if (resolver != declaration.getResolver()) {
+                continue;
+            }
+
+            // Exact methods are named after the declaration, and can be overloaded
+            String methodName = declaration.name.firstReal();
+            String methodSignature = methodName + declaration.getASMInvokeDescriptor();
+            if (methodSignatures.contains(methodSignature) || requirements.containsKey(methodName)) {
+                continue;
+            }
+
+            // Requirements with the same name must generate the same member
+            boolean compatible = true;
+            for (Requirement req : declaration.bodyRequirements) {
+                String existing = requirements.get(req.name);
+                if (existing != null ? !existing.equals(getRequirementKey(req)) : methodNames.contains(req.name)) {
+                    compatible = false;
+                    break;
+                }
+            }
+            if (!compatible) {
+                continue;
+            }
+
+            for (Requirement req : declaration.bodyRequirements) {
+                requirements.put(req.name, getRequirementKey(req));
+            }
+            methodNames.add(methodName);
+            methodSignatures.add(methodSignature);
+            included.add(declaration);
+        }
+        return (included.size() >= 2) ? new Batch(included) : null;
+    }
+
+    private static String getRequirementKey(Requirement req) {
+        return req.declaration.getClass().getName() + " " + req.declaration.toString() +
+                (req.hasProperty("generateMethod") ? " generateMethod" : "") +
+                (req.hasProperty("generateFastField") ? " generateFastField" : "");
+    }
+
     private static <T> GeneratedCodeInvoker<T> generate(ExtendedClassWriter<GeneratedCodeInvoker<T>> writer, MethodDeclaration declaration) {
         if (!declaration.isResolved()) {
             throw new IllegalArgumentException("Declaration not resolved: " + declaration.toString());
@@ -68,9 +140,6 @@ public abstract class GeneratedCodeInvoker<T> implements GeneratedExactSignature
         try (ResolvedClassPool pool = ResolvedClassPool.create()) {
             int argCount = declaration.parameters.parameters.length;
 
-            // Ensure #remap rules in the method declaration / before are honored
-            pool.setRemappings(declaration.getResolver().getRemappings());
-
             // ASM: Add an invokeVA method which calls the soon-to-be-generated method with the cast
             asmAddInvokeMethod(writer, declaration, true);
 
@@ -85,87 +154,73 @@ public abstract class GeneratedCodeInvoker<T> implements GeneratedExactSignature
                 req.declaration.addAsRequirement(writer, req, req.name);
             }
 
-            // Use the resolver to add needed imports
-            {
-                ClassResolver classResolver = declaration.getResolver();
-                classResolver.getAllImports().forEachOrdered(importName -> {
-                    if (importName.endsWith(".*")) {
-                        String packagePath = importName.substring(0, importName.length()-2);
-                        if (!packagePath.contains("*")) {
-                            pool.importPackage(packagePath);
-                        }
-                    } else {
-                        pool.importPackage(importName);
-                    }
-                });
-
-                if (classResolver.hasPackage()) {
-                    // Import using the predefined #package
-                    pool.importPackage(classResolver.getPackage());
-                } else if (classResolver.getDeclaredClass() != null) {
-                    // Decode the package path from class name ourselves
-                    // This might fail :(
-                    String class_path = declaration.getResolver().getDeclaredClassName();
-                    String package_path = MountiplexUtil.getPackagePathFromClassPath(class_path);
-                    if (!package_path.isEmpty()) {
-                        pool.importPackage(package_path);
-                    }
-                }
+            // Add the exact method that the method declaration exposes
+            // This implements the method declared in the interfaceClass
+            CtClass invoker = getCtClass(writer, pool, declaration.getResolver());
+            invoker.addMethod(makeMethodAndLog(buildMethodBody(declaration, declaration.body), invoker));
+
+            try {
+                return (GeneratedCodeInvoker<T>) writer.generateInstance();
+            } catch (java.lang.VerifyError ex) {
+                MountiplexUtil.LOGGER.severe("Failed to verify generated method: " + declaration.body);
+                throw ex;
             }
+        } catch (Throwable t) {
+            throw MountiplexUtil.uncheckedRethrow(t);
+        }
+    }
 
-            CtClass invoker = writer.getCtClass(pool);
-            StringBuilder methodBody = new StringBuilder();
+    private static BatchInvoker generateBatch(ExtendedClassWriter<BatchInvoker> writer, Batch batch) {
+        final List<MethodDeclaration> declarations = batch.declarations;
+        final Throwable[] errors = batch.errors;
 
-            // Add the exact method that the method declaration exposes
-            // This implements the method declared in the interfaceClass
-            {
-                methodBody.setLength(0);
-
-                // Add the method signature information
-                methodBody.append("public ")
-                          .append(ReflectionUtil.getAccessibleTypeName(declaration.returnType.type))
-                          .append(" ").append(declaration.name.firstReal()).append("(");
-                if (!declaration.modifiers.isStatic()) {
-                    methodBody.append(ReflectionUtil.getAccessibleTypeName(declaration.getDeclaringClass()))
-                              .append(" instance");
-                    if (argCount > 0) {
-                        methodBody.append(',');
+        try (ResolvedClassPool pool = ResolvedClassPool.create()) {
+            // Requirements of the same name resolve to the same declaration, they are only added once
+            Set<String> addedRequirements = new HashSet<String>();
+            for (int i = 0; i < declarations.size(); i++) {
+                MethodDeclaration declaration = declarations.get(i);
+                try {
+                    declaration.checkTemplateErrors();
+                    for (Requirement req : declaration.bodyRequirements) {
+                        if (addedRequirements.add(req.name)) {
+                            req.declaration.addAsRequirement(writer, req, req.name);
+                        }
                     }
+                } catch (Throwable t) {
+                    errors[i] = t;
                 }
-                for (int i = 0; i < argCount; i++) {
-                    ParameterDeclaration param = declaration.parameters.parameters[i];
-                    methodBody.append(ReflectionUtil.getAccessibleTypeName(param.type.type))
-                              .append(' ')
-                              .append(param.name.firstReal());
-                    if (i < (argCount-1)) {
-                        methodBody.append(',');
+            }
+
+            // ASM: Add the invokeBatchedVA method which dispatches to the method body at an index
+            asmAddInvokeBatchedMethod(writer, declarations, errors);
+
+            // Add the exact method of all method bodies. If one fails to compile, an exact method
+            // is added that calls the method body compiled on its own instead. Code generated
+            // calling the exact method of the batch-compiled class can then still call it.
+            CtClass invoker = getCtClass(writer, pool, declarations.get(0).getResolver());
+            for (int i = 0; i < declarations.size(); i++) {
+                MethodDeclaration declaration = declarations.get(i);
+                if (errors[i] == null) {
+                    try {
+                        invoker.addMethod(makeMethodAndLog(buildMethodBody(declaration, declaration.body), invoker));
+                        continue;
+                    } catch (Throwable t) {
+                        errors[i] = t;
                     }
                 }
-                methodBody.append(") {\n");
-
-                // Add the actual method body
-                methodBody.append(declaration.body);
-
-                // Guarantee a return statement at the end of the function
-                if (declaration.returnType.type == void.class) {
-                    methodBody.append("return;");
-                } else {
-                    methodBody.append("return ")
-                              .append(BoxedType.getDefaultValue(declaration.returnType.type))
-                              .append(';');
+                try {
+                    invoker.addMethod(MPLCtNewMethod.make(buildMethodBody(declaration, buildFallbackBody(declaration, i)), invoker));
+                } catch (Throwable t) {
+                    MountiplexUtil.LOGGER.log(Level.SEVERE, "Failed to generate fallback method for: " + declaration, t);
                 }
-
-                // Close the method body
-                methodBody.append('}');
-
-                // Add method to the invoker
-                invoker.addMethod(makeMethodAndLog(methodBody.toString(), invoker));
             }
 
             try {
-                return (GeneratedCodeInvoker<T>) writer.generateInstance();
+                BatchInvoker generated = writer.generateInstance();
+                generated.batch = batch;
+                return generated;
             } catch (java.lang.VerifyError ex) {
-                MountiplexUtil.LOGGER.severe("Failed to verify generated method: " + declaration.body);
+                MountiplexUtil.LOGGER.severe("Failed to verify generated methods of " + declarations.size() + " method bodies");
                 throw ex;
             }
         } catch (Throwable t) {
@@ -173,6 +228,90 @@ public abstract class GeneratedCodeInvoker<T> implements GeneratedExactSignature
         }
     }
 
+    private static CtClass getCtClass(ExtendedClassWriter<?> writer, ResolvedClassPool pool, ClassResolver classResolver) throws Throwable {
+        // Ensure #remap rules in the method declaration / before are honored
+        pool.setRemappings(classResolver.getRemappings());
+
+        // Use the resolver to add needed imports
+        classResolver.getAllImports().forEachOrdered(importName -> {
+            if (importName.endsWith(".*")) {
+                String packagePath = importName.substring(0, importName.length()-2);
+                if (!packagePath.contains("*")) {
+                    pool.importPackage(packagePath);
+                }
+            } else {
+                pool.importPackage(importName);
+            }
+        });
+
+        if (classResolver.hasPackage()) {
+            // Import using the predefined #package
+            pool.importPackage(classResolver.getPackage());
+        } else if (classResolver.getDeclaredClass() != null) {
+            // Decode the package path from class name ourselves
+            // This might fail :(
+            String class_path = classResolver.getDeclaredClassName();
+            String package_path = MountiplexUtil.getPackagePathFromClassPath(class_path);
+            if (!package_path.isEmpty()) {
+                pool.importPackage(package_path);
+            }
+        }
+
+        return writer.getCtClass(pool);
+    }
+
+    private static String buildFallbackBody(MethodDeclaration declaration, int index) {
+        if (declaration.returnType.type == void.class) {
+            return "invokeFallback(" + index + ", $args);\n";
+        } else {
+            return "Object result = invokeFallback(" + index + ", $args);\n" +
+                   "if (result != null) return ($r) result;\n";
+        }
+    }
+
+    private static String buildMethodBody(MethodDeclaration declaration, String body) {
+        int argCount = declaration.parameters.parameters.length;
+        StringBuilder methodBody = new StringBuilder();
+
+        // Add the method signature information
+        methodBody.append("public ")
+                  .append(ReflectionUtil.getAccessibleTypeName(declaration.returnType.type))
+                  .append(" ").append(declaration.name.firstReal()).append("(");
+        if (!declaration.modifiers.isStatic()) {
+            methodBody.append(ReflectionUtil.getAccessibleTypeName(declaration.getDeclaringClass()))
+                      .append(" instance");
+            if (argCount > 0) {
+                methodBody.append(',');
+            }
+        }
+        for (int i = 0; i < argCount; i++) {
+            ParameterDeclaration param = declaration.parameters.parameters[i];
+            methodBody.append(ReflectionUtil.getAccessibleTypeName(param.type.type))
+                      .append(' ')
+                      .append(param.name.firstReal());
+            if (i < (argCount-1)) {
+                methodBody.append(',');
+            }
+        }
+        methodBody.append(") {\n");
+
+        // Add the actual method body
+        methodBody.append(body);
+
+        // Guarantee a return statement at the end of the function
+        if (declaration.returnType.type == void.class) {
+            methodBody.append("return;");
+        } else {
+            methodBody.append("return ")
+                      .append(BoxedType.getDefaultValue(declaration.returnType.type))
+                      .append(';');
+        }
+
+        // Close the method body
+        methodBody.append('}');
+        return methodBody.toString();
+    }
+
     private static CtMethod makeMethodAndLog(String methodBody, CtClass invoker) {
         try {
             return MPLCtNewMethod.make(methodBody, invoker);
@@ -191,11 +330,43 @@ public abstract class GeneratedCodeInvoker<T> implements GeneratedExactSignature
         return type != null && type != Object.class && Resolver.isPublic(type);
     }
 
+    private static void asmAddInvokeBatchedMethod(ExtendedClassWriter<BatchInvoker> writer, List<MethodDeclaration> declarations, Throwable[] errors) {
+        MethodVisitor mv = writer.visitMethod(ACC_PROTECTED + ACC_FINAL, "invokeBatchedVA",
+                "(Ljava/lang/Object;[Ljava/lang/Object;I)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+
+        // Switch on the index (3) to the method body to call
+        Label l_default = new Label();
+        Label[] l_cases = new Label[declarations.size()];
+        for (int i = 0; i < l_cases.length; i++) {
+            l_cases[i] = (errors[i] == null) ? new Label() : l_default;
+        }
+        mv.visitVarInsn(ILOAD, 3);
+        mv.visitTableSwitchInsn(0, l_cases.length - 1, l_default, l_cases);
+        for (int i = 0; i < l_cases.length; i++) {
+            if (errors[i] == null) {
+                MethodDeclaration declaration = declarations.get(i);
+                mv.visitLabel(l_cases[i]);
+                mv.visitFrame(F_SAME, 0, null, 0, null);
+                GeneratedInvoker.visitInvokeVAArgCountCheck(mv, declaration.parameters.parameters.length);
+                asmVisitInvoke(mv, writer, declaration, true, 4);
+            }
+        }
+
+        // Not a valid method body index
+        mv.visitLabel(l_default);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        mv.visitTypeInsn(NEW, "java/lang/IllegalArgumentException");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn("Method body is not available");
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/IllegalArgumentException", "<init>", "(Ljava/lang/String;)V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
     private static <T> void asmAddInvokeMethod(ExtendedClassWriter<GeneratedCodeInvoker<T>> writer, MethodDeclaration declaration, boolean invokeVA) {
         final int argCount = declaration.parameters.parameters.length;
-        final int stackStart = invokeVA ? 3 : (2 + argCount);
-        final Class<?> instanceType = declaration.modifiers.isStatic() ? null : declaration.getDeclaringClass();
-        final Class<?> returnType = declaration.returnType.type;
 
         MethodVisitor mv;
         if (invokeVA) {
@@ -215,8 +386,20 @@ public abstract class GeneratedCodeInvoker<T> implements GeneratedExactSignature
             mv = writer.visitMethod(ACC_PUBLIC + ACC_FINAL, "invoke", desc.toString(), null, null);
         }
 
+        // Start storing at 3 (0=this, 1=instance, 2=args) for invokeVA, after the arguments for invoke
+        asmVisitInvoke(mv, writer, declaration, invokeVA, invokeVA ? 3 : (2 + argCount));
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void asmVisitInvoke(MethodVisitor mv, ExtendedClassWriter<?> writer, MethodDeclaration declaration, boolean invokeVA, int stackStart) {
+        final int argCount = declaration.parameters.parameters.length;
+        final Class<?> instanceType = declaration.modifiers.isStatic() ? null : declaration.getDeclaringClass();
+        final Class<?> returnType = declaration.returnType.type;
+
         // Cast all input parameters
-        // Start storing at 3 (0=this, 1=instance, 2=args)
+        // Start storing at stackStart, which is after the method parameters (0=this, 1=instance, 2=args)
         for (int i = 0, storeIndex = stackStart; i < argCount; i++) {
             ParameterDeclaration param = declaration.parameters.parameters[i];
             if (!mustCastType(param.type.type)) {
@@ -290,7 +473,172 @@ public abstract class GeneratedCodeInvoker<T> implements GeneratedExactSignature
         MPLType.visitBoxVariable(mv, returnType);
 
         mv.visitInsn(ARETURN);
-        mv.visitMaxs(0, 0);
-        mv.visitEnd();
+    }
+
+    /**
+     * A single generated class containing the method bodies of multiple method declarations.
+     * The class is generated the first time one of the invokers is requested. Until then, the
+     * name of the class can already be used to generate code calling the exact methods.
+     */
+    public static final class Batch {
+        private final List<MethodDeclaration> declarations;
+        private final Map<MethodDeclaration, Integer> indices;
+        private final Throwable[] errors;
+        private final GeneratedCodeInvoker<?>[] fallbacks;
+        private final ExtendedClassWriter.Deferred<BatchInvoker> invoker;
+
+        private Batch(List<MethodDeclaration> declarations) {
+            this.declarations = declarations;
+            this.indices = new IdentityHashMap<MethodDeclaration, Integer>(declarations.size());
+            for (int i = 0; i < declarations.size(); i++) {
+                this.indices.put(declarations.get(i), Integer.valueOf(i));
+            }
+            this.errors = new Throwable[declarations.size()];
+            this.fallbacks = new GeneratedCodeInvoker<?>[declarations.size()];
+            this.invoker = ExtendedClassWriter.<BatchInvoker>builder(BatchInvoker.class)
+                    .setFlags(ClassWriter.COMPUTE_MAXS)
+                    .setClassLoader(declarations.get(0).getResolver().getClassLoader())
+                    .setSingleton(true)
+                    .defer(writer -> generateBatch(writer, this));
+        }
+
+        /**
+         * Gets whether the method body of a declaration is compiled as part of this batch
+         *
+         * @param declaration Method declaration
+         * @return True if included in this batch
+         */
+        public boolean contains(MethodDeclaration declaration) {
+            return indices.containsKey(declaration);
+        }
+
+        /**
+         * Gets the number of method bodies compiled as part of this batch
+         *
+         * @return method body count
+         */
+        public int size() {
+            return declarations.size();
+        }
+
+        /**
+         * Gets the internal name of the generated class storing all the method bodies
+         *
+         * @return internal name
+         */
+        public String getInvokerClassInternalName() {
+            return invoker.getInternalName();
+        }
+
+        /**
+         * Gets the ASM Type Descriptor of the generated class storing all the method bodies
+         *
+         * @return type descriptor
+         */
+        public String getInvokerClassTypeDescriptor() {
+            return invoker.getTypeDescriptor();
+        }
+
+        /**
+         * Generates the class storing all method bodies if not already generated, and
+         * returns an invoker for the method body of one declaration. If the method body
+         * could not be compiled as part of the batch, it is compiled on its own instead.
+         *
+         * @param declaration Method declaration included in this batch
+         * @return invoker for the method body of the declaration
+         * @throws IllegalArgumentException If the declaration is not part of this batch
+         */
+        @SuppressWarnings("unchecked")
+        public <T> GeneratedCodeInvoker<T> getInvoker(MethodDeclaration declaration) {
+            Integer index = indices.get(declaration);
+            if (index == null) {
+                throw new IllegalArgumentException("Declaration is not part of this batch: " + declaration);
+            }
+
+            BatchInvoker generated = invoker.generate();
+            if (this.errors[index.intValue()] != null) {
+                return (GeneratedCodeInvoker<T>) getFallback(index.intValue());
+            }
+            return (GeneratedCodeInvoker<T>) new BatchedCodeInvoker<Object>(generated, index.intValue());
+        }
+
+        private synchronized GeneratedCodeInvoker<?> getFallback(int index) {
+            GeneratedCodeInvoker<?> fallback = this.fallbacks[index];
+            if (fallback == null) {
+                fallback = create(this.declarations.get(index));
+                this.fallbacks[index] = fallback;
+            }
+            return fallback;
+        }
+    }
+
+    /**
+     * Base class of the class generated for a {@link Batch}
+     */
+    public static abstract class BatchInvoker extends GeneratedCodeInvoker<Object> {
+        private Batch batch;
+
+        @Override
+        public Object invokeVA(Object instance, Object... args) {
+            throw new UnsupportedOperationException("Batch-compiled invoker must be called through the invoker of a method body");
+        }
+
+        /**
+         * Invokes one of the method bodies of this batch-compiled class
+         *
+         * @param instance Instance to invoke on
+         * @param args Arguments to invoke with
+         * @param index Index of the method body in the batch
+         * @return invoke result
+         */
+        protected abstract Object invokeBatchedVA(Object instance, Object[] args, int index);
+
+        /**
+         * Invokes the method body compiled on its own, for method bodies that could not be
+         * compiled as part of the batch. Is called by the exact method generated in their place.
+         *
+         * @param index Index of the method body in the batch
+         * @param args Arguments of the exact method, starting with the instance if not static
+         * @return invoke result
+         */
+        protected final Object invokeFallback(int index, Object[] args) {
+            MethodDeclaration declaration = batch.declarations.get(index);
+            GeneratedCodeInvoker<?> fallback = batch.getFallback(index);
+            if (declaration.modifiers.isStatic()) {
+                return fallback.invokeVA(null, args);
+            } else {
+                return fallback.invokeVA(args[0], Arrays.copyOfRange(args, 1, args.length));
+            }
+        }
+    }
+
+    /**
+     * Invoker for one method body of a batch-compiled class. Calls made by generated code
+     * go to the exact method of the batch-compiled class directly.
+     */
+    private static final class BatchedCodeInvoker<T> extends GeneratedCodeInvoker<T> {
+        private final BatchInvoker batch;
+        private final int index;
+
+        public BatchedCodeInvoker(BatchInvoker batch, int index) {
+            this.batch = batch;
+            this.index = index;
+        }
+
+        @Override
+        public String getInvokerClassInternalName() {
+            return batch.getInvokerClassInternalName();
+        }
+
+        @Override
+        public String getInvokerClassTypeDescriptor() {
+            return batch.getInvokerClassTypeDescriptor();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T invokeVA(Object instance, Object... args) {
+            return (T) batch.invokeBatchedVA(instance, args, index);
+        }
     }
 }
@@ -2,6 +2,7 @@ package com.bergerkiller.mountiplex.reflection.util.fast;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
@@ -16,6 +17,7 @@ import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
 
 import com.bergerkiller.mountiplex.reflection.ReflectionUtil;
+import com.bergerkiller.mountiplex.reflection.resolver.Resolver;
 import com.bergerkiller.mountiplex.reflection.util.ExtendedClassWriter;
 import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
 
@@ -148,6 +150,63 @@ public class GeneratedHook {
         return new LocalFieldInvoker<T>(initialValue);
     }
 
+    /**
+     * Hook callback that can be called without boxing the parameters and return value.
+     * If a method with the exact same signature as the hooked method is available, the generated
+     * hook calls it directly on an object obtained from the hooked instance. If not, the callback
+     * is called as a normal invoker.
+     */
+    public static interface DirectCallback extends Invoker<Object> {
+        /**
+         * Gets the method to call directly instead of invoking this callback for a hooked method.
+         * It must have the same parameter and return types as the hooked method.
+         *
+         * @param hookedMethod The method being hooked
+         * @return method to call, or null if this callback must be invoked instead
+         */
+        Method getDirectTarget(Method hookedMethod);
+
+        /**
+         * Gets the no-argument method called on the hooked instance to obtain the instance
+         * on which the direct target method is called.
+         *
+         * @return instance getter method, implemented by the generated hook class
+         */
+        Method getDirectTargetInstanceGetter();
+    }
+
+    /**
+     * Hook callback that calls another callback in between two static methods, which are called
+     * with the hooked instance before and after. This allows the other callback to be called directly,
+     * while the two methods keep track of the hooked object being called. The exit method is also
+     * called when the other callback throws an exception.
+     */
+    public static interface FramedCallback extends Invoker<Object> {
+        /**
+         * Gets the public static method called before the framed callback. It must accept
+         * the hooked instance as its only (Object) parameter, and return void.
+         *
+         * @return enter method
+         */
+        Method getEnterMethod();
+
+        /**
+         * Gets the public static method called after the framed callback. It must accept
+         * the hooked instance as its only (Object) parameter, and return void.
+         *
+         * @return exit method
+         */
+        Method getExitMethod();
+
+        /**
+         * Gets the callback to call in between the enter and exit methods. This callback
+         * can be a {@link DirectCallback}.
+         *
+         * @return framed callback
+         */
+        Invoker<?> getFramedCallback();
+    }
+
     private static class LocalFieldInvoker<T> implements Invoker<T> {
         private final Supplier<T> initialValue;
 
@@ -254,11 +313,6 @@ public class GeneratedHook {
             return;
         }
 
-        String invokerFieldName = "invoker_" + postfix;
-        Class<?>[] parameterTypes = method.getParameterTypes();
-
-        cw.visitStaticField(invokerFieldName, Invoker.class, callback);
-
         mv = cw.visitMethod(Modifier.PUBLIC, /* public, so invoking it is faster */
                 MPLType.getName(method),
                 MPLType.getMethodDescriptor(method),
@@ -266,6 +320,58 @@ public class GeneratedHook {
                 MPLType.getInternalNames(method.getExceptionTypes()));
         mv.visitCode();
 
+        // Framed callback: call the framed callback in between the enter and exit methods
+        if (callback instanceof FramedCallback) {
+            FramedCallback framedCallback = (FramedCallback) callback;
+            Method enter = framedCallback.getEnterMethod();
+            Method exit = framedCallback.getExitMethod();
+            Label l_start = new Label();
+            Label l_end = new Label();
+            Label l_handler = new Label();
+            mv.visitTryCatchBlock(l_start, l_end, l_handler, null);
+            mv.visitVarInsn(ALOAD, 0);
+            ExtendedClassWriter.visitInvoke(mv, enter.getDeclaringClass(), enter);
+            mv.visitLabel(l_start);
+            visitCallback(cw, mv, method, framedCallback.getFramedCallback(), "framed_" + postfix);
+            mv.visitLabel(l_end);
+            mv.visitVarInsn(ALOAD, 0);
+            ExtendedClassWriter.visitInvoke(mv, exit.getDeclaringClass(), exit);
+            mv.visitInsn(MPLType.getOpcode(method.getReturnType(), IRETURN));
+
+            // finally { exit(this); }
+            mv.visitLabel(l_handler);
+            mv.visitFrame(F_SAME1, 0, null, 1, new Object[] { "java/lang/Throwable" });
+            mv.visitVarInsn(ALOAD, 0);
+            ExtendedClassWriter.visitInvoke(mv, exit.getDeclaringClass(), exit);
+            mv.visitInsn(ATHROW);
+        } else {
+            visitCallback(cw, mv, method, callback, "invoker_" + postfix);
+            mv.visitInsn(MPLType.getOpcode(method.getReturnType(), IRETURN));
+        }
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Writes the instructions that call a callback with the arguments of the hooked method.
+     * The result is left on the stack as the return type of the hooked method.
+     *
+     * @param cw Class writer of the hook class
+     * @param mv Method visitor of the hooked method implementation
+     * @param method Hooked method
+     * @param callback Callback to call
+     * @param invokerFieldName Name of the static field to store the callback in, if needed
+     */
+    private static void visitCallback(ExtendedClassWriter<?> cw, MethodVisitor mv, Method method, Invoker<?> callback, String invokerFieldName) {
+        // Call the exact-signature method without boxing, if possible
+        if (visitDirectCall(cw, mv, method, callback)) {
+            return;
+        }
+
+        Class<?>[] parameterTypes = method.getParameterTypes();
+
+        cw.visitStaticField(invokerFieldName, Invoker.class, callback);
+
         // Retrieve the invoker instance we want to call invoke() / invokeVA() on
         mv.visitFieldInsn(GETSTATIC, cw.getInternalName(), invokerFieldName, MPLType.getDescriptor(Invoker.class));
 
@@ -305,16 +411,74 @@ public class GeneratedHook {
                     "invokeVA", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", true);
         }
 
-        // Return result of the invoker, may need to unbox it
+        // Result of the invoker, may need to unbox it
         if (method.getReturnType() == void.class) {
             mv.visitInsn(POP);
-            mv.visitInsn(RETURN);
         } else {
             ExtendedClassWriter.visitUnboxObjectVariable(mv, method.getReturnType());
-            mv.visitInsn(MPLType.getOpcode(method.getReturnType(), IRETURN));
         }
+    }
 
-        mv.visitMaxs(0, 0);
-        mv.visitEnd();
+    /**
+     * Writes the instructions that call the method of a callback directly, leaving the result on the stack.
+     * This is possible for a {@link DirectCallback} with a direct target method, and for a
+     * {@link GeneratedInvoker} that calls a method. The method must have the same parameter
+     * and return types as the hooked method. Arguments are then passed on without boxing them,
+     * for any number of parameters.
+     *
+     * @param cw Class writer of the hook class
+     * @param mv Method visitor of the hooked method implementation
+     * @param method Hooked method
+     * @param callback Callback to call
+     * @return True if the direct call was written, False if the callback must be invoked instead
+     */
+    private static boolean visitDirectCall(ExtendedClassWriter<?> cw, MethodVisitor mv, Method method, Invoker<?> callback) {
+        Method target;
+        Method getter;
+        if (callback instanceof DirectCallback) {
+            // Calls the target method on the object returned by the instance getter
+            target = ((DirectCallback) callback).getDirectTarget(method);
+            if (target == null || Modifier.isStatic(target.getModifiers())) {
+                return false;
+            }
+            getter = ((DirectCallback) callback).getDirectTargetInstanceGetter();
+        } else if (callback instanceof GeneratedInvoker) {
+            // Calls the method on the hooked instance, or the static method, like the invoker does
+            target = ((GeneratedInvoker<?>) callback).getMethod();
+            if (target == null) {
+                return false;
+            }
+            getter = null;
+        } else {
+            return false;
+        }
+        if (!Resolver.isPublic(target) ||
+                target.getReturnType() != method.getReturnType() ||
+                !Arrays.equals(target.getParameterTypes(), method.getParameterTypes()))
+        {
+            return false;
+        }
+
+        // Generated class must be able to link to the class declaring the target method
+        Class<?> targetType = target.getDeclaringClass();
+        try {
+            if (Class.forName(MPLType.getName(targetType), false, cw.getClassLoader()) != targetType) {
+                return false;
+            }
+        } catch (Throwable t) {
+            return false;
+        }
+
+        // [getter()].target(args)
+        if (!Modifier.isStatic(target.getModifiers())) {
+            mv.visitVarInsn(ALOAD, 0);
+            if (getter != null) {
+                ExtendedClassWriter.visitInvoke(mv, getter.getDeclaringClass(), getter);
+            }
+            mv.visitTypeInsn(CHECKCAST, MPLType.getInternalName(targetType));
+        }
+        MPLType.visitVarILoad(mv, 1, method.getParameterTypes());
+        ExtendedClassWriter.visitInvoke(mv, targetType, target);
+        return true;
     }
 }
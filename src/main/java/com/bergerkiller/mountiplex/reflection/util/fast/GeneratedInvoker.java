@@ -20,19 +20,29 @@ import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
  * without using any reflection to do so.
  */
 public abstract class GeneratedInvoker<T> implements Invoker<T> {
+    private java.lang.reflect.Method method = null;
+
+    /**
+     * Gets the method this invoker calls. Returns null if this invoker
+     * calls a constructor.
+     *
+     * @return invoked method, or null
+     */
+    public java.lang.reflect.Method getMethod() {
+        return this.method;
+    }
 
     /**
      * Checks whether a method or constructor is compatible with the GeneratedInvoker.
-     * Only public methods/constructors with 5 arguments or less can be called.
+     * Only public methods/constructors can be called. Methods with more than 5 arguments
+     * can only be invoked using {@link #invokeVA(Object, Object...)}, which unpacks the
+     * arguments array directly.
      * 
      * @param executable The method or constructor to check
      * @return True if compatible and create() will succeed.
      */
     public static boolean canCreate(java.lang.reflect.Executable executable) {
-        Class<?>[] paramTypes = executable.getParameterTypes();
-        if (paramTypes.length > 5) {
-            return false;
-        } else if (executable instanceof java.lang.reflect.Method) {
+        if (executable instanceof java.lang.reflect.Method) {
             return Resolver.isPublic((java.lang.reflect.Method) executable);
         } else if (executable instanceof java.lang.reflect.Constructor) {
             return Resolver.isPublic((java.lang.reflect.Constructor<?>) executable);
@@ -42,8 +52,8 @@ public abstract class GeneratedInvoker<T> implements Invoker<T> {
     }
 
     /**
-     * Generates a new executable invoker. Internal use only. Method may only have 5 arguments or less,
-     * and must be public. Check using {@link #canCreate(Executable)} first.
+     * Generates a new executable invoker. Internal use only. Method must be public.
+     * Check using {@link #canCreate(Executable)} first.
      * 
      * @param executable The method or constructor to invoke
      * @return generated invoker
@@ -59,9 +69,6 @@ public abstract class GeneratedInvoker<T> implements Invoker<T> {
         MethodVisitor mv;
         String instanceName = MPLType.getInternalName(instanceType);
         Class<?>[] paramTypes = executable.getParameterTypes();
-        if (paramTypes.length > 5) {
-            throw new IllegalArgumentException("Method has too many parameters to be optimizable");
-        }
 
         Class<?> returnType;
         boolean isStatic;
@@ -86,9 +93,6 @@ public abstract class GeneratedInvoker<T> implements Invoker<T> {
             mv.visitEnd();
         }
 
-        // create the invoke argument list description String up front (instance, varargs)returntype
-        String argsStr = buildInvokeDescriptor(paramTypes.length);
-
         // invokeVA proxy method delegating to the correct method for invocation after checking args length
         {
             mv = cw.visitMethod(ACC_PUBLIC + ACC_VARARGS + ACC_FINAL, "invokeVA", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", null, null);
@@ -141,8 +145,9 @@ public abstract class GeneratedInvoker<T> implements Invoker<T> {
         }
 
         // Invoke method that casts the parameters and calls the method
-        {
-            mv = cw.visitMethod(ACC_PUBLIC, "invoke", argsStr, null, null);
+        // Invoker only declares these for up to 5 arguments, wider methods only use invokeVA
+        if (paramTypes.length <= 5) {
+            mv = cw.visitMethod(ACC_PUBLIC, "invoke", buildInvokeDescriptor(paramTypes.length), null, null);
             mv.visitCode();
             if (executable instanceof java.lang.reflect.Constructor) {
                 mv.visitTypeInsn(NEW, MPLType.getInternalName(instanceType));
@@ -168,7 +173,11 @@ public abstract class GeneratedInvoker<T> implements Invoker<T> {
             mv.visitEnd();
         }
 
-        return cw.generateInstance();
+        GeneratedInvoker<T> invoker = cw.generateInstance();
+        if (executable instanceof java.lang.reflect.Method) {
+            invoker.method = (java.lang.reflect.Method) executable;
+        }
+        return invoker;
     }
 
     /**
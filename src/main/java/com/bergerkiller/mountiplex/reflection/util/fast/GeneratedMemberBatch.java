@@ -0,0 +1,728 @@
+package com.bergerkiller.mountiplex.reflection.util.fast;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import java.lang.reflect.Executable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import com.bergerkiller.mountiplex.MountiplexUtil;
+import com.bergerkiller.mountiplex.reflection.util.BoxedType;
+import com.bergerkiller.mountiplex.reflection.util.ExtendedClassWriter;
+import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
+
+/**
+ * Generates the invokers of public methods and constructors, and the accessors of public fields,
+ * of one class into a small number of generated classes. This is instead of generating a class for
+ * every {@link GeneratedInvoker} and {@link GeneratedAccessor}, which reduces the number of classes
+ * that are defined. Every member has an index in the generated class, which the invoker and
+ * accessor views of the members pass along when calling it.<br>
+ * <br>
+ * At most {@link #CHUNK_SIZE} members are generated into one class, and every member is accessed
+ * in a method of its own that the switch on the index calls. This keeps the switch methods small
+ * enough for the JIT to compile and inline them, no matter how many members a class has.
+ * A class is generated as soon as the first invoker or accessor of one of its members is requested.
+ * Calls through the views are slightly slower than through a class generated for only
+ * that member, as the generated class switches on the index of the member.
+ */
+public final class GeneratedMemberBatch {
+    /**
+     * Maximum number of members generated into one class
+     */
+    private static final int CHUNK_SIZE = 16;
+
+    private final ClassLoader classLoader;
+    private final List<Member> members;
+    private final Map<Member, Integer> indices;
+    private final boolean[] failed;
+    private final Chunk[] chunks;
+
+    private GeneratedMemberBatch(ClassLoader classLoader, Map<Member, Integer> indices) {
+        this.classLoader = classLoader;
+        this.members = new ArrayList<Member>(indices.keySet());
+        this.indices = indices;
+        this.failed = new boolean[indices.size()];
+        this.chunks = new Chunk[(indices.size() + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        for (int i = 0; i < this.chunks.length; i++) {
+            this.chunks[i] = new Chunk(i * CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Creates a batch for the members of a class. Only public methods and constructors,
+     * and public non-static fields, declared by the class or one of the types it extends,
+     * are included. Other members must be accessed like before.
+     *
+     * @param type Class whose members are accessed
+     * @param members Methods, constructors and fields to include in the batch
+     * @return batch, or null if fewer than two members could be included
+     */
+    public static GeneratedMemberBatch create(Class<?> type, Collection<? extends Member> members) {
+        Map<Member, Integer> included = new LinkedHashMap<Member, Integer>(members.size());
+        for (Member member : members) {
+            if (member == null || included.containsKey(member) || !member.getDeclaringClass().isAssignableFrom(type)) {
+                continue;
+            }
+            if (member instanceof Executable) {
+                if (GeneratedInvoker.canCreate((Executable) member)) {
+                    included.put(member, Integer.valueOf(included.size()));
+                }
+            } else if (member instanceof Field) {
+                int mod = member.getModifiers();
+                if (Modifier.isPublic(mod) && !Modifier.isStatic(mod) && Modifier.isPublic(member.getDeclaringClass().getModifiers())) {
+                    included.put(member, Integer.valueOf(included.size()));
+                }
+            }
+        }
+        return (included.size() >= 2) ? new GeneratedMemberBatch(type.getClassLoader(), included) : null;
+    }
+
+    /**
+     * Gets whether a method, constructor or field is part of this batch
+     *
+     * @param member Member
+     * @return True if included in this batch
+     */
+    public boolean contains(Member member) {
+        return indices.containsKey(member);
+    }
+
+    /**
+     * Gets the number of members that are part of this batch
+     *
+     * @return member count
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Generates the class of the member if not already generated, and returns an
+     * invoker for one of the methods or constructors. If the method or constructor
+     * could not be included in the generated class, an invoker for only that
+     * method or constructor is generated instead.
+     *
+     * @param executable Method or constructor included in this batch
+     * @return invoker
+     * @throws IllegalArgumentException If the method or constructor is not part of this batch
+     */
+    public <T> Invoker<T> getInvoker(Executable executable) {
+        Integer index = indices.get(executable);
+        if (index == null) {
+            throw new IllegalArgumentException("Method is not part of this batch: " + executable);
+        }
+        Members batch = getGenerated(index.intValue());
+        if (batch == null) {
+            return GeneratedInvoker.create(executable);
+        }
+        return new BatchedInvoker<T>(batch, index.intValue() % CHUNK_SIZE, executable.getParameterCount());
+    }
+
+    /**
+     * Generates the class of the member if not already generated, and returns an
+     * accessor for one of the fields. If the field could not be included in the
+     * generated class, the field is accessed using reflection instead.
+     *
+     * @param field Field included in this batch
+     * @return field accessor
+     * @throws IllegalArgumentException If the field is not part of this batch
+     */
+    public <T> ReflectionAccessor<T> getAccessor(Field field) {
+        Integer index = indices.get(field);
+        if (index == null) {
+            throw new IllegalArgumentException("Field is not part of this batch: " + field);
+        }
+        Members batch = getGenerated(index.intValue());
+        if (batch == null) {
+            return ReflectionAccessor.create(field);
+        }
+        return new BatchedAccessor<T>(batch, index.intValue() % CHUNK_SIZE, field);
+    }
+
+    // Generates the class of the member at the index if needed, returns null if the member is not part of it
+    private Members getGenerated(int index) {
+        Chunk chunk = chunks[index / CHUNK_SIZE];
+        if (!chunk.generateFailed) {
+            try {
+                Members batch = chunk.generated.generate();
+                if (!failed[index]) {
+                    return batch;
+                }
+            } catch (Throwable t) {
+                if (!chunk.generateFailed) {
+                    chunk.generateFailed = true;
+                    MountiplexUtil.LOGGER.log(Level.WARNING, "Failed to generate batch of " + chunk.count +
+                            " members, generating them one by one instead", t);
+                }
+            }
+        }
+        return null;
+    }
+
+    private Members generate(ExtendedClassWriter<Members> cw, Chunk chunk) {
+        // Members that can not be called from the generated class are left out, and fall back
+        // to a separately generated invoker or reflection. Leaving them out of the list keeps
+        // the indices of the other members the same.
+        List<Member> members = new ArrayList<Member>(this.members.subList(chunk.offset, chunk.offset + chunk.count));
+        for (int i = 0; i < members.size(); i++) {
+            if (!canGenerate(members.get(i))) {
+                members.set(i, null);
+                failed[chunk.offset + i] = true;
+            }
+        }
+
+        // Empty constructor
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, MPLType.getInternalName(Members.class), "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        // invoke(instance, arg0, ..., arg4, index) for methods with up to 5 parameters
+        visitSwitchMethod(cw, members, "invoke", "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;" +
+                "Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;I)Ljava/lang/Object;",
+                m -> m instanceof Executable && ((Executable) m).getParameterCount() <= 5,
+                (m, member) -> {
+                    Class<?>[] paramTypes = ((Executable) member).getParameterTypes();
+                    visitInvokeStart(m, (Executable) member);
+                    for (int i = 0; i < paramTypes.length; i++) {
+                        m.visitVarInsn(ALOAD, 2 + i);
+                        ExtendedClassWriter.visitUnboxObjectVariable(m, paramTypes[i]);
+                    }
+                    visitInvokeEnd(m, (Executable) member);
+                });
+
+        // invokeVA(instance, args, index) for all methods
+        visitSwitchMethod(cw, members, "invokeVA", "(Ljava/lang/Object;[Ljava/lang/Object;I)Ljava/lang/Object;",
+                m -> m instanceof Executable,
+                (m, member) -> {
+                    Class<?>[] paramTypes = ((Executable) member).getParameterTypes();
+                    GeneratedInvoker.visitInvokeVAArgCountCheck(m, paramTypes.length);
+                    visitInvokeStart(m, (Executable) member);
+                    for (int i = 0; i < paramTypes.length; i++) {
+                        m.visitVarInsn(ALOAD, 2);
+                        ExtendedClassWriter.visitPushInt(m, i);
+                        m.visitInsn(AALOAD);
+                        ExtendedClassWriter.visitUnboxObjectVariable(m, paramTypes[i]);
+                    }
+                    visitInvokeEnd(m, (Executable) member);
+                });
+
+        // get(instance, index) for all fields, boxing primitive values
+        visitSwitchMethod(cw, members, "get", "(Ljava/lang/Object;I)Ljava/lang/Object;",
+                m -> m instanceof Field,
+                (m, member) -> {
+                    visitGetField(m, (Field) member);
+                    MPLType.visitBoxVariable(m, ((Field) member).getType());
+                    m.visitInsn(ARETURN);
+                });
+
+        // set(instance, value, index) for all non-final fields
+        visitSwitchMethod(cw, members, "set", "(Ljava/lang/Object;Ljava/lang/Object;I)V",
+                m -> m instanceof Field && !Modifier.isFinal(m.getModifiers()),
+                (m, member) -> {
+                    Field field = (Field) member;
+                    m.visitVarInsn(ALOAD, 1);
+                    m.visitTypeInsn(CHECKCAST, MPLType.getInternalName(field.getDeclaringClass()));
+                    m.visitVarInsn(ALOAD, 2);
+                    ExtendedClassWriter.visitUnboxObjectVariable(m, field.getType());
+                    visitPutField(m, field);
+                });
+
+        // getLong/setLong(instance, index) for integer and boolean fields, to avoid boxing
+        visitSwitchMethod(cw, members, "getLong", "(Ljava/lang/Object;I)J",
+                m -> m instanceof Field && isLongField((Field) m),
+                (m, member) -> {
+                    visitGetField(m, (Field) member);
+                    if (((Field) member).getType() != long.class) {
+                        m.visitInsn(I2L);
+                    }
+                    m.visitInsn(LRETURN);
+                });
+
+        visitSwitchMethod(cw, members, "setLong", "(Ljava/lang/Object;JI)V",
+                m -> m instanceof Field && isLongField((Field) m) && !Modifier.isFinal(m.getModifiers()),
+                (m, member) -> {
+                    Field field = (Field) member;
+                    Class<?> type = field.getType();
+                    m.visitVarInsn(ALOAD, 1);
+                    m.visitTypeInsn(CHECKCAST, MPLType.getInternalName(field.getDeclaringClass()));
+                    m.visitVarInsn(LLOAD, 2);
+                    if (type != long.class) {
+                        m.visitInsn(L2I);
+                        if (type == byte.class) {
+                            m.visitInsn(I2B);
+                        } else if (type == short.class) {
+                            m.visitInsn(I2S);
+                        } else if (type == char.class) {
+                            m.visitInsn(I2C);
+                        }
+                    }
+                    visitPutField(m, field);
+                });
+
+        // getDouble/setDouble(instance, index) for float and double fields, to avoid boxing
+        visitSwitchMethod(cw, members, "getDouble", "(Ljava/lang/Object;I)D",
+                m -> m instanceof Field && isDoubleField((Field) m),
+                (m, member) -> {
+                    visitGetField(m, (Field) member);
+                    if (((Field) member).getType() == float.class) {
+                        m.visitInsn(F2D);
+                    }
+                    m.visitInsn(DRETURN);
+                });
+
+        visitSwitchMethod(cw, members, "setDouble", "(Ljava/lang/Object;DI)V",
+                m -> m instanceof Field && isDoubleField((Field) m) && !Modifier.isFinal(m.getModifiers()),
+                (m, member) -> {
+                    Field field = (Field) member;
+                    m.visitVarInsn(ALOAD, 1);
+                    m.visitTypeInsn(CHECKCAST, MPLType.getInternalName(field.getDeclaringClass()));
+                    m.visitVarInsn(DLOAD, 2);
+                    if (field.getType() == float.class) {
+                        m.visitInsn(D2F);
+                    }
+                    visitPutField(m, field);
+                });
+
+        return cw.generateInstance();
+    }
+
+    private boolean canGenerate(Member member) {
+        try {
+            if (member instanceof Executable) {
+                Executable executable = (Executable) member;
+                for (Class<?> paramType : executable.getParameterTypes()) {
+                    if (!isVisible(paramType)) {
+                        return false;
+                    }
+                }
+                if (executable instanceof java.lang.reflect.Method &&
+                        !isVisible(((java.lang.reflect.Method) executable).getReturnType()))
+                {
+                    return false;
+                }
+            } else if (!isVisible(((Field) member).getType())) {
+                return false;
+            }
+            return isVisible(member.getDeclaringClass());
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    // Whether the generated class can refer to a type, which requires it is found by the class loader
+    private boolean isVisible(Class<?> type) throws ClassNotFoundException {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        return type.isPrimitive() || Class.forName(type.getName(), false, classLoader) == type;
+    }
+
+    private static boolean isLongField(Field field) {
+        Class<?> type = field.getType();
+        return type == long.class || type == int.class || type == short.class ||
+               type == byte.class || type == char.class || type == boolean.class;
+    }
+
+    private static boolean isDoubleField(Field field) {
+        Class<?> type = field.getType();
+        return type == double.class || type == float.class;
+    }
+
+    /**
+     * Generates a method that switches on the index of the member to call, with a case for every
+     * member accepted by the filter. Every case calls a method of its own, which has the same
+     * parameters except for the index and is written by the body. If no member is accepted,
+     * the method is not generated.
+     */
+    private static void visitSwitchMethod(ExtendedClassWriter<Members> cw, List<Member> members,
+            String name, String descriptor, Predicate<Member> filter, BiConsumer<MethodVisitor, Member> body)
+    {
+        Type returnType = Type.getReturnType(descriptor);
+        Type[] paramTypes = Type.getArgumentTypes(descriptor);
+        paramTypes = Arrays.copyOf(paramTypes, paramTypes.length - 1);
+        String memberDescriptor = Type.getMethodDescriptor(returnType, paramTypes);
+
+        Label l_default = new Label();
+        Label[] l_cases = new Label[members.size()];
+        boolean hasCases = false;
+        for (int i = 0; i < l_cases.length; i++) {
+            Member member = members.get(i);
+            if (member != null && filter.test(member)) {
+                MethodVisitor mv = cw.visitMethod(ACC_PRIVATE + ACC_FINAL, name + "$" + i, memberDescriptor, null, null);
+                mv.visitCode();
+                body.accept(mv, member);
+                mv.visitMaxs(0, 0);
+                mv.visitEnd();
+                l_cases[i] = new Label();
+                hasCases = true;
+            } else {
+                l_cases[i] = l_default;
+            }
+        }
+        if (!hasCases) {
+            return;
+        }
+
+        int indexVar = 1;
+        for (Type paramType : paramTypes) {
+            indexVar += paramType.getSize();
+        }
+
+        MethodVisitor mv = cw.visitMethod(ACC_PROTECTED + ACC_FINAL, name, descriptor, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ILOAD, indexVar);
+        mv.visitTableSwitchInsn(0, l_cases.length - 1, l_default, l_cases);
+        for (int i = 0; i < l_cases.length; i++) {
+            if (l_cases[i] == l_default) {
+                continue;
+            }
+            mv.visitLabel(l_cases[i]);
+            mv.visitFrame(F_SAME, 0, null, 0, null);
+            mv.visitVarInsn(ALOAD, 0);
+            int var = 1;
+            for (Type paramType : paramTypes) {
+                mv.visitVarInsn(paramType.getOpcode(ILOAD), var);
+                var += paramType.getSize();
+            }
+            mv.visitMethodInsn(INVOKESPECIAL, cw.getInternalName(), name + "$" + i, memberDescriptor, false);
+            mv.visitInsn(returnType.getOpcode(IRETURN));
+        }
+
+        // Not a valid member index for this method
+        mv.visitLabel(l_default);
+        mv.visitFrame(F_SAME, 0, null, 0, null);
+        mv.visitTypeInsn(NEW, "java/lang/UnsupportedOperationException");
+        mv.visitInsn(DUP);
+        mv.visitLdcInsn("Member is not available");
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/UnsupportedOperationException", "<init>", "(Ljava/lang/String;)V", false);
+        mv.visitInsn(ATHROW);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void visitInvokeStart(MethodVisitor mv, Executable executable) {
+        Class<?> instanceType = executable.getDeclaringClass();
+        if (executable instanceof java.lang.reflect.Constructor) {
+            mv.visitTypeInsn(NEW, MPLType.getInternalName(instanceType));
+            mv.visitInsn(DUP);
+        } else if (!Modifier.isStatic(executable.getModifiers())) {
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitTypeInsn(CHECKCAST, MPLType.getInternalName(instanceType));
+        }
+    }
+
+    private static void visitInvokeEnd(MethodVisitor mv, Executable executable) {
+        Class<?> instanceType = executable.getDeclaringClass();
+        if (executable instanceof java.lang.reflect.Constructor) {
+            mv.visitMethodInsn(INVOKESPECIAL, MPLType.getInternalName(instanceType), "<init>",
+                    MPLType.getConstructorDescriptor((java.lang.reflect.Constructor<?>) executable), false);
+            mv.visitInsn(ARETURN);
+        } else {
+            java.lang.reflect.Method method = (java.lang.reflect.Method) executable;
+            ExtendedClassWriter.visitInvoke(mv, instanceType, method);
+            MPLType.visitBoxVariable(mv, method.getReturnType());
+            mv.visitInsn(ARETURN);
+        }
+    }
+
+    private static void visitGetField(MethodVisitor mv, Field field) {
+        String className = MPLType.getInternalName(field.getDeclaringClass());
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitTypeInsn(CHECKCAST, className);
+        mv.visitFieldInsn(GETFIELD, className, MPLType.getName(field), MPLType.getDescriptor(field.getType()));
+    }
+
+    private static void visitPutField(MethodVisitor mv, Field field) {
+        mv.visitFieldInsn(PUTFIELD, MPLType.getInternalName(field.getDeclaringClass()),
+                MPLType.getName(field), MPLType.getDescriptor(field.getType()));
+        mv.visitInsn(RETURN);
+    }
+
+    /**
+     * Members of a batch that are generated into the same class
+     */
+    private final class Chunk {
+        public final int offset;
+        public final int count;
+        public final ExtendedClassWriter.Deferred<Members> generated;
+        public volatile boolean generateFailed = false;
+
+        public Chunk(int offset) {
+            this.offset = offset;
+            this.count = Math.min(CHUNK_SIZE, members.size() - offset);
+            this.generated = ExtendedClassWriter.<Members>builder(Members.class)
+                    .setClassLoader(classLoader)
+                    .setFlags(ClassWriter.COMPUTE_MAXS)
+                    .setAccess(ACC_FINAL)
+                    .defer(cw -> generate(cw, this));
+        }
+    }
+
+    /**
+     * Base class of the generated class of a batch. The methods are overridden to call the member
+     * with the index specified, and throw an exception if the member is not available.
+     */
+    public static abstract class Members {
+
+        protected Object invoke(Object instance, Object arg0, Object arg1, Object arg2, Object arg3, Object arg4, int index) {
+            throw new UnsupportedOperationException("Member is not available");
+        }
+
+        protected Object invokeVA(Object instance, Object[] args, int index) {
+            throw new UnsupportedOperationException("Member is not available");
+        }
+
+        protected Object get(Object instance, int index) {
+            throw new UnsupportedOperationException("Member is not available");
+        }
+
+        protected void set(Object instance, Object value, int index) {
+            throw new UnsupportedOperationException("Member is not available");
+        }
+
+        protected long getLong(Object instance, int index) {
+            throw new UnsupportedOperationException("Member is not available");
+        }
+
+        protected void setLong(Object instance, long value, int index) {
+            throw new UnsupportedOperationException("Member is not available");
+        }
+
+        protected double getDouble(Object instance, int index) {
+            throw new UnsupportedOperationException("Member is not available");
+        }
+
+        protected void setDouble(Object instance, double value, int index) {
+            throw new UnsupportedOperationException("Member is not available");
+        }
+    }
+
+    /**
+     * Invoker of one method or constructor of a batch
+     */
+    private static final class BatchedInvoker<T> implements Invoker<T> {
+        private final Members batch;
+        private final int index;
+        private final int argCount;
+
+        public BatchedInvoker(Members batch, int index, int argCount) {
+            this.batch = batch;
+            this.index = index;
+            this.argCount = argCount;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T invoke(Object instance) {
+            return (argCount == 0) ? (T) batch.invoke(instance, null, null, null, null, null, index)
+                                   : invokeVA(instance);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T invoke(Object instance, Object arg0) {
+            return (argCount == 1) ? (T) batch.invoke(instance, arg0, null, null, null, null, index)
+                                   : invokeVA(instance, arg0);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T invoke(Object instance, Object arg0, Object arg1) {
+            return (argCount == 2) ? (T) batch.invoke(instance, arg0, arg1, null, null, null, index)
+                                   : invokeVA(instance, arg0, arg1);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T invoke(Object instance, Object arg0, Object arg1, Object arg2) {
+            return (argCount == 3) ? (T) batch.invoke(instance, arg0, arg1, arg2, null, null, index)
+                                   : invokeVA(instance, arg0, arg1, arg2);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T invoke(Object instance, Object arg0, Object arg1, Object arg2, Object arg3) {
+            return (argCount == 4) ? (T) batch.invoke(instance, arg0, arg1, arg2, arg3, null, index)
+                                   : invokeVA(instance, arg0, arg1, arg2, arg3);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T invoke(Object instance, Object arg0, Object arg1, Object arg2, Object arg3, Object arg4) {
+            return (argCount == 5) ? (T) batch.invoke(instance, arg0, arg1, arg2, arg3, arg4, index)
+                                   : invokeVA(instance, arg0, arg1, arg2, arg3, arg4);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T invokeVA(Object instance, Object... args) {
+            return (T) batch.invokeVA(instance, args, index);
+        }
+    }
+
+    /**
+     * Accessor of one field of a batch. Typed getters and setters matching the field type
+     * access the field without boxing. Other calls, and setting final fields, are handled
+     * by reflection.
+     */
+    private static final class BatchedAccessor<T> extends ReflectionAccessor<T> {
+        private final Members batch;
+        private final int index;
+        private final Class<?> type;
+        private final boolean writable;
+
+        public BatchedAccessor(Members batch, int index, Field field) {
+            super(field);
+            this.batch = batch;
+            this.index = index;
+            this.type = field.getType();
+            this.writable = !Modifier.isFinal(field.getModifiers());
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(Object o) {
+            return (T) batch.get(o, index);
+        }
+
+        @Override
+        public double getDouble(Object o) {
+            return (type == double.class) ? batch.getDouble(o, index) : super.getDouble(o);
+        }
+
+        @Override
+        public float getFloat(Object o) {
+            return (type == float.class) ? (float) batch.getDouble(o, index) : super.getFloat(o);
+        }
+
+        @Override
+        public byte getByte(Object o) {
+            return (type == byte.class) ? (byte) batch.getLong(o, index) : super.getByte(o);
+        }
+
+        @Override
+        public short getShort(Object o) {
+            return (type == short.class) ? (short) batch.getLong(o, index) : super.getShort(o);
+        }
+
+        @Override
+        public int getInteger(Object o) {
+            return (type == int.class) ? (int) batch.getLong(o, index) : super.getInteger(o);
+        }
+
+        @Override
+        public long getLong(Object o) {
+            return (type == long.class) ? batch.getLong(o, index) : super.getLong(o);
+        }
+
+        @Override
+        public char getCharacter(Object o) {
+            return (type == char.class) ? (char) batch.getLong(o, index) : super.getCharacter(o);
+        }
+
+        @Override
+        public boolean getBoolean(Object o) {
+            return (type == boolean.class) ? (batch.getLong(o, index) != 0) : super.getBoolean(o);
+        }
+
+        @Override
+        public void set(Object o, T v) {
+            if (writable && (v != null || !type.isPrimitive())) {
+                batch.set(o, v, index);
+            } else {
+                super.set(o, v);
+            }
+        }
+
+        @Override
+        public void setDouble(Object o, double v) {
+            if (writable && type == double.class) {
+                batch.setDouble(o, v, index);
+            } else {
+                super.setDouble(o, v);
+            }
+        }
+
+        @Override
+        public void setFloat(Object o, float v) {
+            if (writable && type == float.class) {
+                batch.setDouble(o, v, index);
+            } else {
+                super.setFloat(o, v);
+            }
+        }
+
+        @Override
+        public void setByte(Object o, byte v) {
+            if (writable && type == byte.class) {
+                batch.setLong(o, v, index);
+            } else {
+                super.setByte(o, v);
+            }
+        }
+
+        @Override
+        public void setShort(Object o, short v) {
+            if (writable && type == short.class) {
+                batch.setLong(o, v, index);
+            } else {
+                super.setShort(o, v);
+            }
+        }
+
+        @Override
+        public void setInteger(Object o, int v) {
+            if (writable && type == int.class) {
+                batch.setLong(o, v, index);
+            } else {
+                super.setInteger(o, v);
+            }
+        }
+
+        @Override
+        public void setLong(Object o, long v) {
+            if (writable && type == long.class) {
+                batch.setLong(o, v, index);
+            } else {
+                super.setLong(o, v);
+            }
+        }
+
+        @Override
+        public void setCharacter(Object o, char v) {
+            if (writable && type == char.class) {
+                batch.setLong(o, v, index);
+            } else {
+                super.setCharacter(o, v);
+            }
+        }
+
+        @Override
+        public void setBoolean(Object o, boolean v) {
+            if (writable && type == boolean.class) {
+                batch.setLong(o, v ? 1L : 0L, index);
+            } else {
+                super.setBoolean(o, v);
+            }
+        }
+    }
+}
@@ -165,6 +165,56 @@ public abstract class InitInvoker<T> implements Invoker<T>, LazyInitializedObjec
         return forMethod(fieldInstance, new ReflectionFieldAccessor<T>(fieldInstance.getClass(), fieldName), method);
     }
 
+    /**
+     * Creates an init invoker that invokes a method defined by a method declaration. If the method body
+     * of the declaration is compiled as part of a batch, the invoker calls the method body in the
+     * batch-compiled class. Otherwise this is the same as {@link #forMethod(Object, String, MethodDeclaration)}.
+     *
+     * @param fieldInstance Object on which to set the invoker field
+     * @param fieldName The name of the invoker field in fieldInstance
+     * @param method The method to create an invoker for
+     * @param batch Batch of method bodies, null to compile the method body on its own
+     * @return init invoker
+     * @see GeneratedCodeInvoker#createBatch(java.util.Collection)
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public static <T> InitInvoker<T> forMethod(Object fieldInstance, String fieldName, MethodDeclaration method, GeneratedCodeInvoker.Batch batch) {
+        if (batch != null && method != null && batch.contains(method)) {
+            FieldAccessor<Invoker<T>> accessor = new ReflectionFieldAccessor<T>(fieldInstance.getClass(), fieldName);
+            return (InitInvoker<T>) new InitBatchedCodeInvoker(fieldInstance, (FieldAccessor) accessor, batch, method);
+        } else {
+            return forMethod(fieldInstance, fieldName, method);
+        }
+    }
+
+    /**
+     * Creates an init invoker that invokes a method defined by a method declaration. If the method or
+     * constructor the declaration resolved to is part of a batch of members, the invoker calls it through
+     * the class generated for the batch. Otherwise this is the same as
+     * {@link #forMethod(Object, String, MethodDeclaration, GeneratedCodeInvoker.Batch)}.
+     *
+     * @param fieldInstance Object on which to set the invoker field
+     * @param fieldName The name of the invoker field in fieldInstance
+     * @param method The method to create an invoker for
+     * @param batch Batch of method bodies, null to compile the method body on its own
+     * @param memberBatch Batch of members, null to generate an invoker for the method on its own
+     * @return init invoker
+     * @see GeneratedMemberBatch#create(Class, java.util.Collection)
+     */
+    public static <T> InitInvoker<T> forMethod(Object fieldInstance, String fieldName, MethodDeclaration method,
+            GeneratedCodeInvoker.Batch batch, GeneratedMemberBatch memberBatch)
+    {
+        if (memberBatch != null && method != null && method.body == null) {
+            java.lang.reflect.Executable executable = (method.method != null) ? method.method : method.constructor;
+            if (executable != null && memberBatch.contains(executable)) {
+                return new InitBatchedMemberInvoker<T>(fieldInstance,
+                        new ReflectionFieldAccessor<T>(fieldInstance.getClass(), fieldName),
+                        memberBatch, executable);
+            }
+        }
+        return forMethod(fieldInstance, fieldName, method, batch);
+    }
+
     /**
      * Creates an init invoker that invokes a method defined by a method declaration. The static invoker field is updated
      * using reflection by setting a field declared in the class by the name specified. Meant to be used
@@ -311,6 +361,7 @@ public abstract class InitInvoker<T> implements Invoker<T>, LazyInitializedObjec
     /**
      * Helper class that initializes a runtime-generated invoker based on a Method or Constructor signature.
      * Generates a class that calls the method or constructor directly. If calling is not possible,
+     * because it is not public, a MethodHandle invoker is created on Java 9 and later. Otherwise
      * reflection is initialized and a reflection invoker is created instead.
      *
      * @param <T>
@@ -327,6 +378,8 @@ public abstract class InitInvoker<T> implements Invoker<T>, LazyInitializedObjec
         protected Invoker<T> create() {
             if (GeneratedInvoker.canCreate(executable)) {
                 return GeneratedInvoker.create(executable);
+            } else if (MethodHandleInvoker.canCreate(executable)) {
+                return MethodHandleInvoker.create(executable);
             } else {
                 return ReflectionInvoker.create(executable);
             }
@@ -373,6 +426,62 @@ public abstract class InitInvoker<T> implements Invoker<T>, LazyInitializedObjec
         }
     }
 
+    /**
+     * Helper class that initializes an invoker for a method body that is compiled as part of a
+     * batch of method bodies. The exact method is found in the batch-compiled class.
+     */
+    public static class InitBatchedCodeInvoker extends InitInvoker<Object> implements GeneratedExactSignatureInvoker<Object> {
+        private final GeneratedCodeInvoker.Batch batch;
+        private final MethodDeclaration methodDeclaration;
+
+        private InitBatchedCodeInvoker(Object instance, FieldAccessor<Invoker<Object>> accessor,
+                GeneratedCodeInvoker.Batch batch, MethodDeclaration methodDeclaration
+        ) {
+            super(instance, accessor);
+            this.batch = batch;
+            this.methodDeclaration = methodDeclaration;
+        }
+
+        @Override
+        public String getInvokerClassInternalName() {
+            return batch.getInvokerClassInternalName();
+        }
+
+        @Override
+        public String getInvokerClassTypeDescriptor() {
+            return batch.getInvokerClassTypeDescriptor();
+        }
+
+        @Override
+        protected Invoker<Object> create() {
+            return batch.getInvoker(methodDeclaration);
+        }
+    }
+
+    /**
+     * Helper class that initializes an invoker for a method or constructor that is called
+     * through the class generated for a batch of members.
+     *
+     * @param <T>
+     */
+    private static final class InitBatchedMemberInvoker<T> extends InitInvoker<T> {
+        private final GeneratedMemberBatch batch;
+        private final java.lang.reflect.Executable executable;
+
+        protected InitBatchedMemberInvoker(Object instance, FieldAccessor<Invoker<T>> accessor,
+                GeneratedMemberBatch batch, java.lang.reflect.Executable executable
+        ) {
+            super(instance, accessor);
+            this.batch = batch;
+            this.executable = executable;
+        }
+
+        @Override
+        protected Invoker<T> create() {
+            return batch.getInvoker(executable);
+        }
+    }
+
     /**
      * Similar to {@link ReflectionFieldAccessor} but loads the class by name at the time it is needed.
      * This way the field of a not-yet generated class can be used.
@@ -49,5 +49,15 @@ public interface Invoker<T> extends LazyInitializedObject {
         return invokeVA(instance, arg0, arg1, arg2, arg3, arg4);
     }
 
+    /**
+     * Invokes with a variable number of arguments. Methods with more than 5 parameters
+     * have no argument-specific invoke method, so this method is the only way to call them.
+     * Implementations should unpack the arguments array directly, rather than delegating
+     * to another method, so that the JIT can eliminate the array allocation once inlined.
+     *
+     * @param instance Instance to invoke on, null for static methods or constructors
+     * @param args Arguments to invoke with
+     * @return invoke result
+     */
     T invokeVA(Object instance, Object... args);
 }
@@ -0,0 +1,146 @@
+package com.bergerkiller.mountiplex.reflection.util.fast;
+
+import static org.objectweb.asm.Opcodes.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+
+import com.bergerkiller.mountiplex.reflection.util.ExtendedClassWriter;
+import com.bergerkiller.mountiplex.reflection.util.asm.MPLType;
+
+/**
+ * Invokes a non-public method or constructor using a MethodHandle obtained with
+ * <i>MethodHandles.privateLookupIn</i>. The handle is stored in a static final field of a
+ * class generated at runtime, which calls it using invokeExact. This makes the handle a
+ * constant to the JIT, so that the method call can be inlined like a normal call.<br>
+ * <br>
+ * Requires Java 9 or later. On Java 8, {@link #canCreate(java.lang.reflect.Executable)}
+ * returns false and reflection should be used instead.
+ */
+public abstract class MethodHandleInvoker<T> implements Invoker<T> {
+    private static final Method privateLookupInMethod = findPrivateLookupInMethod();
+
+    /**
+     * Checks whether a method or constructor can be invoked using a MethodHandle invoker.
+     * This is only possible on Java 9 and later.
+     *
+     * @param executable The method or constructor to check
+     * @return True if compatible and create() can be used
+     */
+    public static boolean canCreate(java.lang.reflect.Executable executable) {
+        return privateLookupInMethod != null && (
+                executable instanceof java.lang.reflect.Method ||
+                executable instanceof java.lang.reflect.Constructor);
+    }
+
+    /**
+     * Creates a new MethodHandle invoker for a method or constructor. If the member can not be
+     * accessed using a private lookup, for example because the module of the declaring class
+     * does not open the package, a {@link ReflectionInvoker} is returned instead.
+     * Check using {@link #canCreate(java.lang.reflect.Executable)} first.
+     *
+     * @param executable The method or constructor to invoke
+     * @return invoker
+     */
+    public static <T> Invoker<T> create(java.lang.reflect.Executable executable) {
+        MethodHandle handle;
+        try {
+            handle = createGenericHandle(executable);
+        } catch (Throwable t) {
+            return ReflectionInvoker.create(executable);
+        }
+
+        ExtendedClassWriter<MethodHandleInvoker<T>> cw = ExtendedClassWriter.builder(MethodHandleInvoker.class)
+                .setFlags(ClassWriter.COMPUTE_MAXS)
+                .setAccess(ACC_FINAL).build();
+
+        final String handleDesc = MPLType.getDescriptor(MethodHandle.class);
+        final String handleInternalName = MPLType.getInternalName(MethodHandle.class);
+        final int paramCount = executable.getParameterCount();
+        final String invokeDesc = GeneratedInvoker.buildInvokeDescriptor(paramCount);
+        MethodVisitor mv;
+
+        cw.visitStaticField("handle", MethodHandle.class, handle);
+
+        // Empty constructor
+        {
+            mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKESPECIAL, MPLType.getInternalName(MethodHandleInvoker.class), "<init>", "()V", false);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(1, 1);
+            mv.visitEnd();
+        }
+
+        // invokeVA unpacking the arguments array
+        {
+            mv = cw.visitMethod(ACC_PUBLIC + ACC_VARARGS + ACC_FINAL, "invokeVA", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+            mv.visitCode();
+            GeneratedInvoker.visitInvokeVAArgCountCheck(mv, paramCount);
+            mv.visitFieldInsn(GETSTATIC, cw.getInternalName(), "handle", handleDesc);
+            mv.visitVarInsn(ALOAD, 1);
+            for (int i = 0; i < paramCount; i++) {
+                mv.visitVarInsn(ALOAD, 2);
+                ExtendedClassWriter.visitPushInt(mv, i);
+                mv.visitInsn(AALOAD);
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, handleInternalName, "invokeExact", invokeDesc, false);
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        // Argument-specific invoke method, which Invoker only declares for up to 5 arguments
+        if (paramCount <= 5) {
+            mv = cw.visitMethod(ACC_PUBLIC, "invoke", invokeDesc, null, null);
+            mv.visitCode();
+            mv.visitFieldInsn(GETSTATIC, cw.getInternalName(), "handle", handleDesc);
+            for (int i = 0; i <= paramCount; i++) {
+                mv.visitVarInsn(ALOAD, 1 + i);
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, handleInternalName, "invokeExact", invokeDesc, false);
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        return cw.generateInstance();
+    }
+
+    /**
+     * Looks up the method or constructor and adapts it to the generic signature
+     * (Object instance, Object... args)Object used by the generated invoke methods.
+     * Static methods and constructors ignore the instance.
+     */
+    private static MethodHandle createGenericHandle(java.lang.reflect.Executable executable) throws Throwable {
+        MethodHandles.Lookup lookup = (MethodHandles.Lookup) privateLookupInMethod.invoke(null,
+                executable.getDeclaringClass(), MethodHandles.lookup());
+
+        MethodHandle handle;
+        if (executable instanceof java.lang.reflect.Method) {
+            handle = lookup.unreflect((java.lang.reflect.Method) executable).asFixedArity();
+            if (Modifier.isStatic(executable.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+        } else {
+            handle = lookup.unreflectConstructor((java.lang.reflect.Constructor<?>) executable).asFixedArity();
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return handle.asType(MethodType.genericMethodType(executable.getParameterCount() + 1));
+    }
+
+    private static Method findPrivateLookupInMethod() {
+        try {
+            return MethodHandles.class.getMethod("privateLookupIn", Class.class, MethodHandles.Lookup.class);
+        } catch (Throwable t) {
+            return null; // Java 8
+        }
+    }
+}
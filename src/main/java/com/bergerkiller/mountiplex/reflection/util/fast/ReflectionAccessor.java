@@ -118,9 +118,12 @@ public class ReflectionAccessor<T> implements Reader<T>, Writer<T>, Copier {
         // When the field is public and non-final, a setter will also be generated
         // For static fields, it is not possible to set the field value using reflection, and we
         // must generate an accessor class which uses Unsafe to do it anyway.
+        // Other member fields are accessed by their field offset using Unsafe, when possible.
         int modifiers = field.getModifiers();
         if (Resolver.isPublic(field) || (Modifier.isFinal(modifiers) && Modifier.isStatic(modifiers))) {
             return GeneratedAccessor.create(field);
+        } else if (UnsafeAccessor.canCreate(field)) {
+            return UnsafeAccessor.create(field);
         } else {
             return new ReflectionAccessor<T>(field);
         }
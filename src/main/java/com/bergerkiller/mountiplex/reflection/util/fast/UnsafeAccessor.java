@@ -0,0 +1,189 @@
+package com.bergerkiller.mountiplex.reflection.util.fast;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Accesses a non-static member field by its object field offset using sun.misc.Unsafe.
+ * Used for non-public fields, which would otherwise be accessed using reflection.
+ * Typed getters and setters matching the field type read and write the field
+ * directly without boxing or access checks. All other methods, and calls with an
+ * invalid instance or value, are handled by reflection, which also produces the errors.
+ *
+ * @param <T> field value type
+ */
+public abstract class UnsafeAccessor<T> extends ReflectionAccessor<T> {
+    protected static final sun.misc.Unsafe unsafe = findUnsafe();
+    protected final Class<?> declaringClass;
+    protected final long offset;
+
+    private UnsafeAccessor(Field field) {
+        super(field);
+        this.declaringClass = field.getDeclaringClass();
+        this.offset = unsafe.objectFieldOffset(field);
+    }
+
+    /**
+     * Checks whether a field can be accessed using an Unsafe field offset accessor.
+     * Only non-static, non-volatile fields are supported.
+     *
+     * @param field Field to check
+     * @return True if compatible and create() can be used
+     */
+    public static boolean canCreate(Field field) {
+        int mod = field.getModifiers();
+        return unsafe != null && !Modifier.isStatic(mod) && !Modifier.isVolatile(mod);
+    }
+
+    /**
+     * Creates a new Unsafe field offset accessor. If the field offset can not be obtained,
+     * which is the case for fields of record or hidden classes, a {@link ReflectionAccessor}
+     * is returned instead. Check using {@link #canCreate(Field)} first.
+     *
+     * @param field Field to access. Must be made accessible for the reflection fallback.
+     * @return accessor
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T> ReflectionAccessor<T> create(Field field) {
+        try {
+            Class<?> type = field.getType();
+            if (type == int.class) {
+                return (ReflectionAccessor) new IntAccessor(field);
+            } else if (type == long.class) {
+                return (ReflectionAccessor) new LongAccessor(field);
+            } else if (type == double.class) {
+                return (ReflectionAccessor) new DoubleAccessor(field);
+            } else if (type == float.class) {
+                return (ReflectionAccessor) new FloatAccessor(field);
+            } else if (type == boolean.class) {
+                return (ReflectionAccessor) new BooleanAccessor(field);
+            } else if (type == byte.class) {
+                return (ReflectionAccessor) new ByteAccessor(field);
+            } else if (type == short.class) {
+                return (ReflectionAccessor) new ShortAccessor(field);
+            } else if (type == char.class) {
+                return (ReflectionAccessor) new CharAccessor(field);
+            } else {
+                return new ObjectAccessor<T>(field);
+            }
+        } catch (Throwable t) {
+            return new ReflectionAccessor<T>(field);
+        }
+    }
+
+    private static sun.misc.Unsafe findUnsafe() {
+        try {
+            Class<?> unsafeType = Class.forName("sun.misc.Unsafe");
+            Field f = unsafeType.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            return (sun.misc.Unsafe) f.get(null);
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    private static final class ObjectAccessor<T> extends UnsafeAccessor<T> {
+        private final Class<?> type;
+
+        public ObjectAccessor(Field field) {
+            super(field);
+            this.type = field.getType();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(Object o) {
+            return declaringClass.isInstance(o) ? (T) unsafe.getObject(o, offset) : super.get(o);
+        }
+
+        @Override
+        public void set(Object o, T v) {
+            if (declaringClass.isInstance(o) && (v == null || type.isInstance(v))) {
+                unsafe.putObject(o, offset, v);
+            } else {
+                super.set(o, v);
+            }
+        }
+
+        @Override
+        public void copy(Object from, Object to) {
+            if (declaringClass.isInstance(from) && declaringClass.isInstance(to)) {
+                unsafe.putObject(to, offset, unsafe.getObject(from, offset));
+            } else {
+                super.copy(from, to);
+            }
+        }
+    }
+
+    private static final class IntAccessor extends UnsafeAccessor<Object> {
+        public IntAccessor(Field field) { super(field); }
+        public Object get(Object o) {return declaringClass.isInstance(o) ? Integer.valueOf(unsafe.getInt(o, offset)) : super.get(o);}
+        public int getInteger(Object o) {return declaringClass.isInstance(o) ? unsafe.getInt(o, offset) : super.getInteger(o);}
+        public void set(Object o, Object v) {if (declaringClass.isInstance(o) && v instanceof Integer) unsafe.putInt(o, offset, ((Integer) v).intValue()); else super.set(o, v);}
+        public void setInteger(Object o, int v) {if (declaringClass.isInstance(o)) unsafe.putInt(o, offset, v); else super.setInteger(o, v);}
+        public void copy(Object a, Object b) {if (declaringClass.isInstance(a) && declaringClass.isInstance(b)) unsafe.putInt(b, offset, unsafe.getInt(a, offset)); else super.copy(a, b);}
+    }
+
+    private static final class LongAccessor extends UnsafeAccessor<Object> {
+        public LongAccessor(Field field) { super(field); }
+        public Object get(Object o) {return declaringClass.isInstance(o) ? Long.valueOf(unsafe.getLong(o, offset)) : super.get(o);}
+        public long getLong(Object o) {return declaringClass.isInstance(o) ? unsafe.getLong(o, offset) : super.getLong(o);}
+        public void set(Object o, Object v) {if (declaringClass.isInstance(o) && v instanceof Long) unsafe.putLong(o, offset, ((Long) v).longValue()); else super.set(o, v);}
+        public void setLong(Object o, long v) {if (declaringClass.isInstance(o)) unsafe.putLong(o, offset, v); else super.setLong(o, v);}
+        public void copy(Object a, Object b) {if (declaringClass.isInstance(a) && declaringClass.isInstance(b)) unsafe.putLong(b, offset, unsafe.getLong(a, offset)); else super.copy(a, b);}
+    }
+
+    private static final class DoubleAccessor extends UnsafeAccessor<Object> {
+        public DoubleAccessor(Field field) { super(field); }
+        public Object get(Object o) {return declaringClass.isInstance(o) ? Double.valueOf(unsafe.getDouble(o, offset)) : super.get(o);}
+        public double getDouble(Object o) {return declaringClass.isInstance(o) ? unsafe.getDouble(o, offset) : super.getDouble(o);}
+        public void set(Object o, Object v) {if (declaringClass.isInstance(o) && v instanceof Double) unsafe.putDouble(o, offset, ((Double) v).doubleValue()); else super.set(o, v);}
+        public void setDouble(Object o, double v) {if (declaringClass.isInstance(o)) unsafe.putDouble(o, offset, v); else super.setDouble(o, v);}
+        public void copy(Object a, Object b) {if (declaringClass.isInstance(a) && declaringClass.isInstance(b)) unsafe.putDouble(b, offset, unsafe.getDouble(a, offset)); else super.copy(a, b);}
+    }
+
+    private static final class FloatAccessor extends UnsafeAccessor<Object> {
+        public FloatAccessor(Field field) { super(field); }
+        public Object get(Object o) {return declaringClass.isInstance(o) ? Float.valueOf(unsafe.getFloat(o, offset)) : super.get(o);}
+        public float getFloat(Object o) {return declaringClass.isInstance(o) ? unsafe.getFloat(o, offset) : super.getFloat(o);}
+        public void set(Object o, Object v) {if (declaringClass.isInstance(o) && v instanceof Float) unsafe.putFloat(o, offset, ((Float) v).floatValue()); else super.set(o, v);}
+        public void setFloat(Object o, float v) {if (declaringClass.isInstance(o)) unsafe.putFloat(o, offset, v); else super.setFloat(o, v);}
+        public void copy(Object a, Object b) {if (declaringClass.isInstance(a) && declaringClass.isInstance(b)) unsafe.putFloat(b, offset, unsafe.getFloat(a, offset)); else super.copy(a, b);}
+    }
+
+    private static final class BooleanAccessor extends UnsafeAccessor<Object> {
+        public BooleanAccessor(Field field) { super(field); }
+        public Object get(Object o) {return declaringClass.isInstance(o) ? Boolean.valueOf(unsafe.getBoolean(o, offset)) : super.get(o);}
+        public boolean getBoolean(Object o) {return declaringClass.isInstance(o) ? unsafe.getBoolean(o, offset) : super.getBoolean(o);}
+        public void set(Object o, Object v) {if (declaringClass.isInstance(o) && v instanceof Boolean) unsafe.putBoolean(o, offset, ((Boolean) v).booleanValue()); else super.set(o, v);}
+        public void setBoolean(Object o, boolean v) {if (declaringClass.isInstance(o)) unsafe.putBoolean(o, offset, v); else super.setBoolean(o, v);}
+        public void copy(Object a, Object b) {if (declaringClass.isInstance(a) && declaringClass.isInstance(b)) unsafe.putBoolean(b, offset, unsafe.getBoolean(a, offset)); else super.copy(a, b);}
+    }
+
+    private static final class ByteAccessor extends UnsafeAccessor<Object> {
+        public ByteAccessor(Field field) { super(field); }
+        public Object get(Object o) {return declaringClass.isInstance(o) ? Byte.valueOf(unsafe.getByte(o, offset)) : super.get(o);}
+        public byte getByte(Object o) {return declaringClass.isInstance(o) ? unsafe.getByte(o, offset) : super.getByte(o);}
+        public void set(Object o, Object v) {if (declaringClass.isInstance(o) && v instanceof Byte) unsafe.putByte(o, offset, ((Byte) v).byteValue()); else super.set(o, v);}
+        public void setByte(Object o, byte v) {if (declaringClass.isInstance(o)) unsafe.putByte(o, offset, v); else super.setByte(o, v);}
+        public void copy(Object a, Object b) {if (declaringClass.isInstance(a) && declaringClass.isInstance(b)) unsafe.putByte(b, offset, unsafe.getByte(a, offset)); else super.copy(a, b);}
+    }
+
+    private static final class ShortAccessor extends UnsafeAccessor<Object> {
+        public ShortAccessor(Field field) { super(field); }
+        public Object get(Object o) {return declaringClass.isInstance(o) ? Short.valueOf(unsafe.getShort(o, offset)) : super.get(o);}
+        public short getShort(Object o) {return declaringClass.isInstance(o) ? unsafe.getShort(o, offset) : super.getShort(o);}
+        public void set(Object o, Object v) {if (declaringClass.isInstance(o) && v instanceof Short) unsafe.putShort(o, offset, ((Short) v).shortValue()); else super.set(o, v);}
+        public void setShort(Object o, short v) {if (declaringClass.isInstance(o)) unsafe.putShort(o, offset, v); else super.setShort(o, v);}
+        public void copy(Object a, Object b) {if (declaringClass.isInstance(a) && declaringClass.isInstance(b)) unsafe.putShort(b, offset, unsafe.getShort(a, offset)); else super.copy(a, b);}
+    }
+
+    private static final class CharAccessor extends UnsafeAccessor<Object> {
+        public CharAccessor(Field field) { super(field); }
+        public Object get(Object o) {return declaringClass.isInstance(o) ? Character.valueOf(unsafe.getChar(o, offset)) : super.get(o);}
+        public char getCharacter(Object o) {return declaringClass.isInstance(o) ? unsafe.getChar(o, offset) : super.getCharacter(o);}
+        public void set(Object o, Object v) {if (declaringClass.isInstance(o) && v instanceof Character) unsafe.putChar(o, offset, ((Character) v).charValue()); else super.set(o, v);}
+        public void setCharacter(Object o, char v) {if (declaringClass.isInstance(o)) unsafe.putChar(o, offset, v); else super.setCharacter(o, v);}
+        public void copy(Object a, Object b) {if (declaringClass.isInstance(a) && declaringClass.isInstance(b)) unsafe.putChar(b, offset, unsafe.getChar(a, offset)); else super.copy(a, b);}
+    }
+}
@@ -2,12 +2,16 @@ package com.bergerkiller.mountiplex;
 
 import com.bergerkiller.mountiplex.reflection.declarations.ClassDeclaration;
 import com.bergerkiller.mountiplex.reflection.declarations.ClassResolver;
+import com.bergerkiller.mountiplex.reflection.declarations.DeclarationCache;
 import com.bergerkiller.mountiplex.reflection.declarations.FieldDeclaration;
 import com.bergerkiller.mountiplex.reflection.declarations.MethodDeclaration;
 import com.bergerkiller.mountiplex.reflection.util.FastMethod;
 import com.bergerkiller.mountiplex.types.TestObject;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+
 import static org.junit.Assert.*;
 
 /**
@@ -53,6 +57,48 @@ public class ClassDeclarationTest {
         }
     }
 
+    @Test
+    public void testDeclarationCache() throws IOException {
+        File cacheFile = File.createTempFile("mountiplex_declarations", ".dat");
+        cacheFile.delete();
+        try {
+            // Resolves normally and stores the results
+            DeclarationCache.load(cacheFile);
+            verifyCachedDeclaration();
+            assertEquals(0, DeclarationCache.getHitCount());
+            DeclarationCache.save();
+            assertTrue(cacheFile.exists());
+
+            // Reads the results back from the file, and resolves the members using them
+            DeclarationCache.load(cacheFile);
+            verifyCachedDeclaration();
+            assertEquals(3, DeclarationCache.getHitCount());
+        } finally {
+            DeclarationCache.disable();
+            cacheFile.delete();
+        }
+    }
+
+    private void verifyCachedDeclaration() {
+        ClassResolver resolver = ClassResolver.DEFAULT.clone();
+        resolver.setPackage("com.bergerkiller.mountiplex.types");
+        ClassDeclaration dec = new ClassDeclaration(resolver, "" +
+                "class TestObject {\n" +
+                "    private String localField:b;\n" +
+                "    private int intField:c;\n" +
+                "    private int addInt:h(int n);\n" +
+                "    private optional int unknownField:???;\n" +
+                "}");
+
+        assertNotNull(dec.fields[0].field);
+        assertEquals("b", dec.fields[0].field.getName());
+        assertNotNull(dec.fields[1].field);
+        assertEquals("c", dec.fields[1].field.getName());
+        assertNull(dec.fields[2].field);
+        assertNotNull(dec.methods[0].method);
+        assertEquals("h", dec.methods[0].method.getName());
+    }
+
     @Test
     public void testRemappedMethodDeclaration() {
         ClassResolver resolver = ClassResolver.DEFAULT.clone();
@@ -101,6 +101,51 @@ public class ClassHookTest {
         testTimings(" Hooked base", hooked_dog);
     }
 
+    @Test
+    public void testClassHookPrimitiveDirectCall() {
+        for (boolean direct : new boolean[] { false, true }) {
+            DogBarkHook hook = new DogBarkHook();
+            hook.setUseDirectDispatch(direct);
+
+            final Dog hooked_dog = hook.hook(new Dog());
+            assertEquals(6, hooked_dog.bark(3));
+            assertEquals(3, hook.base.theBarkMethod(3));
+
+            TestUtil.measure("Hooked bark(int) (direct=" + direct + ")", () -> hooked_dog.bark(5));
+        }
+    }
+
+    @Test
+    public void testClassHookDirectCallWithoutBoxing() {
+        DogBarkCallerHook hook = new DogBarkCallerHook();
+        hook.setUseDirectDispatch(true);
+
+        // The generated bark(int) calls the hook method itself, no invoker is called in between
+        Dog hooked_dog = hook.hook(new Dog());
+        assertEquals(4, hooked_dog.bark(4));
+        assertEquals(hooked_dog.getClass().getName(), hook.caller.getClassName());
+        assertEquals("bark", hook.caller.getMethodName());
+    }
+
+    @Test
+    public void testClassHookMultipleInstances() {
+        for (boolean direct : new boolean[] { false, true }) {
+            NamedDogHook hook = new NamedDogHook();
+            hook.setUseDirectDispatch(direct);
+
+            NamedDog rex = hook.hook(new NamedDog("rex"));
+            NamedDog fido = hook.hook(new NamedDog("fido"));
+            assertEquals("hooked:rex1:rex", rex.bark(1));
+            assertEquals("hooked:fido2:fido", fido.bark(2));
+            assertEquals("hooked:rex3:rex", rex.bark(3));
+
+            // Hook methods calling another hooked object
+            assertEquals("hooked:fido0:fido<rex", rex.greet(fido));
+            assertEquals("hooked:rex0:rex<fido", fido.greet(rex));
+            assertEquals("hooked:rex0:rex<rex", rex.greet(rex));
+        }
+    }
+
     /*
      * Tests the correct working of mock() interception
      */
@@ -172,6 +217,10 @@ public class ClassHookTest {
             return "Dog::woof()";
         }
 
+        public int bark(int times) {
+            return times;
+        }
+
     }
 
     public class DogHook extends ClassHook<DogHook> {
@@ -188,6 +237,52 @@ public class ClassHookTest {
         }
     }
 
+    public class DogBarkHook extends ClassHook<DogBarkHook> {
+        @HookMethod("public int bark(int times)")
+        public int theBarkMethod(int times) {
+            return 2 * times;
+        }
+    }
+
+    public class DogBarkCallerHook extends ClassHook<DogBarkCallerHook> {
+        public StackTraceElement caller = null;
+
+        @HookMethod("public int bark(int times)")
+        public int theBarkMethod(int times) {
+            caller = new Throwable().getStackTrace()[1];
+            return times;
+        }
+    }
+
+    public static class NamedDog {
+        public final String name;
+
+        public NamedDog(String name) {
+            this.name = name;
+        }
+
+        public String bark(int times) {
+            return name + times;
+        }
+
+        public String greet(Object other) {
+            return name;
+        }
+    }
+
+    public class NamedDogHook extends ClassHook<NamedDogHook> {
+        @HookMethod("public String bark(int times)")
+        public String bark(int times) {
+            return "hooked:" + base.bark(times) + ":" + ((NamedDog) instance()).name;
+        }
+
+        @HookMethod("public String greet(Object other)")
+        public String greet(Object other) {
+            String barked = ((NamedDog) other).bark(0);
+            return barked + "<" + ((NamedDog) instance()).name;
+        }
+    }
+
     public class DogLoopbackHook extends ClassHook<DogLoopbackHook> {
         @HookMethod("public String woof()")
         public String theWoofMethod() {
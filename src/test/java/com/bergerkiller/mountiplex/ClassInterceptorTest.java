@@ -1,11 +1,14 @@
 package com.bergerkiller.mountiplex;
 
 import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.junit.Test;
 
 import com.bergerkiller.mountiplex.reflection.ClassInterceptor;
+import com.bergerkiller.mountiplex.reflection.util.fast.GeneratedInvoker;
 import com.bergerkiller.mountiplex.reflection.util.fast.Invoker;
+import com.bergerkiller.mountiplex.types.SpeedTestObject;
 
 import static org.junit.Assert.*;
 
@@ -35,6 +38,131 @@ public class ClassInterceptorTest {
         assertEquals("meow", unhooked_cat.meow());
     }
 
+    @Test
+    public void testDirectDispatch() {
+        ClassInterceptor interceptor = new ExclaimingInterceptor();
+        interceptor.setUseDirectDispatch(true);
+
+        Cat cat_a = interceptor.hook(new Cat("meow"));
+        Cat cat_b = interceptor.hook(new Cat("purr"));
+        assertEquals("meow!", cat_a.meow());
+        assertEquals("purr!", cat_b.meow());
+        assertEquals(Cat.class, ClassInterceptor.findBaseType(cat_a.getClass()));
+        assertEquals("meow", ClassInterceptor.unhook(cat_a).meow());
+    }
+
+    @Test
+    public void testDirectDispatchInstance() {
+        ClassInterceptor interceptor = new InstanceCallInterceptor();
+        interceptor.setUseDirectDispatch(true);
+
+        // instance() must return the called object, not the last hooked object
+        Cat cat_a = interceptor.hook(new Cat("meow"));
+        Cat cat_b = interceptor.hook(new Cat("purr"));
+        assertEquals("meow?", cat_a.meow());
+        assertEquals("purr?", cat_b.meow());
+        assertEquals("meow?", cat_a.meow());
+    }
+
+    @Test
+    public void testInstanceNestedCall() {
+        for (boolean direct : new boolean[] { false, true }) {
+            ClassInterceptor interceptor = new InstanceCallInterceptor();
+            interceptor.setUseDirectDispatch(direct);
+
+            // instance() returns the object called last, also inside and after nested calls
+            Cat cat_a = interceptor.hook(new Cat("meow"));
+            Cat cat_b = interceptor.hook(new Cat("purr"));
+            assertEquals("purr?<meow", cat_a.relay(cat_b));
+            assertEquals("meow?<purr", cat_b.relay(cat_a));
+            assertEquals("meow?<meow", cat_a.relay(cat_a));
+            assertEquals("purr?<purr", cat_b.relay(cat_b));
+        }
+    }
+
+    @Test
+    public void testInstanceCrossInterceptorCall() {
+        for (boolean direct : new boolean[] { false, true }) {
+            ClassInterceptor interceptor_a = new InstanceCallInterceptor();
+            ClassInterceptor interceptor_b = new InstanceCallInterceptor();
+            interceptor_a.setUseDirectDispatch(direct);
+            interceptor_b.setUseDirectDispatch(direct);
+
+            // Objects hooked by another interceptor track their own instance
+            Cat cat_a = interceptor_a.hook(new Cat("meow"));
+            Cat cat_b = interceptor_b.hook(new Cat("purr"));
+            Cat cat_c = interceptor_a.hook(new Cat("hiss"));
+            assertEquals("purr?<meow", cat_a.relay(cat_b));
+            assertEquals("meow?<purr", cat_b.relay(cat_a));
+            assertEquals("meow?<hiss", cat_c.relay(cat_a));
+            assertEquals("hiss?<meow", cat_a.relay(cat_c));
+        }
+    }
+
+    @Test
+    public void testInstanceWhileHookingOnOtherThread() throws InterruptedException {
+        final ClassInterceptor interceptor = new InstanceCallInterceptor();
+        interceptor.setUseDirectDispatch(true);
+        final Cat cat = interceptor.hook(new Cat("meow"));
+
+        // Hooking other objects changes the last hooked object, but not the called object
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread hooker = new Thread(() -> {
+            while (!done.get()) {
+                interceptor.hook(new Cat("purr"));
+                interceptor.hook(cat);
+            }
+        });
+        hooker.start();
+        try {
+            for (int i = 0; i < 200000; i++) {
+                assertEquals("meow?", cat.meow());
+            }
+        } finally {
+            done.set(true);
+            hooker.join();
+        }
+    }
+
+    @Test
+    public void testDirectDispatchSpeed() {
+        for (boolean direct : new boolean[] { false, true }) {
+            ClassInterceptor interceptor = new ExclaimingInterceptor();
+            interceptor.setUseDirectDispatch(direct);
+            final Cat cat = interceptor.hook(new Cat("meow"));
+            TestUtil.measure("Intercepted call (direct=" + direct + ")", () -> cat.meow());
+        }
+    }
+
+    @Test
+    public void testDirectDispatchWideMethod() throws Throwable {
+        final Method callbackMethod = ClassInterceptorTest.class.getMethod("sumTimesTen",
+                int.class, int.class, int.class, int.class, int.class, int.class, int.class);
+        ClassInterceptor interceptor = new ClassInterceptor() {
+            @Override
+            protected Invoker<?> getCallback(Method method) {
+                if (method.getName().equals("publicLotsOfArgs")) {
+                    return GeneratedInvoker.create(callbackMethod);
+                }
+                return null;
+            }
+        };
+        interceptor.setUseDirectDispatch(true);
+
+        SpeedTestObject object = interceptor.hook(new SpeedTestObject());
+        assertEquals(280, object.publicLotsOfArgs(1, 2, 3, 4, 5, 6, 7));
+
+        // The hooked method calls the method directly, not through the invoker
+        assertEquals(object.getClass().getName(), sumTimesTenCaller);
+    }
+
+    private static String sumTimesTenCaller = null;
+
+    public static int sumTimesTen(int a, int b, int c, int d, int e, int f, int g) {
+        sumTimesTenCaller = new Throwable().getStackTrace()[1].getClassName();
+        return 10 * (a + b + c + d + e + f + g);
+    }
+
     /*
      * This test is needed to verify that many different threads calling a method
      * does not cause a method to be called on an entirely different object.
@@ -101,6 +229,44 @@ public class ClassInterceptorTest {
         public String meow() {
             return call;
         }
+
+        public String relay(Cat other) {
+            return other.meow();
+        }
+    }
+
+    private static class ExclaimingInterceptor extends ClassInterceptor {
+        @Override
+        protected Invoker<?> getCallback(final Method method) {
+            if (method.getName() == "meow") {
+                return (instance, args) -> {
+                    return ((Cat) instance).call + "!";
+                };
+            }
+            return null;
+        }
+    }
+
+    private static class InstanceCallInterceptor extends ClassInterceptor {
+        @Override
+        protected Invoker<?> getCallback(final Method method) {
+            // Callbacks are shared by all interceptors of this type, use the one of the called object
+            if (method.getName() == "meow") {
+                return (instance, args) -> {
+                    return ((Cat) of(instance).instance()).call + "?";
+                };
+            } else if (method.getName() == "relay") {
+                return (instance, args) -> {
+                    String result = ((Cat) args[0]).meow();
+                    return result + "<" + ((Cat) of(instance).instance()).call;
+                };
+            }
+            return null;
+        }
+
+        private static InstanceCallInterceptor of(Object instance) {
+            return ClassInterceptor.get(instance, InstanceCallInterceptor.class);
+        }
     }
 
     private static class CatInterceptor extends ClassInterceptor {
@@ -19,10 +19,14 @@ import com.bergerkiller.mountiplex.conversion.Conversion;
 import com.bergerkiller.mountiplex.conversion.Converter;
 import com.bergerkiller.mountiplex.conversion.annotations.ConverterMethod;
 import com.bergerkiller.mountiplex.conversion.builtin.ToStringConversion;
+import com.bergerkiller.mountiplex.conversion.type.ChainConverter;
 import com.bergerkiller.mountiplex.conversion.type.DuplexConverter;
 import com.bergerkiller.mountiplex.conversion.type.InputConverter;
+import com.bergerkiller.mountiplex.conversion.type.LazyConverter;
+import com.bergerkiller.mountiplex.conversion.type.PrimitiveConverter;
 import com.bergerkiller.mountiplex.conversion.util.ConvertingIterable;
 import com.bergerkiller.mountiplex.conversion.util.ConvertingList;
+import com.bergerkiller.mountiplex.conversion.util.PrimitiveArrayList;
 import com.bergerkiller.mountiplex.reflection.declarations.TypeDeclaration;
 import com.bergerkiller.mountiplex.types.AnnotatedConverters;
 import com.bergerkiller.mountiplex.types.CustomListType;
@@ -169,6 +173,67 @@ public class ConversionTest {
         testConversion(false, Byte.class, Byte.valueOf((byte) 0));
     }
 
+    @Test
+    public void testPrimitiveConverter() {
+        Converter<Object, Object> conv = Conversion.find(TypeDeclaration.fromClass(int.class), TypeDeclaration.fromClass(double.class));
+        assertTrue(conv instanceof PrimitiveConverter);
+        assertEquals(12.0, conv.convert(12));
+        assertEquals(12.0, ((PrimitiveConverter<?, ?>) conv).convertDouble(12L), 0.0);
+
+        conv = Conversion.find(TypeDeclaration.fromClass(double.class), TypeDeclaration.fromClass(byte.class));
+        assertTrue(conv instanceof PrimitiveConverter);
+        assertEquals((byte) 300, conv.convert(300.5));
+        assertEquals((long) (byte) 300, ((PrimitiveConverter<?, ?>) conv).convertLong(300.5));
+
+        conv = Conversion.find(TypeDeclaration.fromClass(Boolean.class), TypeDeclaration.fromClass(Integer.class));
+        assertTrue(conv instanceof PrimitiveConverter);
+        assertEquals(1, conv.convert(true));
+        assertEquals(0, conv.convert(false));
+    }
+
+    @Test
+    public void testPrimitiveConverterLookupOrder() {
+        // Boxed types looked up first
+        Conversion.find(Short.class, Float.class);
+        assertPrimitiveConverter(short.class, float.class);
+
+        // Primitive types looked up first
+        assertPrimitiveConverter(long.class, byte.class);
+        Conversion.find(Long.class, Byte.class);
+        assertPrimitiveConverter(long.class, byte.class);
+    }
+
+    @Test
+    public void testPrimitiveConverterBoxedNull() {
+        // Looking up the primitive types first must not make the boxed converter output a default value
+        assertPrimitiveConverter(int.class, float.class);
+        Converter<Integer, Float> conv = Conversion.find(Integer.class, Float.class);
+        assertNull(conv.convert(null));
+        assertEquals(0.0f, Conversion.find(int.class, float.class).convert(null).floatValue(), 0.0f);
+    }
+
+    @Test
+    public void testPrimitiveConverterCached() {
+        // The same converter is returned for the exact types, no matter the order of lookups
+        Converter<Object, Object> conv = Conversion.find(TypeDeclaration.fromClass(int.class), TypeDeclaration.fromClass(double.class));
+        assertSame(conv, Conversion.find(TypeDeclaration.fromClass(int.class), TypeDeclaration.fromClass(double.class)));
+        Converter<Object, Object> boxed = Conversion.find(TypeDeclaration.fromClass(Integer.class), TypeDeclaration.fromClass(Double.class));
+        assertSame(boxed, Conversion.find(TypeDeclaration.fromClass(Integer.class), TypeDeclaration.fromClass(Double.class)));
+        assertSame(conv, Conversion.find(TypeDeclaration.fromClass(int.class), TypeDeclaration.fromClass(double.class)));
+
+        Converter<Object, Object> mixed = Conversion.find(TypeDeclaration.fromClass(Integer.class), TypeDeclaration.fromClass(double.class));
+        assertSame(mixed, Conversion.find(TypeDeclaration.fromClass(Integer.class), TypeDeclaration.fromClass(double.class)));
+        assertEquals(Integer.class, mixed.input.type);
+        assertEquals(double.class, mixed.output.type);
+    }
+
+    private static void assertPrimitiveConverter(Class<?> input, Class<?> output) {
+        Converter<Object, Object> conv = Conversion.find(TypeDeclaration.fromClass(input), TypeDeclaration.fromClass(output));
+        assertTrue(conv instanceof PrimitiveConverter);
+        assertEquals(input, conv.input.type);
+        assertEquals(output, conv.output.type);
+    }
+
     @Test
     public void testBooleanToEnum() {
         for (int i = 0; i < 10; i++) {
@@ -214,6 +279,65 @@ public class ConversionTest {
         assertEquals(result.get(1).intValue(), 24);
     }
 
+    @Test
+    public void testConvertAll() {
+        Converter<String, Integer> converter = Conversion.find(String.class, Integer.class);
+        assertNotNull(converter);
+
+        // Array to array, values that are not Strings turn into null
+        Object[] input = new Object[] { "1", "2", null, Integer.valueOf(5), "3" };
+        Object[] output = new Object[6];
+        converter.convertAll(input, 0, output, 1, input.length);
+        assertArrayEquals(new Object[] { null, 1, 2, null, null, 3 }, output);
+
+        // In place
+        converter.convertAll(input, 0, input, 0, input.length);
+        assertArrayEquals(new Object[] { 1, 2, null, null, 3 }, input);
+
+        // Primitive output types store their default value
+        Converter<String, Integer> primConverter = Conversion.find(String.class, int.class);
+        Object[] primOutput = new Object[2];
+        primConverter.convertAll(new Object[] { "7", null }, 0, primOutput, 0, 2);
+        assertArrayEquals(new Object[] { 7, 0 }, primOutput);
+
+        // Collections
+        assertEquals(Arrays.asList(12, 24), converter.convertAll(Arrays.asList("12", "24")));
+
+        // Converting views convert all elements at once when copied
+        TypeDeclaration tStringList = TypeDeclaration.parse("List<String>");
+        TypeDeclaration tIntegerList = TypeDeclaration.parse("List<Integer>");
+        List<Integer> view = assertTypedConvert(tStringList, tIntegerList, Arrays.asList("5", "6", "7"));
+        assertEquals(Arrays.asList(5, 6, 7), new ArrayList<Integer>(view));
+        assertArrayEquals(new Integer[] { 5, 6, 7 }, view.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void testPrimitiveArrayConversion() {
+        TypeDeclaration tIntArray = TypeDeclaration.parse("int[]");
+        TypeDeclaration tIntegerList = TypeDeclaration.parse("List<Integer>");
+        TypeDeclaration tStringList = TypeDeclaration.parse("List<String>");
+
+        // int[] -> List<Integer> is a live view of the array
+        int[] values = new int[] { 5, -6, 23 };
+        List<Integer> list = assertTypedConvert(tIntArray, tIntegerList, values);
+        assertTrue(list instanceof PrimitiveArrayList.OfInteger);
+        assertEquals(Arrays.asList(5, -6, 23), list);
+        list.set(1, 12);
+        assertEquals(12, values[1]);
+        ((PrimitiveArrayList.OfInteger) list).setInteger(2, 40);
+        assertEquals(40, list.get(2).intValue());
+
+        // int[] -> List<String> converts the elements
+        List<String> strings = assertTypedConvert(tIntArray, tStringList, values);
+        assertEquals(Arrays.asList("5", "12", "40"), strings);
+
+        // Between primitive and boxed arrays
+        assertArrayEquals(new Integer[] { 5, 12, 40 }, Conversion.find(int[].class, Integer[].class).convert(values));
+        assertArrayEquals(new long[] { 1L, 0L, 3L }, Conversion.find(Long[].class, long[].class).convert(new Long[] { 1L, null, 3L }));
+        assertArrayEquals(new long[] { 5L, 12L, 40L }, Conversion.find(int[].class, long[].class).convert(values));
+        assertArrayEquals(new int[] { 7, 8 }, (int[]) Conversion.find(tStringList, tIntArray).convert(Arrays.asList("7", "8")));
+    }
+
     @Test
     public void testListToSet() {
         TypeDeclaration tStringList = TypeDeclaration.parse("List<String>");
@@ -506,6 +630,178 @@ public class ConversionTest {
         assertEquals(5, n);
     }
 
+    @Test
+    public void testConcurrentFindSpeed() throws InterruptedException {
+        final TypeDeclaration input = TypeDeclaration.fromClass(String.class);
+        final TypeDeclaration output = TypeDeclaration.fromClass(CustomType.class);
+        final Converter<Object, Object> expected = assertFindConverter(input, output);
+
+        // Many threads looking up the same (cached) converter at the same time
+        for (int numThreads : new int[] { 1, 4, 16 }) {
+            final int lookupsPerThread = 2000000;
+            final boolean[] failed = new boolean[1];
+            Thread[] threads = new Thread[numThreads];
+            for (int i = 0; i < numThreads; i++) {
+                threads[i] = new Thread(() -> {
+                    for (int n = 0; n < lookupsPerThread; n++) {
+                        if (Conversion.find(input, output) != expected) {
+                            failed[0] = true;
+                            break;
+                        }
+                    }
+                });
+            }
+            long startTime = System.currentTimeMillis();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long endTime = System.currentTimeMillis();
+            assertFalse("Conversion.find returned a different converter", failed[0]);
+
+            long totalLookups = (long) numThreads * lookupsPerThread;
+            long duration = Math.max(1, endTime - startTime);
+            System.out.println("Conversion.find() with " + numThreads + " threads: " +
+                    (totalLookups / duration) + " lookups/ms (" + duration + "ms)");
+        }
+    }
+
+    @Test
+    public void testFusedChainConverter() {
+        List<Converter<?, ?>> chain = createIncrementChain(3);
+        Converter<Object, Object> loop = new ChainConverter<Object, Object>(chain);
+        Converter<Object, Object> fused = ChainConverter.createFused(chain);
+        assertNotEquals(ChainConverter.class, fused.getClass());
+        assertEquals(Integer.valueOf(4), loop.convertInput(Integer.valueOf(1)));
+        assertEquals(Integer.valueOf(4), fused.convertInput(Integer.valueOf(1)));
+        assertEquals(loop.getCost(), fused.getCost());
+
+        // Steps that return null abort the chain
+        chain.set(1, new Converter<Integer, Integer>(Integer.class, Integer.class) {
+            @Override
+            public Integer convertInput(Integer value) {
+                return null;
+            }
+        });
+        assertNull(ChainConverter.createFused(chain).convertInput(Integer.valueOf(1)));
+
+        // Lazy converters can change, and can not be fused
+        chain.set(1, LazyConverter.of(chain.get(0)));
+        assertEquals(ChainConverter.class, ChainConverter.createFused(chain).getClass());
+    }
+
+    @Test
+    public void testFusedChainConverterSpeed() {
+        for (int steps = 2; steps <= 4; steps++) {
+            List<Converter<?, ?>> chain = createIncrementChain(steps);
+            final Converter<Object, Object> loop = new ChainConverter<Object, Object>(chain);
+            final Converter<Object, Object> fused = ChainConverter.createFused(chain);
+            final Integer input = Integer.valueOf(1);
+            TestUtil.measure("ChainConverter loop [" + steps + " steps]", () -> loop.convertInput(input));
+            TestUtil.measure("ChainConverter fused [" + steps + " steps]", () -> fused.convertInput(input));
+        }
+    }
+
+    @Test
+    public void testRegisterConvertersInterleavedSpeed() {
+        // A chain String -> Wrap<String> -> Wrap<Wrap<String>> -> ... of which every output is looked up
+        final int depth = 40;
+        TypeDeclaration[] chain = new TypeDeclaration[depth + 1];
+        chain[0] = TypeDeclaration.fromClass(String.class);
+        for (int i = 0; i < depth; i++) {
+            chain[i + 1] = TypeDeclaration.createGeneric(BenchWrap.class, chain[i]);
+            Conversion.registerConverter(new Converter<Object, BenchWrap<?>>(chain[i], chain[i + 1]) {
+                @Override
+                public BenchWrap<?> convertInput(Object value) {
+                    return new BenchWrap<Object>(value);
+                }
+            });
+        }
+        for (int i = 1; i <= depth; i++) {
+            assertNotNull(Conversion.find(chain[0], chain[i]));
+        }
+
+        // Register new converters to String, each followed by a lookup through the chain
+        Class<?>[] keyTypes = new Class<?>[] { Integer.class, Long.class, Short.class, Byte.class,
+                Double.class, Float.class, Character.class, Boolean.class, Number.class, Object.class,
+                String.class, List.class, Map.class, Set.class, Collection.class, Iterable.class,
+                CharSequence.class, StringBuilder.class, Thread.class, Runnable.class };
+        int count = 0;
+        long startTime = System.nanoTime();
+        for (Class<?> keyA : keyTypes) {
+            for (Class<?> keyB : keyTypes) {
+                final String name = keyA.getSimpleName() + "," + keyB.getSimpleName();
+                TypeDeclaration source = TypeDeclaration.createGeneric(BenchSource.class, keyA, keyB);
+                Conversion.registerConverter(new Converter<BenchSource<?, ?>, String>(source, chain[0]) {
+                    @Override
+                    public String convertInput(BenchSource<?, ?> value) {
+                        return name;
+                    }
+                });
+
+                int level = 1 + (count++ % depth);
+                Converter<Object, Object> converter = Conversion.find(source, chain[level]);
+                assertNotNull(converter);
+                Object result = converter.convertInput(new BenchSource<Object, Object>());
+                for (int i = 0; i < level; i++) {
+                    assertTrue(result instanceof BenchWrap);
+                    result = ((BenchWrap<?>) result).value;
+                }
+                assertEquals(name, result);
+            }
+        }
+        long duration = System.nanoTime() - startTime;
+        System.out.println("Registered " + count + " converters interleaved with lookups in " +
+                (duration / 1000000.0) + "ms");
+    }
+
+    public static class BenchWrap<T> {
+        public final T value;
+
+        public BenchWrap(T value) {
+            this.value = value;
+        }
+    }
+
+    public static class BenchSource<A, B> {
+    }
+
+    // Uses a different converter class for every step, so the loop sees many types
+    private static List<Converter<?, ?>> createIncrementChain(int steps) {
+        List<Converter<?, ?>> chain = new ArrayList<Converter<?, ?>>(steps);
+        for (int i = 0; i < steps; i++) {
+            switch (i) {
+            case 0:
+                chain.add(new Converter<Integer, Integer>(Integer.class, Integer.class) {
+                    @Override
+                    public Integer convertInput(Integer value) { return value + 1; }
+                });
+                break;
+            case 1:
+                chain.add(new Converter<Integer, Integer>(Integer.class, Integer.class) {
+                    @Override
+                    public Integer convertInput(Integer value) { return value.intValue() + 1; }
+                });
+                break;
+            case 2:
+                chain.add(new Converter<Integer, Integer>(Integer.class, Integer.class) {
+                    @Override
+                    public Integer convertInput(Integer value) { return Integer.valueOf(value + 1); }
+                });
+                break;
+            default:
+                chain.add(new Converter<Integer, Integer>(Integer.class, Integer.class) {
+                    @Override
+                    public Integer convertInput(Integer value) { return 1 + value; }
+                });
+                break;
+            }
+        }
+        return chain;
+    }
+
     public static class TestWildCardType<T> {
         public String value;
 
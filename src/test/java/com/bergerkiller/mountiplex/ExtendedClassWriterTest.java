@@ -8,6 +8,7 @@ import com.bergerkiller.mountiplex.reflection.declarations.ClassResolver;
 import com.bergerkiller.mountiplex.reflection.declarations.MethodDeclaration;
 import com.bergerkiller.mountiplex.reflection.util.ExtendedClassWriter;
 import com.bergerkiller.mountiplex.reflection.util.FastMethod;
+import com.bergerkiller.mountiplex.reflection.util.GeneratorClassLoader;
 import com.bergerkiller.mountiplex.types.TestObject;
 
 public class ExtendedClassWriterTest {
@@ -32,4 +33,18 @@ public class ExtendedClassWriterTest {
         method.init(mDec);
         assertEquals("This is the test", method.invoke(null));
     }
+
+    @Test
+    public void testGeneratedClassNameReserved() {
+        // Same postfix twice should pick a different name for the second class
+        ExtendedClassWriter<TestObject> a = ExtendedClassWriter.builder(TestObject.class).setPostfix("$reservetest").build();
+        ExtendedClassWriter<TestObject> b = ExtendedClassWriter.builder(TestObject.class).setPostfix("$reservetest").build();
+        assertEquals(TestObject.class.getName() + "$reservetest", a.getName());
+        assertEquals(TestObject.class.getName() + "$reservetest_1", b.getName());
+
+        GeneratorClassLoader loader = GeneratorClassLoader.get(TestObject.class.getClassLoader());
+        assertTrue(loader.isClassNameReserved(b.getName()));
+        assertFalse(loader.reserveClassName(a.getName()));
+        assertEquals(b.getName(), b.generate().getName());
+    }
 }
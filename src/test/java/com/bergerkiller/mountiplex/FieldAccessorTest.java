@@ -7,6 +7,7 @@ import java.lang.reflect.Field;
 import org.junit.Test;
 
 import com.bergerkiller.mountiplex.reflection.util.fast.ReflectionAccessor;
+import com.bergerkiller.mountiplex.reflection.util.fast.UnsafeAccessor;
 import com.bergerkiller.mountiplex.types.StaticFieldTestObject;
 
 /**
@@ -217,6 +218,59 @@ public class FieldAccessorTest {
         assertEquals("value2", accessor.get(null));
     }
 
+    @Test
+    public void testPrivateMemberIntField() {
+        final ReflectionAccessor<Integer> accessor = createMemberAccessor("field_int");
+        assertTrue(accessor instanceof UnsafeAccessor);
+        final PrivateFieldTestObject object = new PrivateFieldTestObject();
+        accessor.setInteger(object, 2);
+        assertEquals(2, accessor.getInteger(object));
+        accessor.set(object, Integer.valueOf(3));
+        assertEquals(Integer.valueOf(3), accessor.get(object));
+        assertEquals(3L, accessor.getLong(object));
+
+        PrivateFieldTestObject copy = new PrivateFieldTestObject();
+        accessor.copy(object, copy);
+        assertEquals(3, accessor.getInteger(copy));
+
+        // Invalid instances or values must not be written with Unsafe
+        checkThrowsIllegalArgument(() -> accessor.setInteger(new Object(), 0));
+        checkThrowsIllegalArgument(() -> accessor.setInteger(null, 0));
+        checkThrowsIllegalArgument(() -> ((ReflectionAccessor) accessor).set(object, "text"));
+        assertEquals(3, accessor.getInteger(object));
+    }
+
+    @Test
+    public void testPrivateMemberStringField() {
+        final ReflectionAccessor<String> accessor = createMemberAccessor("field_string");
+        assertTrue(accessor instanceof UnsafeAccessor);
+        final PrivateFieldTestObject object = new PrivateFieldTestObject();
+        accessor.set(object, "value1");
+        assertEquals("value1", accessor.get(object));
+        accessor.set(object, null);
+        assertEquals(null, accessor.get(object));
+
+        checkThrowsIllegalArgument(() -> accessor.set(new Object(), "value2"));
+        checkThrowsIllegalArgument(() -> ((ReflectionAccessor) accessor).set(object, new Object()));
+        assertEquals(null, accessor.get(object));
+    }
+
+    private static class PrivateFieldTestObject {
+        private int field_int;
+        private String field_string;
+    }
+
+    private static <T> ReflectionAccessor<T> createMemberAccessor(String name) {
+        Field field;
+        try {
+            field = PrivateFieldTestObject.class.getDeclaredField(name);
+            field.setAccessible(true); // done by underlying setter in e.g. FastField
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to find field " + name);
+        }
+        return ReflectionAccessor.create(field);
+    }
+
     // Note: as part of testing we expect that doing a set before the class is initialized,
     // initializes the class. That is why we do a set before we do a get, and we ignore
     // the initial values. If the following assert shows the initial value, then we know
@@ -2,12 +2,18 @@ package com.bergerkiller.mountiplex;
 
 import static org.junit.Assert.*;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import com.bergerkiller.mountiplex.reflection.declarations.ClassResolver;
 import com.bergerkiller.mountiplex.reflection.declarations.MethodDeclaration;
 import com.bergerkiller.mountiplex.reflection.util.FastMethod;
 import com.bergerkiller.mountiplex.reflection.util.asm.javassist.MPLMemberResolver;
+import com.bergerkiller.mountiplex.reflection.util.fast.GeneratedCodeInvoker;
 import com.bergerkiller.mountiplex.types.SpeedTestObject;
 import com.bergerkiller.mountiplex.types.TestObject;
 
@@ -496,4 +502,116 @@ public class MethodDeclarationTest {
         method.init(dec);
         assertEquals("success", method.invoke(null).toString());
     }
+
+    // Tests that many method bodies compiled into a single class behave the same as when every
+    // method body is compiled into its own class, and measures the difference between the two
+    @Test
+    public void testBatchedMethodBodies() {
+        final int count = 200;
+        List<MethodDeclaration> separateDecs = createAddMethods(count);
+        List<MethodDeclaration> batchedDecs = createAddMethods(count);
+
+        long separateMetaspace = getMetaspaceUsed();
+        long separateClassCount = getLoadedClassCount();
+        long separateStartTime = System.currentTimeMillis();
+        List<GeneratedCodeInvoker<Integer>> separate = new ArrayList<>();
+        for (MethodDeclaration dec : separateDecs) {
+            separate.add(GeneratedCodeInvoker.create(dec));
+        }
+        long separateEndTime = System.currentTimeMillis();
+        separateMetaspace = getMetaspaceUsed() - separateMetaspace;
+        separateClassCount = getLoadedClassCount() - separateClassCount;
+
+        long batchedMetaspace = getMetaspaceUsed();
+        long batchedClassCount = getLoadedClassCount();
+        long batchedStartTime = System.currentTimeMillis();
+        GeneratedCodeInvoker.Batch batch = GeneratedCodeInvoker.createBatch(batchedDecs);
+        assertNotNull(batch);
+        assertEquals(count, batch.size());
+        List<GeneratedCodeInvoker<Integer>> batched = new ArrayList<>();
+        for (MethodDeclaration dec : batchedDecs) {
+            batched.add(batch.getInvoker(dec));
+        }
+        long batchedEndTime = System.currentTimeMillis();
+        batchedMetaspace = getMetaspaceUsed() - batchedMetaspace;
+        batchedClassCount = getLoadedClassCount() - batchedClassCount;
+
+        System.out.println("Compiling " + count + " method bodies as separate classes: " +
+                (separateEndTime - separateStartTime) + "ms, metaspace " + (separateMetaspace / 1024) + "KB, " +
+                separateClassCount + " classes");
+        System.out.println("Compiling " + count + " method bodies as a single class: " +
+                (batchedEndTime - batchedStartTime) + "ms, metaspace " + (batchedMetaspace / 1024) + "KB, " +
+                batchedClassCount + " classes");
+
+        TestObject testObject = new TestObject();
+        for (int i = 0; i < count; i++) {
+            int expected = 12 + 1 + i;
+            assertEquals(expected, separate.get(i).invoke(testObject, 1).intValue());
+            assertEquals(expected, batched.get(i).invoke(testObject, 1).intValue());
+            assertEquals(expected, batched.get(i).invokeVA(testObject, 1).intValue());
+            assertEquals(batch.getInvokerClassInternalName(), batched.get(i).getInvokerClassInternalName());
+        }
+    }
+
+    @Test
+    public void testBatchedMethodBodyCompileError() {
+        List<MethodDeclaration> decs = createAddMethods(3);
+        MethodDeclaration broken = new MethodDeclaration(decs.get(0).getResolver(),
+                "public int broken(int n) {\n" +
+                "  return instance.doesNotExist(n);\n" +
+                "}");
+        assertTrue(broken.isResolved());
+        decs.add(1, broken);
+
+        GeneratedCodeInvoker.Batch batch = GeneratedCodeInvoker.createBatch(decs);
+        assertNotNull(batch);
+        assertEquals(4, batch.size());
+        assertTrue(batch.contains(broken));
+
+        // Other method bodies of the batch still work
+        TestObject testObject = new TestObject();
+        for (int i = 0; i < 3; i++) {
+            GeneratedCodeInvoker<Integer> invoker = batch.getInvoker(decs.get((i == 0) ? 0 : (i + 1)));
+            assertEquals(12 + 1 + i, invoker.invoke(testObject, 1).intValue());
+            assertEquals(batch.getInvokerClassInternalName(), invoker.getInvokerClassInternalName());
+        }
+
+        // The broken method body is compiled on its own, which fails the same way
+        try {
+            batch.getInvoker(broken);
+            fail("Method body should not compile");
+        } catch (Throwable t) {
+            // Expected
+        }
+    }
+
+    private static List<MethodDeclaration> createAddMethods(int count) {
+        ClassResolver resolver = ClassResolver.DEFAULT.clone();
+        resolver.setDeclaredClass(TestObject.class);
+        List<MethodDeclaration> decs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MethodDeclaration dec = new MethodDeclaration(resolver,
+                    "public int add" + i + "(int n) {\n" +
+                    "  #require com.bergerkiller.mountiplex.types.TestObject private int special:c;\n" +
+                    "  return instance#special + n + " + i + ";\n" +
+                    "}");
+            assertTrue(dec.isResolved());
+            decs.add(dec);
+        }
+        return decs;
+    }
+
+    private static long getLoadedClassCount() {
+        return ManagementFactory.getClassLoadingMXBean().getTotalLoadedClassCount();
+    }
+
+    private static long getMetaspaceUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().contains("Metaspace")) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
 }
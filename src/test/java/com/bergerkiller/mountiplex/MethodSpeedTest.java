@@ -12,6 +12,9 @@ import com.bergerkiller.mountiplex.reflection.resolver.ClassDeclarationResolver;
 import com.bergerkiller.mountiplex.reflection.resolver.Resolver;
 import com.bergerkiller.mountiplex.reflection.util.fast.GeneratedInvoker;
 import com.bergerkiller.mountiplex.reflection.util.fast.InvalidArgumentCountException;
+import com.bergerkiller.mountiplex.reflection.util.fast.Invoker;
+import com.bergerkiller.mountiplex.reflection.util.fast.MethodHandleInvoker;
+import com.bergerkiller.mountiplex.reflection.util.fast.ReflectionInvoker;
 import com.bergerkiller.mountiplex.types.SpeedTestObject;
 import com.bergerkiller.mountiplex.types.SpeedTestObjectHandle;
 
@@ -145,4 +148,64 @@ public class MethodSpeedTest {
             }
         });
     }
+
+    @Test
+    public void testWideMethodSpeed() throws Throwable {
+        final SpeedTestObject object = new SpeedTestObject();
+        java.lang.reflect.Method method = SpeedTestObject.class.getMethod("publicLotsOfArgs",
+                int.class, int.class, int.class, int.class, int.class, int.class, int.class);
+        assertTrue(GeneratedInvoker.canCreate(method));
+
+        final Invoker<Object> generated = GeneratedInvoker.create(method);
+        final Invoker<Object> reflection = ReflectionInvoker.create(method);
+        assertEquals(28, generated.invokeVA(object, 1, 2, 3, 4, 5, 6, 7));
+        try {
+            generated.invokeVA(object, 1, 2, 3);
+            fail("Invalid argument count was not detected");
+        } catch (InvalidArgumentCountException ex) {
+            // Expected
+        }
+
+        measure("Reflection 7-arg method call", new Runnable() {
+            @Override
+            public void run() {
+                reflection.invokeVA(object, 1, 2, 3, 4, 5, 6, 7);
+            }
+        });
+        measure("Generated 7-arg method call", new Runnable() {
+            @Override
+            public void run() {
+                generated.invokeVA(object, 1, 2, 3, 4, 5, 6, 7);
+            }
+        });
+    }
+
+    @Test
+    public void testPrivateMethodHandleSpeed() throws Throwable {
+        final SpeedTestObject object = new SpeedTestObject();
+        java.lang.reflect.Method method = SpeedTestObject.class.getDeclaredMethod("privateLotsOfArgs",
+                int.class, int.class, int.class, int.class, int.class, int.class, int.class);
+        assertFalse(GeneratedInvoker.canCreate(method));
+        if (!MethodHandleInvoker.canCreate(method)) {
+            return; // Java 8
+        }
+
+        final Invoker<Object> methodHandle = MethodHandleInvoker.create(method);
+        final Invoker<Object> reflection = ReflectionInvoker.create(method);
+        assertFalse(methodHandle instanceof ReflectionInvoker);
+        assertEquals(35, methodHandle.invokeVA(object, 2, 3, 4, 5, 6, 7, 8));
+
+        measure("Reflection private method call", new Runnable() {
+            @Override
+            public void run() {
+                reflection.invokeVA(object, 1, 2, 3, 4, 5, 6, 7);
+            }
+        });
+        measure("MethodHandle private method call", new Runnable() {
+            @Override
+            public void run() {
+                methodHandle.invokeVA(object, 1, 2, 3, 4, 5, 6, 7);
+            }
+        });
+    }
 }
@@ -4,6 +4,7 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import com.bergerkiller.mountiplex.reflection.declarations.ClassResolver;
 import com.bergerkiller.mountiplex.reflection.declarations.SourceDeclaration;
 
 public class SourceDeclarationTest {
@@ -131,4 +132,98 @@ public class SourceDeclarationTest {
             fail("Source declaration was not correctly parsed");
         }
     }
+
+    @Test
+    public void testPreprocessBlockComments() {
+        String sourceDec = "A/* comment */B\r\n" +
+                           "/* multi\n" +
+                           "   line */C\n" +
+                           "#if classexists this.class.does.not.exist /* comment */\n" +
+                           "NO\n" +
+                           "#else: /* nested /* comment */ */YES\n" +
+                           "#endif\n" +
+                           "\n" +
+                           "\n";
+
+        String expected = "AB\n" +
+                          "C\n" +
+                          "       YES\n";
+
+        String result = SourceDeclaration.preprocess(sourceDec);
+        if (!result.equals(expected)) {
+            System.out.println("== EXPECTED ==");
+            System.out.println(expected);
+            System.out.println("== BUT GOT ==");
+            System.out.println(result);
+            fail("Source declaration was not correctly parsed");
+        }
+    }
+
+    @Test
+    public void testPreprocessBlockCommentOpenInLineComment() {
+        // The /* in the line comment is never closed, so it does not hide the comments after it
+        String sourceDec = "// files matching dir/*\n" +
+                           "A/* real comment */B\n" +
+                           "/* multi\n" +
+                           "   line */C\n" +
+                           "D/* unterminated\n";
+
+        String expected = "AB\n" +
+                          "C\n" +
+                          "D/* unterminated\n";
+
+        String result = SourceDeclaration.preprocess(sourceDec);
+        if (!result.equals(expected)) {
+            System.out.println("== EXPECTED ==");
+            System.out.println(expected);
+            System.out.println("== BUT GOT ==");
+            System.out.println(result);
+            fail("Source declaration was not correctly parsed");
+        }
+    }
+
+    @Test
+    public void testParseLargeSourceProbeCount() {
+        StringBuilder source = new StringBuilder();
+        source.append("package com.bergerkiller.mountiplex.types;\n\n");
+        for (int i = 0; i < 200; i++) {
+            source.append("class TestObject {\n");
+            source.append("    private String b;\n");
+            source.append("    private int c;\n");
+            source.append("    public final List testRawField;\n");
+            source.append("    public final OneWayConvertableType oneWay;\n");
+            source.append("    public long[][] multiArr;\n");
+            source.append("    public int k(int n);\n");
+            source.append("}\n\n");
+        }
+
+        // Parse twice, the second time names are resolved from the shared index
+        ProbeCountingClassLoader loader = new ProbeCountingClassLoader(SourceDeclarationTest.class.getClassLoader());
+        int[] probes = new int[2];
+        for (int pass = 0; pass < 2; pass++) {
+            loader.probes = 0;
+            ClassResolver resolver = new ClassResolver();
+            resolver.setClassLoader(loader);
+
+            SourceDeclaration dec = SourceDeclaration.parse(resolver, source.toString());
+            assertEquals(200, dec.classes.length);
+            probes[pass] = loader.probes;
+        }
+        assertTrue("Second parse probed the class loader " + probes[1] + " times, first parse " + probes[0] + " times",
+                probes[1] < probes[0]);
+    }
+
+    private static final class ProbeCountingClassLoader extends ClassLoader {
+        public int probes = 0;
+
+        public ProbeCountingClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            probes++;
+            return super.loadClass(name, resolve);
+        }
+    }
 }
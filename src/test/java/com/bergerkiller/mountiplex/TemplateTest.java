@@ -2,20 +2,32 @@ package com.bergerkiller.mountiplex;
 
 import static org.junit.Assert.*;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import com.bergerkiller.mountiplex.types.TestObjectExtended;
 import com.bergerkiller.mountiplex.types.TestObjectExtendedHandle;
 import org.junit.Test;
 
+import com.bergerkiller.mountiplex.conversion.Converter;
 import com.bergerkiller.mountiplex.reflection.SafeConstructor;
 import com.bergerkiller.mountiplex.reflection.declarations.ClassDeclaration;
 import com.bergerkiller.mountiplex.reflection.declarations.ClassResolver;
 import com.bergerkiller.mountiplex.reflection.declarations.SourceDeclaration;
+import com.bergerkiller.mountiplex.reflection.declarations.Template;
+import com.bergerkiller.mountiplex.reflection.declarations.TemplateInitializer;
 import com.bergerkiller.mountiplex.reflection.resolver.Resolver;
 import com.bergerkiller.mountiplex.reflection.util.asm.ASMUtil;
+import com.bergerkiller.mountiplex.reflection.util.fast.GeneratedMemberBatch;
+import com.bergerkiller.mountiplex.reflection.util.fast.Invoker;
+import com.bergerkiller.mountiplex.reflection.util.fast.ReflectionAccessor;
 import com.bergerkiller.mountiplex.types.BootstrapState;
 import com.bergerkiller.mountiplex.types.PrivateTestObjectHandle;
+import com.bergerkiller.mountiplex.types.TestClassDeclarationResolver;
 import com.bergerkiller.mountiplex.types.TestObject;
 import com.bergerkiller.mountiplex.types.TestObjectHandle;
 
@@ -183,6 +195,147 @@ public class TemplateTest {
         test_TestObjectHandle();
     }
 
+    @Test
+    public void testTemplateInitializer() {
+        TemplateInitializer.Report report = TemplateInitializer.initialize(Arrays.asList(
+                TestObjectHandle.class,
+                TestObjectExtendedHandle.TestObjectClass.class,
+                PrivateTestObjectHandle.class), 2);
+        report.log(3);
+        assertTrue(report.isSuccessful());
+        assertEquals(3, report.getTimings().size());
+        assertTrue(TestObjectHandle.T.isAvailable());
+        assertTrue(TestObjectExtendedHandle.T.isAvailable());
+        assertTrue(PrivateTestObjectHandle.T.isAvailable());
+    }
+
+    @Test
+    public void testHandleFieldBinding() {
+        // A new template instance builds its own Handle implementation, with the field accessors bound
+        Template.setHandleFieldBindingEnabled(true);
+        try {
+            PrivateTestObjectHandle.PrivateTestObjectClass template = Template.Class.create(
+                    PrivateTestObjectHandle.PrivateTestObjectClass.class, TestClassDeclarationResolver.INSTANCE);
+            Object privateTestObject = SafeConstructor.create(Resolver.loadClass("com.bergerkiller.mountiplex.types.PrivateTestObject", true)).newInstance();
+            PrivateTestObjectHandle handle = template.createHandle(privateTestObject);
+            handle.setField("bound");
+            assertEquals("bound", handle.getField());
+            assertEquals("bound", handle.method());
+        } finally {
+            Template.setHandleFieldBindingEnabled(false);
+        }
+    }
+
+    @Test
+    public void testMemberBatchChunks() throws Throwable {
+        // More members than fit in one generated class, with the tested members in the last one
+        List<Member> members = new ArrayList<Member>();
+        members.addAll(Arrays.asList(TestObject.class.getMethods()));
+        members.addAll(Arrays.asList(TestObject.class.getFields()));
+        Method k = TestObject.class.getMethod("k", int.class);
+        Field d = TestObject.class.getField("d");
+        members.remove(k);
+        members.remove(d);
+        members.add(k);
+        members.add(d);
+        GeneratedMemberBatch batch = GeneratedMemberBatch.create(TestObject.class, members);
+        assertNotNull(batch);
+        assertTrue(batch.size() > 16);
+
+        TestObject object = new TestObject();
+        assertEquals(Integer.valueOf(13), batch.getInvoker(k).invoke(object, 1));
+        assertEquals(Integer.valueOf(14), batch.getInvoker(k).invokeVA(object, 1));
+        assertEquals(Integer.valueOf(object.hashCode()), batch.getInvoker(Object.class.getMethod("hashCode")).invoke(object));
+        ReflectionAccessor<Integer> accessor = batch.getAccessor(d);
+        accessor.setInteger(object, 30);
+        assertEquals(30, accessor.getInteger(object));
+        assertEquals(Integer.valueOf(30), accessor.get(object));
+    }
+
+    @Test
+    public void testMemberBatch() throws Throwable {
+        GeneratedMemberBatch batch = GeneratedMemberBatch.create(TestObject.class, Arrays.asList(
+                TestObject.class.getConstructor(),
+                TestObject.class.getMethod("k", int.class),
+                TestObject.class.getMethod("h", int.class, int.class),
+                TestObject.class.getMethod("returnsConstant"),
+                TestObject.class.getDeclaredMethod("g", int.class, int.class),
+                TestObject.class.getField("d"),
+                TestObject.class.getField("unusedField"),
+                TestObject.class.getField("testRawField"),
+                TestObject.class.getField("publicStaticField")));
+        assertNotNull(batch);
+        assertEquals(7, batch.size());
+        assertFalse(batch.contains(TestObject.class.getDeclaredMethod("g", int.class, int.class)));
+        assertFalse(batch.contains(TestObject.class.getField("publicStaticField")));
+
+        Invoker<Object> constructor = batch.getInvoker(TestObject.class.getConstructor());
+        TestObject object = (TestObject) constructor.invoke(null);
+        assertEquals(Integer.valueOf(13), batch.getInvoker(TestObject.class.getMethod("k", int.class)).invoke(object, 1));
+        assertEquals(Integer.valueOf(12), batch.getInvoker(TestObject.class.getMethod("h", int.class, int.class)).invokeVA(null, 3, 4));
+        assertEquals("SomeConstant", batch.getInvoker(TestObject.class.getMethod("returnsConstant")).invoke(object));
+
+        ReflectionAccessor<Integer> d = batch.getAccessor(TestObject.class.getField("d"));
+        assertEquals(5, d.getInteger(object));
+        d.setInteger(object, 20);
+        assertEquals(20, object.d);
+        d.set(object, 21);
+        assertEquals(Integer.valueOf(21), d.get(object));
+        assertEquals(21L, d.getLong(object));
+
+        ReflectionAccessor<String> unusedField = batch.getAccessor(TestObject.class.getField("unusedField"));
+        assertEquals("unused", unusedField.get(object));
+        unusedField.set(object, "used");
+        assertEquals("used", object.unusedField);
+        assertSame(object.testRawField, batch.getAccessor(TestObject.class.getField("testRawField")).get(object));
+
+        // Templates initialized with batching enabled use the batch for their public members
+        Template.setBatchMembersEnabled(true);
+        try {
+            TestObjectHandle.TestObjectClass template = Template.Class.create(
+                    TestObjectHandle.TestObjectClass.class, TestClassDeclarationResolver.INSTANCE);
+            assertEquals(12, template.defaultInterfaceMethod.invoke(object).intValue());
+            assertEquals(13, template.inheritedClassMethod.invoke(object).intValue());
+            long[][] arr = new long[][] { { 1L } };
+            template.multiArr.set(object, arr);
+            assertSame(arr, template.multiArr.get(object));
+            assertEquals("OneWayConvertableType::UniqueType", template.oneWay.get(object).name);
+        } finally {
+            Template.setBatchMembersEnabled(false);
+        }
+    }
+
+    @Test
+    public void testHandleCursor() throws Throwable {
+        TestObject object_a = new TestObject();
+        TestObject object_b = new TestObject();
+        TestObjectHandle.T.localField.set(object_a, "a");
+        TestObjectHandle.T.localField.set(object_b, "b");
+
+        Template.HandleCursor<TestObjectHandle> cursor = TestObjectHandle.T.createHandleCursor();
+        TestObjectHandle handle = cursor.bind(object_a);
+        assertSame(object_a, handle.getRaw());
+        assertEquals("a", handle.getLocalField());
+        assertSame(handle, cursor.bind(object_b));
+        assertSame(object_b, handle.getRaw());
+        assertEquals("b", handle.getLocalField());
+        handle.setLocalField("changed");
+        assertEquals("changed", TestObjectHandle.T.localField.get(object_b));
+        assertEquals("a", TestObjectHandle.T.localField.get(object_a));
+        assertNull(cursor.bind(null));
+
+        // Normal handles are not rebindable, and keep their raw instance in a final field
+        TestObjectHandle normalHandle = TestObjectHandle.T.createHandle(object_a);
+        assertNotSame(normalHandle.getClass(), handle.getClass());
+        assertTrue(java.lang.reflect.Modifier.isFinal(normalHandle.getClass().getField("instance").getModifiers()));
+
+        // Handle of a non-public type stores the instance as Object
+        Object privateTestObject = SafeConstructor.create(Resolver.loadClass("com.bergerkiller.mountiplex.types.PrivateTestObject", true)).newInstance();
+        Template.HandleCursor<PrivateTestObjectHandle> privateCursor = PrivateTestObjectHandle.T.createHandleCursor();
+        privateCursor.bind(privateTestObject).setField("test");
+        assertEquals("test", privateCursor.bind(privateTestObject).getField());
+    }
+
     @Test
     public void testExtendedObjectTemplate() {
         // Run tests, verify bootstrap is called once and only once
@@ -270,6 +423,25 @@ public class TemplateTest {
         assertTrue(resolver.evaluateExpression("cond_a == 12 || cond_b == 43"));
     }
 
+    @Test
+    public void testVariablesChanged() {
+        // Evaluated expressions are remembered, changing the variables should re-evaluate them
+        ClassResolver resolver = new ClassResolver();
+        resolver.setVariable("version", "1.16.4");
+        assertTrue(resolver.evaluateExpression("version >= 1.16.4 && !exists_missing"));
+        assertTrue(resolver.evaluateExpression("version >= 1.16.4 && !exists_missing"));
+
+        ClassResolver derived = resolver.clone();
+        derived.setVariable("version", "1.16.3");
+        assertFalse(derived.evaluateExpression("version >= 1.16.4 && !exists_missing"));
+        assertTrue(resolver.evaluateExpression("version >= 1.16.4 && !exists_missing"));
+
+        derived.setVariable("exists_missing", "yes");
+        derived.setVariable("version", "1.17");
+        assertFalse(derived.evaluateExpression("version >= 1.16.4 && !exists_missing"));
+        assertTrue(derived.evaluateExpression("version >= 1.16.4 || !exists_missing"));
+    }
+
     @Test
     public void testUnresolvedField() {
         // Verify that when parsing a template that stores in incorrect type, a proper error is raised
@@ -296,4 +468,32 @@ public class TemplateTest {
         }
         assertEquals("SomeConstant", ASMUtil.findStringConstantReturnedByMethod(m));
     }
+
+    @Test
+    public void testHandleInitializedConverters() {
+        // Converters found before the handle class is generated are called directly by the handle
+        TestObjectHandle.TestObjectClass t = Template.Class.create(TestObjectHandle.TestObjectClass.class,
+                TestClassDeclarationResolver.INSTANCE);
+        TestObject object = new TestObject();
+        assertEquals("12", t.intConvField.get(object));
+        t.intConvField.set(object, "12");
+        assertEquals("77", t.testConvFunc1.invoke(object, 43, 33));
+        assertEquals(68, t.testConvFunc2.invoke(object, "22", "44").intValue());
+
+        TestObjectHandle handle = t.createHandle(object);
+        int converterFields = 0;
+        for (java.lang.reflect.Field field : handle.getClass().getDeclaredFields()) {
+            if (field.getType() == Converter.class || field.getType() == java.util.function.Function.class) {
+                converterFields++;
+            }
+        }
+        assertTrue(converterFields > 0);
+
+        assertEquals("12", handle.getIntConvField());
+        handle.setIntConvField("25");
+        assertEquals("25", handle.getIntConvField());
+        assertEquals("25", t.intConvField.get(object));
+        assertEquals("77", handle.testConvFunc1(43, 33));
+        assertEquals(68, handle.testConvFunc2("22", "44"));
+    }
 }
@@ -2,10 +2,19 @@ package com.bergerkiller.mountiplex;
 
 import static org.junit.Assert.*;
 
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 import com.bergerkiller.mountiplex.reflection.declarations.ClassResolver;
 import com.bergerkiller.mountiplex.reflection.declarations.TypeDeclaration;
+import com.bergerkiller.mountiplex.reflection.resolver.Resolver;
+import com.bergerkiller.mountiplex.types.TestObject;
 
 public class TypeDeclarationTest {
 
@@ -13,6 +22,82 @@ public class TypeDeclarationTest {
         
     }
 
+    @Test
+    public void testLoadClassConcurrent() throws InterruptedException {
+        final String[] paths = new String[] {
+                "com.bergerkiller.mountiplex.types.TestObject",
+                "com.bergerkiller.mountiplex.types.TestObject[]",
+                "com.bergerkiller.mountiplex.TypeDeclarationTest.TestClassWithGenerics",
+                "com.bergerkiller.mountiplex.types.DoesNotExist",
+                "java.util.ArrayList"
+        };
+        final Class<?>[] expected = new Class<?>[] {
+                TestObject.class,
+                TestObject[].class,
+                TestClassWithGenerics.class,
+                null,
+                ArrayList.class
+        };
+
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int n = 0; n < paths.length; n++) {
+                    if (Resolver.loadClass(paths[n], false) != expected[n]) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, failures.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testLoadClassReentrant() {
+        // A class path resolver that loads the path it is resolving must not wait on itself
+        final String reentrantPath = "com.bergerkiller.mountiplex.types.ReentrantTestObject";
+        final AtomicBoolean reentered = new AtomicBoolean();
+        Resolver.registerClassResolver(classPath -> {
+            if (!classPath.equals(reentrantPath)) {
+                return classPath;
+            }
+            if (reentered.compareAndSet(false, true)) {
+                assertEquals(TestObject.class, Resolver.loadClass(reentrantPath, false));
+            }
+            return TestObject.class.getName();
+        });
+        assertEquals(TestObject.class, Resolver.loadClass(reentrantPath, false));
+        assertTrue(reentered.get());
+    }
+
+    @Test
+    public void testLoadClassReleasesClassLoader() throws Exception {
+        // Classes loaded with a class loader must not keep that class loader loaded
+        WeakReference<ClassLoader> loaderRef = loadTestObjectWithNewLoader();
+        for (int i = 0; i < 100 && loaderRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(loaderRef.get());
+    }
+
+    private static WeakReference<ClassLoader> loadTestObjectWithNewLoader() throws Exception {
+        URL classesUrl = TestObject.class.getProtectionDomain().getCodeSource().getLocation();
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { classesUrl }, null)) {
+            Class<?> type = Resolver.loadClass(TestObject.class.getName(), false, loader);
+            assertNotNull(type);
+            assertSame(loader, type.getClassLoader());
+            return new WeakReference<ClassLoader>(loader);
+        }
+    }
+
     @Test
     public void testComponentType() {
         TypeDeclaration arrType = TypeDeclaration.parse("List<String>[]");